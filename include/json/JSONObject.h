@@ -69,6 +69,7 @@ class JSONObject
         int getDouble(const TextString& name, double& target) const;
         int getDouble(const TextString& name, double& target, double defaultValue) const;
         JSONObject& getObject(const TextString& name, JSONObject& target) const;
+        JSONObject& getView(const TextString& name, JSONObject& target) const;
         JSONArray& getArray(const TextString& name, JSONArray& target) const;
         JSONMap& getMap(JSONMap& target) const;
         List<TextString>& getNames(List<TextString>& target) const;
@@ -78,6 +79,7 @@ class JSONObject
 
         int hasError() const                                   {return (m_error.length() > 0);}
         const TextString& getError() const                     {return m_error;}
+        int isView() const                                     {return (m_text != &m_buffer);}
 
         void dump() const;
         void dump(const TextString& text) const;
@@ -96,12 +98,20 @@ class JSONObject
         JSONObject& addRaw(const TextString& name, const TextString& value);
         int getValue(const TextString& name, int type, TextString& target) const;
 
+        int index() const;
+        int find(const TextString& name) const;
+        void addIndex(int nameStart, int nameEnd, int valueStart, int valueEnd);
+        void view(const TextString* text, int start, int end);
+        void detach();
+        void modify();
+
         void dumpStack() const;
 
         int length() const;
         char charAt(int index) const;
         TextString substring(int start, int end) const;
         int match(const JSONRequest& request, int start, int end) const;
+        int match(const TextString& name, int start, int end) const;
         int parse2(int start, JSONRequest* request);
         int parse(int start, JSONRequest* request);
         void fixupRemove(int start, int end);
@@ -110,6 +120,15 @@ class JSONObject
         int m_start;
         int m_end;
 
+        // The text being read - m_buffer or, for a view, that of the object it was
+        //    taken from between m_start and m_end
+        const TextString* m_text;
+
+        // name start, name end, value start, value end and name hash of each top level pair
+        int* m_index;
+        int m_indexSize;
+        int m_indexCapacity;
+
         int* m_stack;
         int m_stackIdx;
 
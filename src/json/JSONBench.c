@@ -0,0 +1,230 @@
+//-----------------------------------------------------------------------------------
+// Copyright (c) 2009-2013, Gordon Beck (gordon.beck@aventinus.org). All rights reserved.
+//
+//    This file is part of a suite of tools.
+//
+//    The tools are free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    The tools are distributed in the hope that they will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with these tools.  If not, see <http://www.gnu.org/licenses/>.
+//-----------------------------------------------------------------------------------
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <time.h>
+
+#include "JSONArray.h"
+#include "JSONMap.h"
+#include "JSONObject.h"
+
+//-----------------------------------------------------------------------------------
+// Host benchmarks for the JSON classes, run with "make jsonbench" or
+//
+//    jsonbench [-t millis] [filter]
+//
+// Every operation is run against a small and a medium message - a flat object of
+//    that many values with a nested object in the middle. Each benchmark is
+//    warmed up once and then run for the given time; the report gives the mean
+//    time per operation. A filter runs only the benchmarks whose name contains it.
+//-----------------------------------------------------------------------------------
+static const int SMALL = 10;
+static const int MEDIUM = 100;
+
+static long millis = 500;
+static const char* filter = "";
+
+static volatile int sink;
+
+//-----------------------------------------------------------------------------------
+//
+//-----------------------------------------------------------------------------------
+struct Document
+{
+    const char* m_name;
+    TextString m_text;
+    JSONObject m_parsed;
+    List<TextString> m_names;
+};
+
+static TextString name(int i)
+{
+    return TextString("field").append(i);
+}
+
+static void build(Document& document, const char* label, int size)
+{
+    document.m_name = label;
+
+    document.m_text = "{";
+    for (int i = 0; i < size; i++)
+    {
+        if (i > 0)
+            document.m_text.append(",");
+        document.m_text.append("\"").append(name(i)).append("\":");
+
+        if (i == size / 2)
+            document.m_text.append("{\"id\":").append(i).append(",\"text\":\"nested value\",\"list\":[1,2,3]}");
+        else if (i % 3 == 0)
+            document.m_text.append("\"value ").append(i).append("\"");
+        else
+            document.m_text.append(i * 7);
+
+        document.m_names.add(name(i));
+    }
+    document.m_text.append("}");
+
+    document.m_parsed = JSONObject(document.m_text);
+    if (document.m_parsed.hasError())
+    {
+        printf("Invalid document %s: %s\n", label, (const char*)document.m_parsed.getError());
+        exit(1);
+    }
+}
+
+static double now()
+{
+    struct timespec spec;
+    clock_gettime(CLOCK_MONOTONIC, &spec);
+    return spec.tv_sec * 1e9 + spec.tv_nsec;
+}
+
+//-----------------------------------------------------------------------------------
+// Each benchmark does one operation on the document and returns something that
+//    depends on it so that the compiler cannot drop the work
+//-----------------------------------------------------------------------------------
+typedef int (*Benchmark)(Document& document);
+
+// Parse the message
+static int parse(Document& document)
+{
+    JSONObject object(document.m_text);
+    return object.hasError();
+}
+
+// Parse the message and read one value - the whole cost of handling a message
+//    that is looked at once
+static int parseGetString(Document& document)
+{
+    JSONObject object(document.m_text);
+    return object.getString(document.m_names.get(document.m_names.size() - 1)).length();
+}
+
+// Read every value of a parsed message
+static int getString(Document& document)
+{
+    int total = 0;
+    for (int i = 0; i < document.m_names.size(); i++)
+        total += document.m_parsed.getString(document.m_names.get(i)).length();
+    return total;
+}
+
+static int getInteger(Document& document)
+{
+    int total = 0;
+    for (int i = 1; i < document.m_names.size(); i += 3)
+    {
+        int value = 0;
+        document.m_parsed.getInteger(document.m_names.get(i), value);
+        total += value;
+    }
+    return total;
+}
+
+static int contains(Document& document)
+{
+    int total = 0;
+    for (int i = 0; i < document.m_names.size(); i++)
+        total += document.m_parsed.contains(document.m_names.get(i));
+    return total + document.m_parsed.contains("missing");
+}
+
+// Read a value from the nested object - as a copy and as a view
+static int getObject(Document& document)
+{
+    JSONObject nested;
+    document.m_parsed.getObject(document.m_names.get(document.m_names.size() / 2), nested);
+    return nested.getString("text").length();
+}
+
+static int getView(Document& document)
+{
+    JSONObject nested;
+    document.m_parsed.getView(document.m_names.get(document.m_names.size() / 2), nested);
+    return nested.getString("text").length();
+}
+
+static int getMap(Document& document)
+{
+    JSONMap map;
+    document.m_parsed.getMap(map);
+    return map.size();
+}
+
+//-----------------------------------------------------------------------------------
+//
+//-----------------------------------------------------------------------------------
+static void run(const char* label, Benchmark benchmark, Document& document)
+{
+    if (strstr(label, filter) == 0)
+        return;
+
+    sink += benchmark(document);
+
+    long count = 0;
+    double start = now();
+    double end = start + millis * 1e6;
+    double current = start;
+    while (current < end)
+    {
+        for (int i = 0; i < 10; i++)
+            sink += benchmark(document);
+        count += 10;
+        current = now();
+    }
+
+    printf("%-16s %-8s %12.0f ns/op %12ld ops\n", label, document.m_name, (current - start) / count, count);
+}
+
+int main(int argc, char** argv)
+{
+    int arg = 1;
+    while ((arg < argc) && (argv[arg][0] == '-'))
+    {
+        if ((strcmp(argv[arg], "-t") == 0) && (arg + 1 < argc))
+            millis = atol(argv[++arg]);
+        else
+        {
+            printf("Usage: jsonbench [-t millis] [filter]\n");
+            return 1;
+        }
+        arg++;
+    }
+    if (arg < argc)
+        filter = argv[arg];
+
+    Document documents[2];
+    build(documents[0], "small", SMALL);
+    build(documents[1], "medium", MEDIUM);
+
+    for (int i = 0; i < 2; i++)
+    {
+        run("parse", parse, documents[i]);
+        run("parseGetString", parseGetString, documents[i]);
+        run("getString", getString, documents[i]);
+        run("getInteger", getInteger, documents[i]);
+        run("contains", contains, documents[i]);
+        run("getObject", getObject, documents[i]);
+        run("getView", getView, documents[i]);
+        run("getMap", getMap, documents[i]);
+    }
+
+    return 0;
+}
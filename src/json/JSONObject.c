@@ -36,6 +36,7 @@ static const int STACK_VALUE = 4;
 int JSONObject::m_verbose = 0;
 
 #define MAX_STACK 40
+#define INDEX_ENTRY 5
 
 //-----------------------------------------------------------------------------------
 //
@@ -46,9 +47,14 @@ JSONObject::JSONObject()
 
     m_start = 0;
     m_end = -1;
+    m_text = &m_buffer;
 
     m_stack = 0;
     m_stackIdx = -1;
+
+    m_index = 0;
+    m_indexSize = 0;
+    m_indexCapacity = 0;
 }
 
 JSONObject::JSONObject(const TextString& input)
@@ -57,10 +63,15 @@ JSONObject::JSONObject(const TextString& input)
 
     m_start = 0;
     m_end = -1;
+    m_text = &m_buffer;
 
     m_stack = 0;
     m_stackIdx = -1;
 
+    m_index = 0;
+    m_indexSize = 0;
+    m_indexCapacity = 0;
+
     m_start = 0;
     while(1)
     {
@@ -101,20 +112,39 @@ JSONObject::JSONObject(const TextString& input)
 JSONObject::~JSONObject()
 {
     if (m_stack != 0)
-        delete m_stack;
+        delete[] m_stack;
+    if (m_index != 0)
+        delete[] m_index;
 }
 
+//-----------------------------------------------------------------------------------
+// A copy owns its text - a copy of a view takes the part of the text it was reading.
+//    Only getView() makes an object that reads another's.
+//-----------------------------------------------------------------------------------
 JSONObject::JSONObject(const JSONObject& other)
 {
-    m_buffer = other.m_buffer;
-
-    m_start = other.m_start;
-    m_end = other.m_end;
+    if (other.isView())
+    {
+        m_buffer = other.m_text->substring(other.m_start, other.m_end);
+        m_start = 0;
+        m_end = other.m_end - other.m_start;
+    }
+    else
+    {
+        m_buffer = other.m_buffer;
+        m_start = other.m_start;
+        m_end = other.m_end;
+    }
+    m_text = &m_buffer;
 
     m_error = other.m_error;
     m_stack = 0;
     m_stackIdx = -1;
 
+    m_index = 0;
+    m_indexSize = 0;
+    m_indexCapacity = 0;
+
     if (other.m_stackIdx >= 0)
     {
         m_stackIdx = other.m_stackIdx;
@@ -126,20 +156,40 @@ JSONObject::JSONObject(const JSONObject& other)
 
 JSONObject& JSONObject::operator=(const JSONObject& other)
 {
-    m_buffer = other.m_buffer;
+    if (this == &other)
+        return *this;
 
-    m_start = other.m_start;
-    m_end = other.m_end;
+    if (other.isView())
+    {
+        // other may be a view of this object's own text
+        TextString text = other.m_text->substring(other.m_start, other.m_end);
+        m_buffer = text;
+        m_start = 0;
+        m_end = text.length();
+    }
+    else
+    {
+        m_buffer = other.m_buffer;
+        m_start = other.m_start;
+        m_end = other.m_end;
+    }
+    m_text = &m_buffer;
 
     m_error = other.m_error;
+    if (m_stack != 0)
+        delete[] m_stack;
     m_stack = 0;
     m_stackIdx = -1;
 
+    if (m_index != 0)
+        delete[] m_index;
+    m_index = 0;
+    m_indexSize = 0;
+    m_indexCapacity = 0;
+
     if (other.m_stackIdx >= 0)
     {
         m_stackIdx = other.m_stackIdx;
-        if (m_stack != 0)
-            delete m_stack;
         m_stack = new int[MAX_STACK];
         for (int i = 0; i < MAX_STACK; i++)
             m_stack[i] = other.m_stack[i];
@@ -160,6 +210,7 @@ static int GET_MAP = 7;
 static int REMOVE_VALUE = 8;
 static int REMOVE_ARRAY = 9;
 static int REMOVE_OBJECT = 10;
+static int GET_INDEX = 11;
 
 class JSONRequest
 {
@@ -198,6 +249,17 @@ class JSONRequest
         JSONRequest& operator=(const JSONRequest& other);
 };
 
+//-----------------------------------------------------------------------------------
+// The names are compared as they are in the text - only the quotes are dropped
+//-----------------------------------------------------------------------------------
+static int hash(const TextString& text, int start, int end)
+{
+    unsigned int code = 0;
+    for (int i = start; i < end; i++)
+        code = 31 * code + (unsigned char)text.charAt(i);
+    return (int)code;
+}
+
 //-----------------------------------------------------------------------------------
 //
 //-----------------------------------------------------------------------------------
@@ -226,6 +288,8 @@ JSONObject& JSONObject::add(const TextString& name, const JSONObject& value)
     if (m_error.length() > 0)
         return *this;
 
+    modify();
+
     if (m_stackIdx < 0)
     {
         m_buffer.setLength(m_buffer.length() - 1); // remove outer }
@@ -269,6 +333,8 @@ JSONObject& JSONObject::add(const TextString& name, const JSONArray& value)
     if (m_error.length() > 0)
         return *this;
 
+    modify();
+
     if (m_stackIdx < 0)
     {
         m_buffer.setLength(m_buffer.length() - 1); // remove outer }
@@ -309,6 +375,8 @@ JSONObject& JSONObject::addRaw(const TextString& name, const TextString& value)
     if (m_error.length() > 0)
         return *this;
 
+    modify();
+
     if (m_stackIdx < 0)
     {
         m_buffer.setLength(m_buffer.length() - 1); // remove outer }
@@ -361,6 +429,8 @@ void JSONObject::removeValue(const TextString& name, TextString& target)
         return;
     }
 
+    modify();
+
     JSONRequest request;
     request.m_request = REMOVE_VALUE;
     request.m_name = name;
@@ -395,6 +465,8 @@ void JSONObject::removeObject(const TextString& name, JSONObject& target)
         return;
     }
 
+    modify();
+
     JSONRequest request;
     request.m_request = REMOVE_OBJECT;
     request.m_name = name;
@@ -430,6 +502,8 @@ void JSONObject::removeArray(const TextString& name, JSONArray& target)
         return;
     }
 
+    modify();
+
     JSONRequest request;
     request.m_request = REMOVE_ARRAY;
     request.m_name = name;
@@ -586,6 +660,8 @@ JSONObject& JSONObject::key(const TextString& key)
         return *this;
     }
 
+    modify();
+
     if (m_stack == 0)
     {
         m_stack = new int[MAX_STACK];
@@ -718,6 +794,9 @@ int JSONObject::contains(const TextString& name) const
     if (m_stackIdx >= 0)
         return 0;
 
+    if (index() == 0)
+        return (find(name) >= 0);
+
     JSONRequest request;
     request.m_request = CONTAINS;
     request.m_name = name;
@@ -797,6 +876,22 @@ int JSONObject::getLong(const TextString& name, long& target, long defaultValue)
 
 JSONObject& JSONObject::getObject(const TextString& name, JSONObject& target) const
 {   
+    if ((&target != this) && (index() == 0))
+    {
+        int entry = find(name);
+        if (entry < 0)
+            abort();
+
+        if (charAt(m_index[entry + 2]) == '{')
+        {
+            // Already validated as part of this object - no need to parse it again
+            TextString value = substring(m_index[entry + 2], m_index[entry + 3]);
+            target.view(0, 0, value.length());
+            target.m_buffer = value;
+            return target;
+        }
+    }
+
     TextString value;
     if (getValue(name, GET_OBJECT, value) < 0)
         abort();
@@ -805,6 +900,51 @@ JSONObject& JSONObject::getObject(const TextString& name, JSONObject& target) co
     return target;
 }
 
+//-----------------------------------------------------------------------------------
+// As getObject() but the target reads this object's text rather than a copy of it -
+//    it is only good for as long as this object is neither changed nor destroyed.
+// Changing the view itself gives it its own copy first.
+//-----------------------------------------------------------------------------------
+JSONObject& JSONObject::getView(const TextString& name, JSONObject& target) const
+{
+    if (name.length() == 0)
+    {
+        target.m_error = "Invalid name";
+        return target;
+    }
+
+    if (m_stackIdx >= 0)
+    {
+        target.m_error = "Object is open pending additions";
+        return target;
+    }
+
+    if (m_text == &target.m_buffer)
+        return getObject(name, target);
+
+    if (index() < 0)
+    {
+        target.m_error = m_error;
+        return target;
+    }
+
+    int entry = find(name);
+    if (entry < 0)
+    {
+        target.m_error = "Did not find object";
+        return target;
+    }
+
+    if (charAt(m_index[entry + 2]) != '{')
+    {
+        target.m_error = "Not an object";
+        return target;
+    }
+
+    target.view(m_text, m_index[entry + 2], m_index[entry + 3]);
+    return target;
+}
+
 JSONArray& JSONObject::getArray(const TextString& name, JSONArray& target) const
 {
     if (name.length() == 0)
@@ -821,6 +961,34 @@ JSONArray& JSONObject::getArray(const TextString& name, JSONArray& target) const
 
     JSONRequest request;
     request.m_request = GET_ARRAY;
+
+    if (index() == 0)
+    {
+        // The first array of that name - as parsing for it would find
+
+        int found = 0;
+        int code = hash(name, 0, name.length());
+        for (int entry = 0; entry < m_indexSize; entry += INDEX_ENTRY)
+        {
+            if ((m_index[entry + 4] != code) || (! match(name, m_index[entry], m_index[entry + 1])))
+                continue;
+
+            found = 1;
+            if (charAt(m_index[entry + 2]) != '[')
+                continue;
+
+            // Parse just the array - an empty name matches so each element is added
+            request.m_array = new JSONArray();
+            ((JSONObject*)this)->parse(m_index[entry + 2], &request); // I know that this request is const !
+
+            target = *request.m_array;
+            return target;
+        }
+
+        target.m_error = found ? "Not an array" : "Did not find array";
+        return target;
+    }
+
     request.m_name = name;
 
     ((JSONObject*)this)->parse(m_start, &request); // I know that this request is const !
@@ -857,6 +1025,16 @@ int JSONObject::getValue(const TextString& name, int type, TextString& target) c
         return -1;
     }
 
+    if (index() == 0)
+    {
+        int entry = find(name);
+        if (entry < 0)
+            return -1;
+
+        target = substring(m_index[entry + 2], m_index[entry + 3]);
+        return 0;
+    }
+
     JSONRequest request;
     request.m_request = type;
     request.m_name = name;
@@ -881,6 +1059,14 @@ JSONMap& JSONObject::getMap(JSONMap& target) const
         return target;
     }
 
+    if (index() == 0)
+    {
+        for (int entry = 0; entry < m_indexSize; entry += INDEX_ENTRY)
+            target.putRaw(unescape(substring(m_index[entry], m_index[entry + 1])),
+                          substring(m_index[entry + 2], m_index[entry + 3]));
+        return target;
+    }
+
     JSONRequest request;
     request.m_request = GET_MAP;
     request.m_map = &target;
@@ -900,6 +1086,13 @@ List<TextString>& JSONObject::getNames(List<TextString>& target) const
         return target;
     }
 
+    if (index() == 0)
+    {
+        for (int entry = 0; entry < m_indexSize; entry += INDEX_ENTRY)
+            target.add(unescape(substring(m_index[entry], m_index[entry + 1])));
+        return target;
+    }
+
     JSONRequest request;
     request.m_request = GET_NAMES;
     request.m_names = &target;
@@ -911,6 +1104,129 @@ List<TextString>& JSONObject::getNames(List<TextString>& target) const
     return target;
 }
 
+//-----------------------------------------------------------------------------------
+// The first lookup parses the top level once and keeps where each name and value
+//    starts and ends - later lookups compare names against the index, by hash and
+//    then character by character, and take the value straight from the text.
+// Anything that changes the text drops the index.
+// An object that is invalid or open pending additions is not indexed and lookups
+//    fall back to parsing as they go.
+//-----------------------------------------------------------------------------------
+int JSONObject::index() const
+{
+    if (m_index != 0)
+        return 0;
+
+    if ((m_stackIdx >= 0) || (m_error.length() > 0))
+        return -1;
+
+    JSONRequest request;
+    request.m_request = GET_INDEX;
+
+    JSONObject* self = (JSONObject*)this; // I know that this request is const !
+    self->m_indexCapacity = 8 * INDEX_ENTRY;
+    self->m_index = new int[m_indexCapacity];
+    if (self->m_index == 0)
+        abort();
+    self->m_indexSize = 0;
+
+    if (self->parse(m_start, &request) < 0)
+    {
+        delete[] self->m_index;
+        self->m_index = 0;
+        self->m_indexSize = 0;
+        return -1;
+    }
+
+    return 0;
+}
+
+int JSONObject::find(const TextString& name) const
+{
+    int code = hash(name, 0, name.length());
+    for (int entry = 0; entry < m_indexSize; entry += INDEX_ENTRY)
+    {
+        if ((m_index[entry + 4] == code) && match(name, m_index[entry], m_index[entry + 1]))
+            return entry;
+    }
+
+    return -1;
+}
+
+void JSONObject::addIndex(int nameStart, int nameEnd, int valueStart, int valueEnd)
+{
+    if (m_indexSize + INDEX_ENTRY > m_indexCapacity)
+    {
+        int* index = new int[m_indexCapacity * 2];
+        if (index == 0)
+            abort();
+        for (int i = 0; i < m_indexSize; i++)
+            index[i] = m_index[i];
+        delete[] m_index;
+        m_index = index;
+        m_indexCapacity *= 2;
+    }
+
+    m_index[m_indexSize++] = nameStart;
+    m_index[m_indexSize++] = nameEnd;
+    m_index[m_indexSize++] = valueStart;
+    m_index[m_indexSize++] = valueEnd;
+
+    if ((charAt(nameStart) == '"') && (charAt(nameEnd - 1) == '"'))
+        m_index[m_indexSize++] = hash(*m_text, nameStart + 1, nameEnd - 1);
+    else
+        m_index[m_indexSize++] = hash(*m_text, nameStart, nameEnd);
+}
+
+void JSONObject::view(const TextString* text, int start, int end)
+{
+    m_buffer = "";
+    m_error = "";
+
+    m_start = start;
+    m_end = end;
+    m_text = (text != 0) ? text : &m_buffer;
+
+    if (m_stack != 0)
+        delete[] m_stack;
+    m_stack = 0;
+    m_stackIdx = -1;
+
+    if (m_index != 0)
+        delete[] m_index;
+    m_index = 0;
+    m_indexSize = 0;
+    m_indexCapacity = 0;
+}
+
+void JSONObject::detach()
+{
+    if (! isView())
+        return;
+
+    m_buffer = m_text->substring(m_start, m_end);
+    m_end = m_end - m_start;
+    m_start = 0;
+    m_text = &m_buffer;
+
+    // The index holds offsets into the text the view was reading
+
+    if (m_index != 0)
+        delete[] m_index;
+    m_index = 0;
+    m_indexSize = 0;
+}
+
+void JSONObject::modify()
+{
+    detach();
+
+    if (m_index != 0)
+        delete[] m_index;
+    m_index = 0;
+    m_indexSize = 0;
+}
+
 //-----------------------------------------------------------------------------------
 //
 //-----------------------------------------------------------------------------------
@@ -924,6 +1240,9 @@ const TextString& JSONObject::toString() const
     if (m_stackIdx >= 0)
         abort();
 
+    // A view has no text of its own to return a reference to
+    ((JSONObject*)this)->detach();
+
     return m_buffer;
 }
 
@@ -1021,19 +1340,22 @@ void JSONObject::dump(TextString& buffer, int level) const
 //-----------------------------------------------------------------------------------
 //
 //-----------------------------------------------------------------------------------
+// A view is only ever parsed from m_start - it was valid when it was taken so the
+//    parse ends at m_end without needing to be told
+
 int JSONObject::length() const
 {
-    return m_buffer.length();
+    return m_text->length();
 }
 
 char JSONObject::charAt(int index) const
 {
-    return m_buffer.charAt(index);
+    return m_text->charAt(index);
 }
 
 TextString JSONObject::substring(int start, int end) const
 {
-    return m_buffer.substring(start, end);
+    return m_text->substring(start, end);
 }
 
 int JSONObject::match(const JSONRequest& request, int start, int end) const
@@ -1041,18 +1363,23 @@ int JSONObject::match(const JSONRequest& request, int start, int end) const
     if (request.m_name.length() == 0)
         return 1;
 
+    return match(request.m_name, start, end);
+}
+
+int JSONObject::match(const TextString& name, int start, int end) const
+{
     if ((charAt(start) == '"') && (charAt(end - 1) == '"'))
     {
         start++;
         end--;
     }
 
-    if (request.m_name.length() != end - start)
+    if (name.length() != end - start)
         return 0;
 
     for (int i = 0; i < end - start; i++)
     {
-        if (request.m_name.charAt(i) != charAt(start + i))
+        if (name.charAt(i) != charAt(start + i))
             return 0;
     }
 
@@ -1062,7 +1389,7 @@ int JSONObject::match(const JSONRequest& request, int start, int end) const
 void JSONObject::setError(const TextString& text, int current)
 {
     int start = 0;
-    int end = m_buffer.length();
+    int end = length();
 
     if (end - current > 40)
         end = current + 40;
@@ -1070,8 +1397,8 @@ void JSONObject::setError(const TextString& text, int current)
         start = current - 40;
 
     m_error = text; 
-    m_error.append(" [").append(m_buffer.substring(start, current))
-           .append("] ! [").append(m_buffer.substring(current, end)).append("]");
+    m_error.append(" [").append(substring(start, current))
+           .append("] ! [").append(substring(current, end)).append("]");
 }
 
 int JSONObject::parse2(int start, JSONRequest* request)
@@ -1103,9 +1430,9 @@ int JSONObject::parse(int start, JSONRequest* request)
     {
         if (m_verbose)
         {
-            Logger::instance().log(TextString("start[").append(m_buffer.substring(start, start + 1))
+            Logger::instance().log(TextString("start[").append(substring(start, start + 1))
                                    .append("] cur[").append(current)
-                                   .append("] inputc[").append(current >= length() ? "eos" : m_buffer.substring(current, current + 1))
+                                   .append("] inputc[").append(current >= length() ? "eos" : substring(current, current + 1))
                                    .append("] nStart[").append(nameStart)
                                    .append("] nEnd[").append(nameEnd)
                                    .append("] :[").append(colon)
@@ -1327,7 +1654,9 @@ int JSONObject::parse(int start, JSONRequest* request)
                 }
                 else if (charAt(start) == '{')
                 {
-                    if (request->m_request == GET_MAP)
+                    if (request->m_request == GET_INDEX)
+                        addIndex(nameStart, nameEnd, valueStart, valueEnd);
+                    else if (request->m_request == GET_MAP)
                         request->m_map->putRaw(unescape(substring(nameStart, nameEnd)), substring(valueStart, valueEnd));
                     else if (request->m_request == GET_NAMES)
                         request->m_names->add(unescape(substring(nameStart, nameEnd)));
@@ -1537,7 +1866,7 @@ void JSONObject::fixupRemove(int start, int end)
         m_buffer.replace(i, end, "");
     else 
     {
-        for (i = end + 1; ; i++)
+        for (i = end; ; i++)
         {
             if (charAt(i) > ' ')
             break;
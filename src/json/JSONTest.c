@@ -0,0 +1,249 @@
+//-----------------------------------------------------------------------------------
+// Copyright (c) 2009-2013, Gordon Beck (gordon.beck@aventinus.org). All rights reserved.
+//
+//    This file is part of a suite of tools.
+//
+//    The tools are free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    The tools are distributed in the hope that they will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with these tools.  If not, see <http://www.gnu.org/licenses/>.
+//-----------------------------------------------------------------------------------
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+
+#include "JSONArray.h"
+#include "JSONMap.h"
+#include "JSONObject.h"
+
+//-----------------------------------------------------------------------------------
+// Host tests for the JSON classes, run with "make jsontest". Each check prints a
+//    line and the exit status is the number that failed.
+//-----------------------------------------------------------------------------------
+static int failures = 0;
+
+static void test(const char* what, const TextString& actual, const char* expected)
+{
+    if (actual.equals(expected))
+        printf("OK   %s\n", what);
+    else
+    {
+        printf("FAIL %s - got [%s] expected [%s]\n", what, (const char*)actual, expected);
+        failures++;
+    }
+}
+
+static void test(const char* what, int actual, int expected)
+{
+    test(what, TextString(actual), (const char*)TextString(expected));
+}
+
+//-----------------------------------------------------------------------------------
+//
+//-----------------------------------------------------------------------------------
+static void testParse()
+{
+    test("valid {}", JSONObject("{}").hasError(), 0);
+    test("valid {a:1}", JSONObject("{a:1}").hasError(), 0);
+    test("valid { a : 1 , b : 2 }", JSONObject(" { a : 1 , b : 2 } ").hasError(), 0);
+    test("valid {a:1 b:2}", JSONObject("{a:1 b:2}").hasError(), 0);
+    test("valid {a:[2,3]}", JSONObject("{a:[2,3]}").hasError(), 0);
+    test("valid {a:{b:{}}}", JSONObject("{a:{b:{}}}").hasError(), 0);
+
+    test("invalid {1}", JSONObject("{1}").hasError(), 1);
+    test("invalid {, a:1 }", JSONObject("{, a:1 }").hasError(), 1);
+    test("invalid {a:[b:2]}", JSONObject("{a:[b:2]}").hasError(), 1);
+    test("invalid {a:{[]}}", JSONObject("{a:{[]}}").hasError(), 1);
+    test("invalid {a:1", JSONObject("{a:1").hasError(), 1);
+}
+
+static void testGet()
+{
+    JSONObject object("{\"a\":{c:[2,3]} b:{d:[4,5], h:{i:3}, j:p} c:6 d:\"7\\\"\" e:[2, {f:9}, [10, 11]] c:8}");
+
+    test("contains('a')", object.contains("a"), 1);
+    test("contains('e')", object.contains("e"), 1);
+    test("contains('f')", object.contains("f"), 0);
+    test("contains('')", object.contains(""), 0);
+
+    test("getString('c') - first of duplicates", object.getString("c"), "6");
+    test("getString('d') - unescaped", object.getString("d"), "7\"");
+    test("getString('x', 'z')", object.getString("x", "z"), "z");
+
+    int value = 0;
+    test("getInteger('c')", object.getInteger("c", value), 0);
+    test("getInteger('c') value", value, 6);
+    test("getInteger('x')", object.getInteger("x", value), -1);
+    test("getInteger('x', 42)", object.getInteger("x", value, 42), 0);
+    test("getInteger('x', 42) value", value, 42);
+
+    JSONObject a;
+    test("getObject('a')", object.getObject("a", a).toString(), "{c:[2,3]}");
+    test("getObject('a').isView()", a.isView(), 0);
+
+    JSONObject b;
+    object.getObject("b", b);
+    test("getObject('b').getString('j')", b.getString("j"), "p");
+
+    JSONObject h;
+    test("getObject('b').getObject('h')", b.getObject("h", h).toString(), "{i:3}");
+
+    JSONArray d;
+    test("getObject('b').getArray('d')", b.getArray("d", d).toString(), "[4,5]");
+    test("getObject('b').getArray('d').getString(1)", d.getString(1), "5");
+
+    JSONArray e;
+    object.getArray("e", e);
+    test("getArray('e').size()", e.size(), 3);
+    test("getArray('e').getString(0)", e.getString(0), "2");
+    test("getArray('e').toString(1)", e.toString(1), "{f:9}");
+    test("getArray('e').toString(2)", e.toString(2), "[10, 11]");
+
+    JSONArray notArray;
+    test("getArray('c') - not an array", notArray.getError(), "");
+    object.getArray("c", notArray);
+    test("getArray('c') - not an array", notArray.getError(), "Not an array");
+
+    JSONArray missing;
+    object.getArray("x", missing);
+    test("getArray('x') - missing", missing.getError(), "Did not find array");
+
+    List<TextString> names;
+    object.getNames(names);
+    test("getNames() size", names.size(), 6);
+    test("getNames() 0", names.get(0), "a");
+    test("getNames() 5", names.get(5), "c");
+
+    JSONMap map;
+    object.getMap(map);
+    test("getMap() size", map.size(), 5);
+    test("getMap() isObject('b')", map.isObject("b"), 1);
+    test("getMap() getString('d')", map.getString("d"), "7\"");
+}
+
+static void testView()
+{
+    JSONObject object("{a:{b:{c:1, d:\"x y\"}, e:[1,2]} f:2}");
+
+    JSONObject a;
+    object.getView("a", a);
+    test("getView('a').isView()", a.isView(), 1);
+    test("getView('a').hasError()", a.hasError(), 0);
+    test("getView('a').contains('b')", a.contains("b"), 1);
+    test("getView('a').contains('f')", a.contains("f"), 0);
+
+    JSONObject b;
+    a.getView("b", b);
+    test("getView('a').getView('b').getString('d')", b.getString("d"), "x y");
+
+    int c = 0;
+    b.getInteger("c", c);
+    test("getView('a').getView('b').getInteger('c')", c, 1);
+
+    JSONArray e;
+    test("getView('a').getArray('e')", a.getArray("e", e).toString(), "[1,2]");
+
+    JSONObject copy(b);
+    test("copy of a view owns its text", copy.isView(), 0);
+    test("copy of a view getString('d')", copy.getString("d"), "x y");
+
+    JSONObject assigned;
+    assigned = b;
+    test("assigned view owns its text", assigned.isView(), 0);
+    test("assigned view toString()", assigned.toString(), "{c:1, d:\"x y\"}");
+
+    // A copy outlives the object its view was taken from
+
+    JSONObject* source = new JSONObject("{h:{i:\"j\"}}");
+    JSONObject h;
+    source->getView("h", h);
+    JSONObject kept(h);
+    JSONObject keptAssigned;
+    keptAssigned = h;
+    delete source;
+    test("copy outlives source", kept.getString("i"), "j");
+    test("assignment outlives source", keptAssigned.getString("i"), "j");
+
+    // Assigning a view of an object to that object
+
+    JSONObject self("{k:{l:1}}");
+    JSONObject k;
+    self.getView("k", k);
+    self = k;
+    test("assign own view", self.toString(), "{l:1}");
+
+    JSONObject f;
+    object.getView("f", f);
+    test("getView('f') - not an object", f.getError(), "Not an object");
+
+    JSONObject x;
+    object.getView("x", x);
+    test("getView('x') - missing", x.getError(), "Did not find object");
+
+    // Changing a view gives it its own text and leaves the original alone
+
+    b.add("g", 3);
+    test("view add() detaches", b.isView(), 0);
+    test("view add()", b.toString(), "{c:1, d:\"x y\",\"g\":3}");
+    test("original unchanged", object.toString(), "{a:{b:{c:1, d:\"x y\"}, e:[1,2]} f:2}");
+
+    test("view toString()", a.toString(), "{b:{c:1, d:\"x y\"}, e:[1,2]}");
+    test("view toString() detaches", a.isView(), 0);
+
+    // Reading a view into the object it reads
+
+    JSONObject outer("{a:{b:{c:1}}}");
+    JSONObject inner;
+    outer.getView("a", inner);
+    inner.getView("b", outer);
+    test("view into its own source", outer.toString(), "{c:1}");
+}
+
+static void testChange()
+{
+    JSONObject object("{a:1, b:{c:2}, d:[3]}");
+
+    test("before add", object.contains("e"), 0);
+    object.add("e", 4);
+    test("after add contains('e')", object.contains("e"), 1);
+    test("after add getString('e')", object.getString("e"), "4");
+
+    TextString value;
+    object.removeValue("a", value);
+    test("removeValue('a')", value, "1");
+    test("after remove contains('a')", object.contains("a"), 0);
+    test("after remove getString('e')", object.getString("e"), "4");
+
+    JSONObject b;
+    object.removeObject("b", b);
+    test("removeObject('b')", b.toString(), "{c:2}");
+    test("after remove", object.toString(), "{  d:[3],\"e\":4}");
+
+    object.key("f").startArray().value(5).endArray();
+    test("after key() contains('f')", object.contains("f"), 1);
+
+    JSONArray f;
+    test("after key() getArray('f')", object.getArray("f", f).toString(), "[5]");
+}
+
+//-----------------------------------------------------------------------------------
+//
+//-----------------------------------------------------------------------------------
+int main(int argc, char** argv)
+{
+    testParse();
+    testGet();
+    testView();
+    testChange();
+
+    printf("%d failed\n", failures);
+    return failures;
+}
@@ -24,6 +24,8 @@ import java.lang.reflect.Proxy;
 import java.net.*;
 import java.io.*;
 import java.sql.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import org.aventinus.util.*;
 
@@ -41,7 +43,16 @@ public class Database implements Runnable
     private static Logger logger = Logger.logger(Database.class);
 
     private static HashMap<String, Driver> drivers;
-    private ArrayList<LocalConnection> connections;
+    private final ConcurrentHashMap<String, Pool> pools = new ConcurrentHashMap<String, Pool>();
+    private final ThreadLocal<AsyncTask<?>> running = new ThreadLocal<AsyncTask<?>>();
+    private volatile Executor executor = null;
+    private final ThreadLocal<HashMap<String, LocalConnection>> owned = new ThreadLocal<HashMap<String, LocalConnection>>()
+    {
+        protected HashMap<String, LocalConnection> initialValue()
+        {
+            return new HashMap<String, LocalConnection>();
+        }
+    };
     private Object oracleCursor = null;
     private Class<?> oracleTimestampClass = null;
 
@@ -50,13 +61,14 @@ public class Database implements Runnable
     private int requests = 0;
     private long requestTime = 0;
 
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+
     //-------------------------------------------------------------------------------
     //
     //-------------------------------------------------------------------------------
     public Database()
     {
-        connections = new ArrayList<LocalConnection>();
-
         if (toolbox.getStringProperty("sqlLogSql", "N").equals("Y"))
             setLogging(true);
 
@@ -114,7 +126,18 @@ public class Database implements Runnable
 
     public void dumpStatistics()
     {
-        logger.log("requestCount=" + requests + " avgResponse=" + Toolbox.normalise((double)requestTime / requests, 2));
+        logger.log("requestCount=" + requests + " avgResponse=" + Toolbox.normalise((double)requestTime / requests, 2)
+                   + " statementHits=" + statementHits.get() + " statementMisses=" + statementMisses.get());
+    }
+
+    public long getStatementHits()
+    {
+        return statementHits.get();
+    }
+
+    public long getStatementMisses()
+    {
+        return statementMisses.get();
     }
 
     //-------------------------------------------------------------------------------
@@ -136,13 +159,292 @@ public class Database implements Runnable
     }
 
     public void executeQuery(String tag, String text, Retriever retriever, int maxrows)
+    {
+        executeQuery(tag, text, retriever, maxrows, 0);
+    }
+
+    // fetchSize overrides the rows per round trip configured for the tag - see fetchSize()
+    public void executeQuery(String tag, String text, Retriever retriever, int maxrows, int fetchSize)
     {
         requests++;
         long start = System.currentTimeMillis();
-        getConnection(tag).executeQuery(text, retriever, maxrows);
+        getConnection(tag).executeQuery(text, retriever, maxrows, fetchSize);
         requestTime += (System.currentTimeMillis() - start);
     }
 
+    //-------------------------------------------------------------------------------
+    // See DatabaseCursor. If the thread holds no connection for the tag the cursor
+    //    borrows one of its own from the tag's pool, so that the cursor can be read and
+    //    closed on another thread. If it holds one - in a begin() or after any other
+    //    call that has not been released - the cursor reads on that connection and is
+    //    closed when the connection is released.
+    //-------------------------------------------------------------------------------
+    public DatabaseCursor<ArrayList<Pair<String, Object>>> openCursor(String text)
+    {
+        return openCursor(DEFAULT_TAG, text, DatabaseCursor.rows(), 0);
+    }
+
+    public DatabaseCursor<ArrayList<Pair<String, Object>>> openCursor(String tag, String text)
+    {
+        return openCursor(tag, text, DatabaseCursor.rows(), 0);
+    }
+
+    public <T> DatabaseCursor<T> openCursor(String tag, String text, DatabaseCursor.Mapper<T> mapper)
+    {
+        return openCursor(tag, text, mapper, 0);
+    }
+
+    public <T> DatabaseCursor<T> openCursor(String tag, String text, DatabaseCursor.Mapper<T> mapper, int fetchSize)
+    {
+        requests++;
+
+        boolean dedicated = ! connectionExists(tag);
+
+        LocalConnection connection;
+        if (dedicated)
+        {
+            // The cursor owns it, not this thread - the cursor may be read and closed on
+            //    another, and cleanup() must not reclaim it when this one ends
+            connection = pool(tag).borrow();
+        }
+        else
+        {
+            connection = getConnection(tag);
+        }
+
+        try
+        {
+            ResultSet set = connection.openCursor(text, fetchSize);
+            return new DatabaseCursor<T>(this, connection, dedicated, set, set.getStatement(), mapper);
+        }
+        catch (SQLException exception)
+        {
+            connection.setError();
+            if (dedicated)
+            {
+                returnConnection(connection);
+            }
+            throw new DatabaseException(exception.getMessage(), exception);
+        }
+        catch (RuntimeException exception)
+        {
+            if (dedicated)
+            {
+                returnConnection(connection);
+            }
+            throw exception;
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // The calls below return at once and run on the executor - setExecutor() or by
+    //    default sqlAsyncThreads (8) daemon threads. A call takes connections on its
+    //    worker thread as any caller would and releases them when it completes, so
+    //    the workers hold nothing between calls. Cancelling the future cancels the
+    //    statement that is running with Statement.cancel(); the connection is then
+    //    in error and is closed rather than reused. Retrievers run on the worker.
+    //-------------------------------------------------------------------------------
+    public void setExecutor(Executor value)
+    {
+        executor = value;
+    }
+
+    public CompletableFuture<Void> executeQueryAsync(String tag, String text, Retriever retriever)
+    {
+        return executeQueryAsync(tag, text, retriever, 0);
+    }
+
+    public CompletableFuture<Void> executeQueryAsync(final String tag, final String text, final Retriever retriever, final int maxrows)
+    {
+        return submit(new Callable<Void>()
+        {
+            public Void call()
+            {
+                executeQuery(tag, text, retriever, maxrows);
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> executeUpdateAsync(final String tag, final String text)
+    {
+        return submit(new Callable<Integer>()
+        {
+            public Integer call()
+            {
+                return executeUpdate(tag, text);
+            }
+        });
+    }
+
+    public CompletableFuture<int[]> executeUpdateAsync(final String tag, final String[] text)
+    {
+        return submit(new Callable<int[]>()
+        {
+            public int[] call()
+            {
+                return executeUpdate(tag, text);
+            }
+        });
+    }
+
+    // work runs between begin() and commit() on one connection - an exception rolls it back
+    public <T> CompletableFuture<T> transactionAsync(final String tag, final Callable<T> work)
+    {
+        return submit(new Callable<T>()
+        {
+            public T call() throws Exception
+            {
+                begin(tag);
+                boolean committed = false;
+                try
+                {
+                    T result = work.call();
+                    commit(tag);
+                    committed = true;
+                    return result;
+                }
+                finally
+                {
+                    if (! committed)
+                    {
+                        try
+                        {
+                            rollback(tag);
+                        }
+                        catch (DatabaseException exception)
+                        {
+                            // ignore - the original failure is reported
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    public <T> CompletableFuture<T> submit(Callable<T> work)
+    {
+        AsyncTask<T> task = new AsyncTask<T>(work);
+        executor().execute(task);
+        return task;
+    }
+
+    private Executor executor()
+    {
+        Executor current = executor;
+        if (current == null)
+        {
+            synchronized(this)
+            {
+                if (executor == null)
+                {
+                    int threads = toolbox.getIntegerProperty("sqlAsyncThreads", 8);
+                    executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+                    {
+                        private int count = 0;
+
+                        public synchronized Thread newThread(Runnable runnable)
+                        {
+                            Thread thread = new Thread(runnable);
+                            thread.setName("DatabaseAsync-" + (count++));
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                }
+                current = executor;
+            }
+        }
+        return current;
+    }
+
+    private final class AsyncTask<T> extends CompletableFuture<T> implements Runnable
+    {
+        private final Callable<T> work;
+
+        // The connections this call took and still holds - its worker releases them and
+        //    cancel() stops them
+        final ConcurrentLinkedQueue<LocalConnection> used = new ConcurrentLinkedQueue<LocalConnection>();
+
+        AsyncTask(Callable<T> work)
+        {
+            this.work = work;
+        }
+
+        public void run()
+        {
+            if (isDone())
+            {
+                return;
+            }
+
+            T result = null;
+            Throwable failure = null;
+
+            running.set(this);
+            try
+            {
+                result = work.call();
+            }
+            catch (Throwable exception)
+            {
+                failure = exception;
+            }
+            finally
+            {
+                HashMap<String, LocalConnection> held = owned.get();
+                for (LocalConnection connection : used)
+                {
+                    if (held.get(connection.getTag()) == connection)
+                    {
+                        try
+                        {
+                            release(connection);
+                        }
+                        catch (RuntimeException exception)
+                        {
+                            // the future must still be completed
+                            logger.log(exception);
+                        }
+                    }
+                }
+                used.clear();
+
+                running.remove();
+            }
+
+            // Only once the connections are back - whoever waits on the future may
+            //    go on to use or close them
+            if (failure == null)
+            {
+                complete(result);
+            }
+            else
+            {
+                completeExceptionally(failure);
+                if (failure instanceof Error)
+                {
+                    throw (Error)failure;
+                }
+            }
+        }
+
+        public boolean cancel(boolean interrupt)
+        {
+            boolean cancelled = super.cancel(interrupt);
+            if (cancelled)
+            {
+                for (LocalConnection connection : used)
+                {
+                    // Only while it is still this call's - not once it has gone back to
+                    //    the pool and been borrowed since
+                    connection.cancelExecuting(this);
+                }
+            }
+            return cancelled;
+        }
+    }
+
     //-------------------------------------------------------------------------------
     //
     //-------------------------------------------------------------------------------
@@ -278,7 +580,8 @@ public class Database implements Runnable
     {
         if (connectionExists(tag))
         {
-            getConnection(tag).rollback();
+            // Not getConnection() - a cancelled async call must still be able to roll back
+            owned.get().get(tag).rollback();
             release(tag);
         }
     }
@@ -302,73 +605,23 @@ public class Database implements Runnable
     //-------------------------------------------------------------------------------
     public void closeAll()
     {
-        synchronized(this)
+        for (Pool pool : pools.values())
         {
-            for (int entry = 0; entry < connections.size(); )
+            LocalConnection connection;
+            while ((connection = pool.idle.poll()) != null)
             {
-                LocalConnection connection = connections.get(entry);
-
-                if (connection.getThread() == null)
-                {
-                    connections.remove(entry);
-                    try
-                    {
-                        connection.rollback();
-                        connection.close();
-                    }
-                    catch (DatabaseException exception)
-                    {
-                        // ignore
-                    }
-                }
-                else
-                {
-                    entry++;
-                }
+                pool.discard(connection);
             }
         }
     }
 
     public void releaseAll()
     {
-        synchronized(this)
-        {
-            for (int entry = 0; entry < connections.size(); )
-            {
-                LocalConnection connection = connections.get(entry);
-
-                if (connection.getThread() == null)
-                {
-                    entry++;
-                    continue;
-                }
-
-                if (! connection.getThread().equals(Thread.currentThread()))
-                {
-                    entry++;
-                    continue;
-                }
-
-                if (connection.inError())
-                {
-                    connections.remove(entry);
-                    try
-                    {
-                        connection.rollback();
-                        connection.close();
-                    }
-                    catch (DatabaseException exception)
-                    {
-                        // ignore
-                    }
-                    continue;
-                }
+        HashMap<String, LocalConnection> held = owned.get();
 
-                connection.rollback();
-                connection.release();
-                connection.setThread(null);
-                entry++;
-            }
+        for (LocalConnection connection : held.values().toArray(new LocalConnection[held.size()]))
+        {
+            release(connection);
         }
     }
 
@@ -379,100 +632,107 @@ public class Database implements Runnable
             throw new DatabaseException("Invalid tag[" + tag + "]");
         }
 
-        synchronized(this)
+        LocalConnection connection = owned.get().get(tag);
+        if (connection != null)
         {
-            for (int entry = 0; entry < connections.size(); )
-            {
-                LocalConnection connection = connections.get(entry);
+            release(connection);
+        }
+    }
 
-                if (connection.getThread() == null)
-                {
-                    entry++;
-                    continue;
-                }
+    private void release(LocalConnection connection)
+    {
+        owned.get().remove(connection.getTag());
 
-                if (! connection.getTag().equals(tag))
-                {
-                    entry++;
-                    continue;
-                }
+        AsyncTask<?> task = running.get();
+        if (task != null)
+        {
+            task.used.remove(connection);
+        }
 
-                if (! connection.getThread().equals(Thread.currentThread()))
-                {
-                    entry++;
-                    continue;
-                }
+        returnConnection(connection);
+    }
 
-                if (connection.inError())
-                {
-                    connections.remove(entry);
-                    try
-                    {
-                        connection.rollback();
-                        connection.close();
-                    }
-                    catch (DatabaseException exception)
-                    {
-                        // ignore
-                    }
-                    continue;
-                }
+    // A connection that is not the thread's - a cursor's own - goes back to the pool
+    void returnConnection(LocalConnection connection)
+    {
+        Pool pool = pools.get(connection.getTag());
 
+        // Once back in the pool it is no longer the async call's to cancel
+        connection.setTask(null);
+
+        if (! connection.inError())
+        {
+            try
+            {
                 connection.rollback();
                 connection.release();
                 connection.setThread(null);
-                entry++;
+            }
+            catch (DatabaseException exception)
+            {
+                logger.log(exception);
             }
         }
+
+        pool.giveBack(connection);
     }
 
-    private void cleanup()
+    // Runs on the tick - TestDatabase runs it directly
+    void cleanup()
     {
-        synchronized(this)
-        {
-            long now = DateTime.now();
+        long now = DateTime.now();
 
-            int inuse = 0;
-            for (int entry = 0; entry < connections.size(); )
+        int total = 0;
+        int inuse = 0;
+        for (Pool pool : pools.values())
+        {
+            // The oldest idle connections are at the tail - somewhere between 5 & 10 minutes
+            //    depending on the tick frequency.
+            LocalConnection connection;
+            while ((pool.size.get() > pool.min) && ((connection = pool.idle.peekLast()) != null)
+                   && ((now - connection.getLastUsed()) / 1000 > 5 * 60))
             {
-                LocalConnection connection = connections.get(entry);
-
-                if (connection.getThread() == null)
-                {
-                    // somewhere between 5 & 10 minutes depending on the tick frequency.
-                    if ((now - connection.getLastUsed()) / 1000 > 5 * 60)
-                    {
-                        connections.remove(entry);
-                        connection.close();
-                    }
-                    else
-                    {
-                        entry++;
-                    }
-                }
-                else
+                if (pool.idle.removeLastOccurrence(connection))
                 {
-                    inuse++;
-                    logger.log("Thread id[" + connection.getThread().hashCode() 
-                                             + "] name[" + connection.getThread().getName() 
-                                             + "] currently has an assigned connection for tag[" + connection.getTag()
-                                             + "]");
-                    entry++;
+                    pool.discard(connection);
                 }
             }
 
-            if (connections.size() != 0)
+            for (LocalConnection used : pool.inuse)
             {
-                if (inuse > 0)
+                Thread thread = used.getThread();
+                if ((thread != null) && (! thread.isAlive()))
+                {
+                    // It died without releasing - without this its permit is lost for good
+                    logger.log("Thread name[" + thread.getName() + "] ended holding a connection for tag[" + used.getTag()
+                                             + "] - closing it");
+                    pool.reclaim(used);
+                }
+                else if (thread != null)
                 {
-                    logger.log("There are now " + connections.size() + " connections (" + inuse + " inuse)");
+                    logger.log("Thread id[" + thread.hashCode() 
+                                             + "] name[" + thread.getName() 
+                                             + "] currently has an assigned connection for tag[" + used.getTag()
+                                             + "]");
                 }
             }
+
+            total += pool.size.get();
+            inuse += pool.inuse.size();
+
+            pool.warm();
+        }
+
+        if ((total != 0) && (inuse > 0))
+        {
+            logger.log("There are now " + total + " connections (" + inuse + " inuse)");
         }
     }
 
     //-------------------------------------------------------------------------------
-    //
+    // A thread keeps the connection it was given for a tag until it releases it -
+    //    the begin/commit/release semantics depend on it - so the connections held
+    //    are found in a ThreadLocal without looking at any other thread's.
     //-------------------------------------------------------------------------------
     private boolean connectionExists(String tag)
     {
@@ -481,82 +741,223 @@ public class Database implements Runnable
             throw new DatabaseException("Invalid tag[" + tag + "]");
         }
 
-        synchronized(this)
+        return owned.get().containsKey(tag);
+    }
+
+    private LocalConnection getConnection(String tag)
+    {
+        if (tag.equals(""))
         {
-            for (int entry = 0; entry < connections.size(); entry++)
-            {
-                LocalConnection connection = connections.get(entry);
+            throw new DatabaseException("Invalid tag[" + tag + "]");
+        }
 
-                if (connection.getTag().equals(tag))
-                {
-                    if (connection.getThread() != null)
-                    {
-                        if (connection.getThread().equals(Thread.currentThread()))
-                        {
-                            return true;
-                        }
-                    }
-                }
-            }
+        // Every statement, and commit(), comes through here so a cancelled async call
+        //    stops at its next step - a transaction then rolls back rather than commits
+        AsyncTask<?> task = running.get();
+        if ((task != null) && task.isCancelled())
+        {
+            throw new CancellationException("Cancelled before using tag[" + tag + "]");
+        }
+
+        HashMap<String, LocalConnection> held = owned.get();
+
+        LocalConnection connection = held.get(tag);
+        if (connection != null)
+        {
+            return connection;
+        }
+
+        connection = pool(tag).borrow();
+        connection.setThread(Thread.currentThread());
+        held.put(tag, connection);
+
+        if (task != null)
+        {
+            connection.setTask(task);
+            task.used.add(connection);
         }
 
-        return false;
+        return connection;
     }
 
-    private LocalConnection getConnection(String tag)
+    private Pool pool(String tag)
     {
-        if (tag.equals(""))
+        Pool pool = pools.get(tag);
+        if (pool == null)
         {
-            throw new DatabaseException("Invalid tag[" + tag + "]");
+            Pool created = new Pool(tag);
+            pool = pools.putIfAbsent(tag, created);
+            if (pool == null)
+            {
+                pool = created;
+                pool.warm();
+            }
         }
+        return pool;
+    }
+
+    //-------------------------------------------------------------------------------
+    // The connections for one tag. Idle connections are on a lock free stack so the
+    //    most recently used is reused first and the oldest age out at the tail. A fair
+    //    semaphore bounds those in use to {tag}_sqlPoolMax - a borrower waits its turn
+    //    for up to {tag}_sqlPoolWait millis and then fails. {tag}_sqlPoolMin connections
+    //    are opened in the background and kept open.
+    //-------------------------------------------------------------------------------
+    private final class Pool
+    {
+        final String tag;
+        final int min;
+        final int max;
+        final long wait;
+
+        final ConcurrentLinkedDeque<LocalConnection> idle = new ConcurrentLinkedDeque<LocalConnection>();
+        final Set<LocalConnection> inuse = Collections.newSetFromMap(new ConcurrentHashMap<LocalConnection, Boolean>());
+        final AtomicInteger size = new AtomicInteger();
+        final Semaphore permits;
+        final AtomicBoolean warming = new AtomicBoolean();
 
-        synchronized(this)
+        Pool(String tag)
         {
-            LocalConnection candidate = null;
+            this.tag = tag;
+
+            int limit = toolbox.getIntegerProperty(tag + "_sqlPoolMax", 0);
+            max = (limit > 0) ? limit : Integer.MAX_VALUE;
+            min = Math.min(Math.max(toolbox.getIntegerProperty(tag + "_sqlPoolMin", 0), 0), max);
+            wait = toolbox.getLongProperty(tag + "_sqlPoolWait", 30000L);
+
+            permits = new Semaphore(max, true);
+        }
 
-            for (LocalConnection connection: connections)
+        LocalConnection borrow()
+        {
+            try
             {
-                if (connection.getTag().equals(tag))
+                if (! permits.tryAcquire(wait, TimeUnit.MILLISECONDS))
                 {
-                    if (connection.getThread() == null)
-                    {
-                        candidate = connection;
-                    }
-                    else if (connection.getThread().equals(Thread.currentThread()))
-                    {
-                        return connection;
-                    }
+                    throw new DatabaseException("No connection available for tag[" + tag + "] after " + wait + "ms");
                 }
             }
-
-            if (candidate != null)
+            catch (InterruptedException exception)
             {
-                candidate.setThread(Thread.currentThread());
-                return candidate;
+                Thread.currentThread().interrupt();
+                throw new DatabaseException("Interrupted waiting for a connection for tag[" + tag + "]", exception);
             }
 
-// not sure why it sometimes fails to find the candidate
-            for (int entry = 0; entry < connections.size(); entry++)
+            try
             {
-                LocalConnection connection = connections.get(entry);
-                if (connection.getTag().equals(tag) && (connection.getThread() == null))
+                LocalConnection connection = idle.poll();
+                if (connection == null)
                 {
-                    logger.info("Connection: tag[" + connection.getTag() + ":" + tag + "]=" + connection.getTag().equals(tag) 
-                                + " thread[" + (connection.getThread() == null ? "null" : String.valueOf(connection.getThread().hashCode())) + "]");
-                    logger.info("Failed to match candidate - exiting", new DatabaseException());
-                    System.exit(0);
+                    connection = create();
                 }
+                inuse.add(connection);
+                return connection;
+            }
+            catch (RuntimeException exception)
+            {
+                permits.release();
+                throw exception;
             }
         }
 
-        LocalConnection connection = createConnection(tag);
+        void giveBack(LocalConnection connection)
+        {
+            if (! inuse.remove(connection))
+            {
+                // Already reclaimed by cleanup() - closed and its permit released
+                return;
+            }
+
+            if (connection.inError() || (size.get() > max))
+            {
+                discard(connection);
+            }
+            else
+            {
+                idle.push(connection);
+            }
+
+            permits.release();
+        }
 
-        synchronized(this)
+        void reclaim(LocalConnection connection)
         {
-            connection.setThread(Thread.currentThread());
-            connections.add(connection);
+            if (inuse.remove(connection))
+            {
+                discard(connection);
+                permits.release();
+            }
+        }
 
-            return connection;
+        LocalConnection create()
+        {
+            size.incrementAndGet();
+            try
+            {
+                return createConnection(tag);
+            }
+            catch (RuntimeException exception)
+            {
+                size.decrementAndGet();
+                throw exception;
+            }
+        }
+
+        void discard(LocalConnection connection)
+        {
+            size.decrementAndGet();
+            try
+            {
+                connection.rollback();
+            }
+            catch (DatabaseException exception)
+            {
+                // ignore - it is closed anyway
+            }
+            try
+            {
+                connection.close();
+            }
+            catch (DatabaseException exception)
+            {
+                // ignore
+            }
+        }
+
+        // Opens connections up to min on a separate thread so no borrower waits for them
+        void warm()
+        {
+            if ((size.get() >= min) || (! warming.compareAndSet(false, true)))
+            {
+                return;
+            }
+
+            Thread thread = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        while (size.get() < min)
+                        {
+                            LocalConnection connection = create();
+                            connection.setThread(null);
+                            idle.addLast(connection);
+                        }
+                    }
+                    catch (RuntimeException exception)
+                    {
+                        logger.error("Failed to open connection for tag[" + tag + "]", exception);
+                    }
+                    finally
+                    {
+                        warming.set(false);
+                    }
+                }
+            });
+            thread.setName("DatabaseWarm-" + tag);
+            thread.setDaemon(true);
+            thread.start();
         }
     }
 
@@ -644,6 +1045,8 @@ public class Database implements Runnable
 
         String jdbcProtocol;
         String jdbcDriver;
+
+        int fetchSize;
     }
 
     private void getConnectionDetails(ConnectionDetails details)
@@ -658,6 +1061,8 @@ public class Database implements Runnable
         details.schema = toolbox.getStringProperty(details.tag + "_sqlSchema", "").trim();
         details.ldap = toolbox.getStringProperty("ldap", "").trim();
 
+        details.fetchSize = toolbox.getIntegerProperty(details.tag + "_sqlFetchSize", toolbox.getIntegerProperty("sqlFetchSize", -1));
+
         String jdbc = toolbox.getStringProperty(details.tag + "_sqlJDBC");
         details.jdbcProtocol = "";
         details.jdbcDriver = "";
@@ -1114,6 +1519,8 @@ public class Database implements Runnable
         {
             connection.executeUpdate("use " + details.database.trim());
         }
+
+        connection.setFetchSize(fetchSize(details, 0));
    }
 
     private Connection connectSqlServer(ConnectionDetails details)
@@ -1178,6 +1585,8 @@ public class Database implements Runnable
         {
             throw new DatabaseException(exception.getMessage(), exception);
         }
+
+        connection.setFetchSize(fetchSize(details, 0));
     }
 
     private Connection connectOracle(ConnectionDetails details)
@@ -1251,7 +1660,7 @@ public class Database implements Runnable
 
         info.put("user", details.username);
         info.put("password", details.password);
-        info.put("defaultRowPrefetch", "1000"); 
+        info.put("defaultRowPrefetch", String.valueOf(fetchSize(details, 1000)));
         info.put("v$session.program", toolbox.getStringProperty("program", "java"));
 
         String message = "Connecting tag[" + details.tag + "] to URL[" + mURL + "] user[" + details.username + "]";
@@ -1284,6 +1693,8 @@ public class Database implements Runnable
         {
             connection.executeUpdate("alter session set CURRENT_SCHEMA=" + details.schema.trim());
         }
+
+        connection.setFetchSize(fetchSize(details, 1000));
     }
 
     private Connection connectAS400(ConnectionDetails details)
@@ -1339,6 +1750,19 @@ public class Database implements Runnable
         {
             connection.executeUpdate("set SCHEMA " + details.schema.trim());
         }
+
+        connection.setFetchSize(fetchSize(details, 0));
+    }
+
+    //-------------------------------------------------------------------------------------------
+    // Rows fetched per round trip - {tag}_sqlFetchSize, else sqlFetchSize, else the vendor
+    //    default given (0 leaves it to the driver - 10 rows on Oracle's own default, hence
+    //    the 1000 for Oracle). A query can override it and a query with fewer maxrows
+    //    fetches no more than it needs.
+    //-------------------------------------------------------------------------------------------
+    private int fetchSize(ConnectionDetails details, int vendorDefault)
+    {
+        return (details.fetchSize >= 0) ? details.fetchSize : vendorDefault;
     }
 
     //-------------------------------------------------------------------------------------------
@@ -1392,16 +1816,33 @@ public class Database implements Runnable
     {
         private Connection connection;
         private String tag;
-        private Thread thread;
+        private volatile Thread thread;
         private long lastUsed = 0;
 
         private boolean hasAutoCommit = false;
 
         private ArrayList<DatabaseStatement> statements;
 
+        // Open cursors - closed by release() before the connection goes back to the pool
+        private final ArrayList<DatabaseCursor<?>> cursors = new ArrayList<DatabaseCursor<?>>();
+
         private Statement statement;
 
-        private boolean error = false;
+        // Prepared statements that have been closed, by SQL text, least recently used
+        //    first. The connection is only used by the thread that holds it.
+        private LinkedHashMap<String, PreparedStatement> prepared;
+        private final int preparedLimit;
+
+        private int fetchSize = 0;
+
+        // The statement running - see cancelExecuting()
+        private volatile Statement executing = null;
+
+        // The async call that holds the connection - set and cleared under the lock
+        //    cancelExecuting() takes
+        private AsyncTask<?> task = null;
+
+        private volatile boolean error = false;
 
         //---------------------------------------------------------------------------
         //
@@ -1410,6 +1851,20 @@ public class Database implements Runnable
         {
             this.tag = tag;
             statements = new ArrayList<DatabaseStatement>();
+
+            preparedLimit = toolbox.getIntegerProperty(tag + "_sqlStatementCache", 32);
+            prepared = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true)
+            {
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest)
+                {
+                    if (size() <= preparedLimit)
+                    {
+                        return false;
+                    }
+                    discard(eldest.getValue());
+                    return true;
+                }
+            };
         }
 
         public boolean isLogging()
@@ -1422,11 +1877,31 @@ public class Database implements Runnable
             hasAutoCommit = value;
         }
 
+        private void setFetchSize(int value)
+        {
+            fetchSize = value;
+        }
+
+        private void fetchSize(Statement statement, int override, int maxrows) throws SQLException
+        {
+            int rows = (override > 0) ? override : fetchSize;
+            if ((maxrows > 0) && ((rows <= 0) || (maxrows < rows)))
+            {
+                rows = maxrows;
+            }
+            statement.setFetchSize(rows);
+        }
+
         public boolean inError()
         {
             return error;
         }
 
+        protected void setError()
+        {
+            error = true;
+        }
+
         //---------------------------------------------------------------------------
         //
         //---------------------------------------------------------------------------
@@ -1498,6 +1973,83 @@ public class Database implements Runnable
             return statements.contains(statement);
         }
 
+        // A cursor on a connection of its own can be closed on another thread
+        protected void add(DatabaseCursor<?> cursor)
+        {
+            synchronized(cursors)
+            {
+                cursors.add(cursor);
+            }
+        }
+
+        protected void remove(DatabaseCursor<?> cursor)
+        {
+            synchronized(cursors)
+            {
+                cursors.remove(cursor);
+            }
+        }
+
+        //---------------------------------------------------------------------------
+        // A DatabaseStatement takes its PreparedStatement out of the cache and gives
+        //    it back on close() - two open statements never share one
+        //---------------------------------------------------------------------------
+        protected PreparedStatement prepare(String text) throws SQLException
+        {
+            PreparedStatement cached = prepared.remove(text);
+            if (cached != null)
+            {
+                statementHits.incrementAndGet();
+                return cached;
+            }
+
+            statementMisses.incrementAndGet();
+            return connection.prepareStatement(text);
+        }
+
+        protected void recycle(String text, PreparedStatement value) throws SQLException
+        {
+            if (error || (connection == null) || (preparedLimit <= 0) || prepared.containsKey(text))
+            {
+                value.close();
+                return;
+            }
+
+            try
+            {
+                value.clearParameters();
+                value.clearBatch();
+            }
+            catch (SQLException exception)
+            {
+                value.close();
+                return;
+            }
+
+            prepared.put(text, value);
+        }
+
+        private void discard(PreparedStatement value)
+        {
+            try
+            {
+                value.close();
+            }
+            catch (SQLException exception)
+            {
+                // ignore
+            }
+        }
+
+        private void discardPrepared()
+        {
+            for (PreparedStatement value : prepared.values())
+            {
+                discard(value);
+            }
+            prepared.clear();
+        }
+
         private Statement getSimpleStatement() throws SQLException
         {
             if (statement == null)
@@ -1508,8 +2060,52 @@ public class Database implements Runnable
            return statement;
         }
 
+        private synchronized void setTask(AsyncTask<?> value)
+        {
+            task = value;
+        }
+
+        // From another thread - an async call that has been cancelled. The lock keeps
+        //    the connection from going back to the pool, and to another call, until
+        //    the statement is cancelled. The connection is then closed, not reused.
+        private synchronized void cancelExecuting(AsyncTask<?> owner)
+        {
+            if (task != owner)
+            {
+                return;
+            }
+
+            setError();
+
+            Statement running = executing;
+            if (running != null)
+            {
+                try
+                {
+                    running.cancel();
+                }
+                catch (SQLException exception)
+                {
+                    // ignore - it may have finished
+                }
+            }
+        }
+
         private void release()
         {
+            executing = null;
+
+            DatabaseCursor<?>[] open;
+            synchronized(cursors)
+            {
+                open = cursors.toArray(new DatabaseCursor<?>[cursors.size()]);
+            }
+            for (DatabaseCursor<?> cursor : open)
+            {
+                // the close removes
+                cursor.close();
+            }
+
             while (statements.size() > 0)
             {
                 // the close removes
@@ -1601,7 +2197,7 @@ public class Database implements Runnable
         //---------------------------------------------------------------------------
         //
         //---------------------------------------------------------------------------
-        private void executeQuery(String text, Retriever retriever, int maxrows)
+        private void executeQuery(String text, Retriever retriever, int maxrows, int override)
         {
             Statement local = null;
 
@@ -1613,6 +2209,8 @@ public class Database implements Runnable
                 }
 
                 local = getSimpleStatement();
+                fetchSize(local, override, maxrows);
+                executing = local;
                 boolean resultType = local.execute(text);
                 fetchResults(resultType, local, retriever, maxrows);
             }
@@ -1623,12 +2221,71 @@ public class Database implements Runnable
                 logger.error("Query failed -" + text);
                 throw new DatabaseException(exception.getMessage(), exception);
             }
+            finally
+            {
+                executing = null;
+            }
+        }
+
+        //---------------------------------------------------------------------------
+        // A cursor has a Statement of its own so that other queries on the connection
+        //    do not close its ResultSet
+        //---------------------------------------------------------------------------
+        private ResultSet openCursor(String text, int override)
+        {
+            Statement local = null;
+
+            try
+            {
+                if (debugLog)
+                {
+                    log(text);
+                }
+
+                local = connection.createStatement();
+                fetchSize(local, override, 0);
+                executing = local;
+                return local.executeQuery(text);
+            }
+            catch (SQLException exception)
+            {
+                cancel(local);
+                error = true;
+                logger.error("Query failed -" + text);
+                throw new DatabaseException(exception.getMessage(), exception);
+            }
+            finally
+            {
+                executing = null;
+            }
+        }
+
+        protected ResultSet openCursor(PreparedStatement statement, int override)
+        {
+            try
+            {
+                fetchSize(statement, override, 0);
+                executing = statement;
+                return statement.executeQuery();
+            }
+            catch (SQLException exception)
+            {
+                cancel(statement);
+                error = true;
+                throw new DatabaseException(exception.getMessage(), exception);
+            }
+            finally
+            {
+                executing = null;
+            }
         }
 
-        protected void executeQuery(PreparedStatement statement, Retriever retriever, int maxrows)
+        protected void executeQuery(PreparedStatement statement, Retriever retriever, int maxrows, int override)
         {
             try
             {
+                fetchSize(statement, override, maxrows);
+                executing = statement;
                 boolean resultType = statement.execute();
                 fetchResults(resultType, statement, retriever, maxrows);
             }
@@ -1638,6 +2295,10 @@ public class Database implements Runnable
                 error = true;
                 throw new DatabaseException(exception.getMessage(), exception);
             }
+            finally
+            {
+                executing = null;
+            }
         }
 
         //---------------------------------------------------------------------------
@@ -1665,6 +2326,7 @@ public class Database implements Runnable
 
                 if (text.length == 1)
                 {
+                    executing = local;
                     boolean resultType = local.execute(text[0]);
                     return new int[] {fetchResults(resultType, local, null, 0)};
                 }
@@ -1674,6 +2336,7 @@ public class Database implements Runnable
                     {
                         local.addBatch(text[i]);
                     }
+                    executing = local;
                     return local.executeBatch();
                 }
             }
@@ -1683,6 +2346,10 @@ public class Database implements Runnable
                 error = true;
                 throw new DatabaseException(exception.getMessage(), exception);
             }
+            finally
+            {
+                executing = null;
+            }
         }
 
         protected int executeUpdate(PreparedStatement statement)
@@ -1692,6 +2359,7 @@ public class Database implements Runnable
 
             try
             {
+                executing = statement;
                 boolean resultType = statement.execute();
                 return fetchResults(resultType, statement, null, 0);
             }
@@ -1701,6 +2369,10 @@ public class Database implements Runnable
                 error = true;
                 throw new DatabaseException(exception.getMessage(), exception);
             }
+            finally
+            {
+                executing = null;
+            }
         }
 
         protected void addBatch(PreparedStatement statement)
@@ -1721,6 +2393,7 @@ public class Database implements Runnable
         {
             try
             {
+                executing = statement;
                 return statement.executeBatch();
             }
             catch (SQLException exception)
@@ -1729,6 +2402,10 @@ public class Database implements Runnable
                 error = true;
                 throw new DatabaseException(exception.getMessage(), exception);
             }
+            finally
+            {
+                executing = null;
+            }
         }
 
         //---------------------------------------------------------------------------
@@ -1842,6 +2519,7 @@ public class Database implements Runnable
                     }
                 }
 
+                executing = local;
                 boolean resultType = local.execute();
 //logger.info("resultType=" + resultType);
                 fetchResults(resultType, local, (retrievers == null ? null : retrievers[0]), (maxrows == null ? 0 : maxrows[0]));
@@ -1902,6 +2580,10 @@ public class Database implements Runnable
                 error = true;
                 throw new DatabaseException(exception.getMessage(), exception);
             }
+            finally
+            {
+                executing = null;
+            }
         }
 
         //---------------------------------------------------------------------------
@@ -2076,6 +2758,8 @@ public class Database implements Runnable
 
         private void close()
         {
+            discardPrepared();
+
             try
             {
                 connection.close();
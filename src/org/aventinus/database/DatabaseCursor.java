@@ -0,0 +1,227 @@
+//-----------------------------------------------------------------------------------
+// Copyright (c) 2009-2013, Gordon Beck (gordon.beck@aventinus.org). All rights reserved.
+//
+//    This file is part of a suite of tools.
+//
+//    The tools are free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    The tools are distributed in the hope that they will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with these tools.  If not, see <http://www.gnu.org/licenses/>.
+//-----------------------------------------------------------------------------------
+package org.aventinus.database;
+
+import java.util.*;
+import java.util.stream.*;
+import java.sql.*;
+
+import org.aventinus.util.*;
+
+//-----------------------------------------------------------------------------------
+// The rows of a query pulled one at a time rather than pushed to a Retriever. A row
+//    is only read from the ResultSet when hasNext() asks for it, so no more than the
+//    fetch size is ever held and a slow consumer simply reads more slowly.
+//
+// The cursor is closed when the last row has been read, by close() or by closing its
+//    stream(). A cursor opened by Database.openCursor() when the thread holds no
+//    connection for the tag has a connection of its own, which goes back to the pool
+//    when it is closed. Otherwise - and for DatabaseStatement.openCursor() - it reads
+//    on the thread's connection, leaves it held and is closed when that is released.
+//
+//    try (DatabaseCursor<ArrayList<Pair<String, Object>>> cursor = database.openCursor("select ..."))
+//    {
+//        cursor.stream().map(...).forEach(...);
+//    }
+//-----------------------------------------------------------------------------------
+public class DatabaseCursor<T> implements Iterator<T>, AutoCloseable
+{
+    //-------------------------------------------------------------------------------
+    // Makes the element for the row the ResultSet is on
+    //-------------------------------------------------------------------------------
+    public interface Mapper<T>
+    {
+        public T map(ResultSet set) throws SQLException;
+    }
+
+    private final Database database;
+    private final Database.LocalConnection connection;
+    private final boolean dedicated;
+    private final ResultSet set;
+    private final Statement statement;
+    private final Mapper<T> mapper;
+
+    private T current = null;
+    private boolean ready = false;
+    private volatile boolean closed = false;
+    private int rows = 0;
+
+    //-------------------------------------------------------------------------------
+    // statement is closed with the cursor - null for a DatabaseStatement's own
+    //-------------------------------------------------------------------------------
+    DatabaseCursor(Database database, Database.LocalConnection connection, boolean dedicated,
+                   ResultSet set, Statement statement, Mapper<T> mapper)
+    {
+        this.database = database;
+        this.connection = connection;
+        this.dedicated = dedicated;
+        this.set = set;
+        this.statement = statement;
+        this.mapper = mapper;
+
+        connection.add(this);
+    }
+
+    //-------------------------------------------------------------------------------
+    // Each row as its column names and values - as GenericRetriever keeps them
+    //-------------------------------------------------------------------------------
+    public static Mapper<ArrayList<Pair<String, Object>>> rows()
+    {
+        return new Mapper<ArrayList<Pair<String, Object>>>()
+        {
+            private String[] names = null;
+
+            public ArrayList<Pair<String, Object>> map(ResultSet set) throws SQLException
+            {
+                if (names == null)
+                {
+                    ResultSetMetaData meta = set.getMetaData();
+                    names = new String[meta.getColumnCount()];
+                    for (int i = 0; i < names.length; i++)
+                    {
+                        String name = meta.getColumnName(i + 1);
+                        names[i] = ((name == null) || (name.length() == 0)) ? "column" + (i + 1) : name;
+                    }
+                }
+
+                ArrayList<Pair<String, Object>> columns = new ArrayList<Pair<String, Object>>(names.length);
+                for (int i = 0; i < names.length; i++)
+                {
+                    columns.add(new Pair<String, Object>(names[i], set.getObject(i + 1)));
+                }
+                return columns;
+            }
+        };
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    public boolean hasNext()
+    {
+        if (ready)
+        {
+            return true;
+        }
+        if (closed)
+        {
+            return false;
+        }
+
+        try
+        {
+            if (! set.next())
+            {
+                close();
+                return false;
+            }
+
+            current = mapper.map(set);
+            ready = true;
+            rows++;
+            return true;
+        }
+        catch (SQLException exception)
+        {
+            connection.setError();
+            close();
+            throw new DatabaseException(exception.getMessage(), exception);
+        }
+        catch (RuntimeException exception)
+        {
+            close();
+            throw exception;
+        }
+    }
+
+    public T next()
+    {
+        if (! hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+
+        T value = current;
+        current = null;
+        ready = false;
+        return value;
+    }
+
+    public int getRows()
+    {
+        return rows;
+    }
+
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    //-------------------------------------------------------------------------------
+    // The stream is as lazy as the cursor - parallel() stages downstream are fed in
+    //    batches read on whichever thread asks, one at a time
+    //-------------------------------------------------------------------------------
+    public Stream<T> stream()
+    {
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED);
+
+        return StreamSupport.stream(spliterator, false).onClose(new Runnable()
+        {
+            public void run()
+            {
+                close();
+            }
+        });
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    public void close()
+    {
+        if (closed)
+        {
+            return;
+        }
+        closed = true;
+        current = null;
+        ready = false;
+
+        try
+        {
+            set.close();
+            if (statement != null)
+            {
+                statement.close();
+            }
+        }
+        catch (SQLException exception)
+        {
+            connection.setError();
+        }
+        finally
+        {
+            connection.remove(this);
+            if (dedicated)
+            {
+                database.returnConnection(connection);
+            }
+        }
+    }
+}
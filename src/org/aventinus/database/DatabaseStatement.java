@@ -38,6 +38,7 @@ public class DatabaseStatement
 
     private String text;
     private Object[] values;
+    private int fetchSize = 0;
 
     public DatabaseStatement(Database.LocalConnection connection, String text)
     {
@@ -46,7 +47,7 @@ public class DatabaseStatement
             this.connection = connection;
             this.text = text;
 
-            statement = connection.getConnection().prepareStatement(text);
+            statement = connection.prepare(text);
 
             if (connection.isLogging())
             {
@@ -81,10 +82,12 @@ public class DatabaseStatement
 
         try
         {
-            statement.close();
+            // Back to the connection's cache rather than closed
+            PreparedStatement closing = statement;
             statement = null;
 
             connection.remove(this);
+            connection.recycle(text, closing);
         }
         catch (SQLException exception)
         {
@@ -109,7 +112,32 @@ public class DatabaseStatement
             connection.log(text, values, new int[] {maxrows});
         }
 
-        connection.executeQuery(statement, retriever, maxrows);
+        connection.executeQuery(statement, retriever, maxrows, fetchSize);
+    }
+
+    //-------------------------------------------------------------------------------
+    // See DatabaseCursor - the rows are read on the statement's connection, which stays
+    //    with the thread. The cursor must be closed before the statement.
+    //-------------------------------------------------------------------------------
+    public <T> DatabaseCursor<T> openCursor(DatabaseCursor.Mapper<T> mapper)
+    {
+        if (! connection.contains(this))
+        {
+            throw new DatabaseException("Statement is no longer part of connection - invalid use of release ?");
+        }
+
+        if (connection.isLogging())
+        {
+            connection.log(text, values, new int[] {0});
+        }
+
+        return new DatabaseCursor<T>(null, connection, false, connection.openCursor(statement, fetchSize), null, mapper);
+    }
+
+    // Rows per round trip for this statement's queries rather than the tag's
+    public void setFetchSize(int value)
+    {
+        fetchSize = value;
     }
 
     public int executeUpdate()
@@ -0,0 +1,411 @@
+//-----------------------------------------------------------------------------------
+// Copyright (c) 2009-2013, Gordon Beck (gordon.beck@aventinus.org). All rights reserved.
+//
+//    This file is part of a suite of tools.
+//
+//    The tools are free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    The tools are distributed in the hope that they will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with these tools.  If not, see <http://www.gnu.org/licenses/>.
+//-----------------------------------------------------------------------------------
+package org.aventinus.database;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+//-----------------------------------------------------------------------------------
+// A JDBC driver with no database behind it - for TestDatabase. Configure a tag with
+//    _sqlJDBC oracle:thin:org.aventinus.database.StubDriver. Every query returns
+//    rows rows of (ID, NAME), every update counts 1, and the counters say what the
+//    pool and the statement cache did.
+//-----------------------------------------------------------------------------------
+public class StubDriver implements Driver
+{
+    static final AtomicInteger opened = new AtomicInteger();
+    static final AtomicInteger open = new AtomicInteger();
+    static final AtomicInteger prepared = new AtomicInteger();
+    static final AtomicInteger statements = new AtomicInteger();
+    static final AtomicInteger results = new AtomicInteger();
+    static final AtomicInteger cancels = new AtomicInteger();
+    static final AtomicInteger commits = new AtomicInteger();
+    static final AtomicInteger rollbacks = new AtomicInteger();
+
+    static volatile int rows = 10;
+    static volatile int fetchSize = -1;
+
+    // The next execute fails
+    static volatile boolean fail = false;
+
+    // An execute waits this long (ms) unless it is cancelled
+    static volatile long block = 0;
+
+    public StubDriver()
+    {
+    }
+
+    static void reset()
+    {
+        prepared.set(0);
+        cancels.set(0);
+        commits.set(0);
+        rollbacks.set(0);
+        rows = 10;
+        fetchSize = -1;
+        fail = false;
+        block = 0;
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    public Connection connect(String url, Properties info)
+    {
+        opened.incrementAndGet();
+        open.incrementAndGet();
+
+        return (Connection)proxy(Connection.class, new InvocationHandler()
+                    {
+                        private boolean autoCommit = true;
+                        private boolean closed = false;
+
+                        public Object invoke(Object proxy, Method method, Object[] args)
+                        {
+                            String name = method.getName();
+                            if (name.equals("close"))
+                            {
+                                if (! closed)
+                                {
+                                    open.decrementAndGet();
+                                }
+                                closed = true;
+                                return null;
+                            }
+                            if (name.equals("isClosed"))
+                            {
+                                return closed;
+                            }
+                            if (name.equals("setAutoCommit"))
+                            {
+                                autoCommit = (Boolean)args[0];
+                                return null;
+                            }
+                            if (name.equals("getAutoCommit"))
+                            {
+                                return autoCommit;
+                            }
+                            if (name.equals("commit"))
+                            {
+                                commits.incrementAndGet();
+                                return null;
+                            }
+                            if (name.equals("rollback"))
+                            {
+                                rollbacks.incrementAndGet();
+                                return null;
+                            }
+                            if (name.equals("createStatement") || name.equals("prepareCall"))
+                            {
+                                return statement((Connection)proxy);
+                            }
+                            if (name.equals("prepareStatement"))
+                            {
+                                prepared.incrementAndGet();
+                                return statement((Connection)proxy);
+                            }
+                            return other(proxy, method, args);
+                        }
+                    });
+    }
+
+    private static PreparedStatement statement(final Connection connection)
+    {
+        statements.incrementAndGet();
+
+        return (PreparedStatement)proxy(CallableStatement.class, new InvocationHandler()
+                    {
+                        private boolean closed = false;
+                        private boolean cancelled = false;
+                        private int count = -1;
+
+                        public Object invoke(Object proxy, Method method, Object[] args) throws SQLException
+                        {
+                            String name = method.getName();
+                            if (name.equals("close"))
+                            {
+                                if (! closed)
+                                {
+                                    statements.decrementAndGet();
+                                }
+                                closed = true;
+                                return null;
+                            }
+                            if (name.equals("cancel"))
+                            {
+                                synchronized(this)
+                                {
+                                    cancelled = true;
+                                    notifyAll();
+                                }
+                                cancels.incrementAndGet();
+                                return null;
+                            }
+                            if (name.equals("hashCode") || name.equals("equals") || name.equals("toString"))
+                            {
+                                return other(proxy, method, args);
+                            }
+                            if (closed)
+                            {
+                                throw new SQLException("Statement closed");
+                            }
+                            if (name.equals("getConnection"))
+                            {
+                                return connection;
+                            }
+                            if (name.equals("setFetchSize"))
+                            {
+                                fetchSize = (Integer)args[0];
+                                return null;
+                            }
+                            if (name.startsWith("execute"))
+                            {
+                                execute();
+                                if (name.equals("executeQuery"))
+                                {
+                                    return results((Statement)proxy);
+                                }
+                                if (name.equals("executeBatch"))
+                                {
+                                    return new int[0];
+                                }
+                                count = 1;
+                                return (name.equals("executeUpdate") ? (Object)1 : (Object)false);
+                            }
+                            if (name.equals("getUpdateCount"))
+                            {
+                                int value = count;
+                                count = -1;
+                                return value;
+                            }
+                            return other(proxy, method, args);
+                        }
+
+                        private synchronized void execute() throws SQLException
+                        {
+                            if (connection.isClosed())
+                            {
+                                throw new SQLException("Connection closed");
+                            }
+                            cancelled = false;
+
+                            long end = System.currentTimeMillis() + block;
+                            long wait;
+                            while ((! cancelled) && ((wait = end - System.currentTimeMillis()) > 0))
+                            {
+                                try
+                                {
+                                    wait(wait);
+                                }
+                                catch (InterruptedException exception)
+                                {
+                                }
+                            }
+                            if (cancelled)
+                            {
+                                throw new SQLException("Statement cancelled");
+                            }
+
+                            if (fail)
+                            {
+                                fail = false;
+                                throw new SQLException("Statement failed");
+                            }
+                        }
+                    });
+    }
+
+    private static ResultSet results(final Statement statement)
+    {
+        results.incrementAndGet();
+
+        return (ResultSet)proxy(ResultSet.class, new InvocationHandler()
+                    {
+                        private boolean closed = false;
+                        private int row = 0;
+
+                        public Object invoke(Object proxy, Method method, Object[] args) throws SQLException
+                        {
+                            String name = method.getName();
+                            if (name.equals("close"))
+                            {
+                                if (! closed)
+                                {
+                                    results.decrementAndGet();
+                                }
+                                closed = true;
+                                return null;
+                            }
+                            if (name.equals("hashCode") || name.equals("equals") || name.equals("toString"))
+                            {
+                                return other(proxy, method, args);
+                            }
+                            if (closed || statement.getConnection().isClosed())
+                            {
+                                throw new SQLException("ResultSet closed");
+                            }
+                            if (name.equals("next"))
+                            {
+                                if (row == rows)
+                                {
+                                    return false;
+                                }
+                                row++;
+                                return true;
+                            }
+                            if (name.equals("getStatement"))
+                            {
+                                return statement;
+                            }
+                            if (name.equals("getMetaData"))
+                            {
+                                return metaData();
+                            }
+                            if (name.equals("getObject"))
+                            {
+                                return (args[0].equals(1) ? (Object)Integer.valueOf(row) : (Object)("name" + row));
+                            }
+                            if (name.equals("getInt") || name.equals("getLong"))
+                            {
+                                return (method.getReturnType() == long.class ? (Object)Long.valueOf(row) : (Object)row);
+                            }
+                            if (name.equals("getString"))
+                            {
+                                return (args[0].equals(1) ? String.valueOf(row) : "name" + row);
+                            }
+                            return other(proxy, method, args);
+                        }
+                    });
+    }
+
+    private static ResultSetMetaData metaData()
+    {
+        return (ResultSetMetaData)proxy(ResultSetMetaData.class, new InvocationHandler()
+                    {
+                        public Object invoke(Object proxy, Method method, Object[] args)
+                        {
+                            String name = method.getName();
+                            if (name.equals("getColumnCount"))
+                            {
+                                return 2;
+                            }
+                            if (name.equals("getColumnName") || name.equals("getColumnLabel"))
+                            {
+                                return (args[0].equals(1) ? "ID" : "NAME");
+                            }
+                            if (name.equals("getColumnType"))
+                            {
+                                return (args[0].equals(1) ? Types.INTEGER : Types.VARCHAR);
+                            }
+                            return other(proxy, method, args);
+                        }
+                    });
+    }
+
+    //-------------------------------------------------------------------------------
+    // Anything else is a no-op returning the type's default
+    //-------------------------------------------------------------------------------
+    private static Object proxy(Class<?> type, InvocationHandler handler)
+    {
+        return Proxy.newProxyInstance(StubDriver.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    private static Object other(Object proxy, Method method, Object[] args)
+    {
+        String name = method.getName();
+        if (name.equals("hashCode"))
+        {
+            return System.identityHashCode(proxy);
+        }
+        if (name.equals("equals"))
+        {
+            return proxy == args[0];
+        }
+        if (name.equals("toString"))
+        {
+            return "stub@" + Integer.toHexString(System.identityHashCode(proxy));
+        }
+
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class)
+        {
+            return false;
+        }
+        if (type == int.class)
+        {
+            return 0;
+        }
+        if (type == long.class)
+        {
+            return 0L;
+        }
+        if (type == short.class)
+        {
+            return (short)0;
+        }
+        if (type == byte.class)
+        {
+            return (byte)0;
+        }
+        if (type == double.class)
+        {
+            return 0.0;
+        }
+        if (type == float.class)
+        {
+            return 0.0f;
+        }
+        return null;
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    public boolean acceptsURL(String url)
+    {
+        return true;
+    }
+
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info)
+    {
+        return new DriverPropertyInfo[0];
+    }
+
+    public int getMajorVersion()
+    {
+        return 1;
+    }
+
+    public int getMinorVersion()
+    {
+        return 0;
+    }
+
+    public boolean jdbcCompliant()
+    {
+        return false;
+    }
+
+    public java.util.logging.Logger getParentLogger()
+    {
+        return null;
+    }
+}
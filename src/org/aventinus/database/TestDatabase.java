@@ -19,6 +19,8 @@
 package org.aventinus.database;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.net.*;
 import java.io.*;
 import java.math.*;
@@ -38,9 +40,18 @@ public class TestDatabase
     private int value10;
     private boolean useProc = false;
 
+    private static final String STUB = "STUB";
+
     public static void main(String[] args) 
     {
-        new TestDatabase().test();
+        if ((args.length > 0) && args[0].equals("stub"))
+        {
+            new TestDatabase().stub();
+        }
+        else
+        {
+            new TestDatabase().test();
+        }
     }
 
     public TestDatabase() 
@@ -147,6 +158,449 @@ break;
         }
     }
 
+    //-------------------------------------------------------------------------------
+    // Against StubDriver - no database needed
+    //-------------------------------------------------------------------------------
+    public void stub()
+    {
+        configure(STUB);
+
+        database = new Database();
+
+        pool();
+        statements();
+        fetchSize();
+        cursors();
+        cursorThread();
+        asyncCancel();
+        asyncTransaction();
+
+        database.releaseAll();
+        database.closeAll();
+        check(StubDriver.open.get() == 0, "closeAll left " + StubDriver.open.get() + " open");
+    }
+
+    private static String configure(String tag)
+    {
+        System.setProperty(tag + "_sqlHostname", "stub");
+        System.setProperty(tag + "_sqlPort", "1");
+        System.setProperty(tag + "_sqlUsername", "stub");
+        System.setProperty(tag + "_sqlPassword", "stub");
+        System.setProperty(tag + "_sqlService", "stub");
+        System.setProperty(tag + "_sqlJDBC", "oracle:thin:" + StubDriver.class.getName());
+        return tag;
+    }
+
+    //-------------------------------------------------------------------------------
+    // The pool opens sqlPoolMin connections ahead of need, never has more than
+    //    sqlPoolMax out and a borrower waits sqlPoolWait for one before failing
+    //-------------------------------------------------------------------------------
+    private void pool()
+    {
+        logger.log("Considering the pool bound, wait and pre-warming");
+        StubDriver.reset();
+        final String tag = configure("POOL");
+        System.setProperty(tag + "_sqlPoolMax", "3");
+        System.setProperty(tag + "_sqlPoolMin", "2");
+        System.setProperty(tag + "_sqlPoolWait", "200");
+        try
+        {
+            int opened = StubDriver.opened.get();
+            database.begin(tag);
+            database.commit(tag);
+
+            // The second is opened on a thread of its own
+            Thread.sleep(300);
+            check(StubDriver.opened.get() - opened == 2, "pre-warmed " + (StubDriver.opened.get() - opened));
+
+            final AtomicInteger live = new AtomicInteger();
+            final AtomicInteger peak = new AtomicInteger();
+            final AtomicInteger failed = new AtomicInteger();
+            Thread[] threads = new Thread[20];
+            for (int i = 0; i < threads.length; i++)
+            {
+                threads[i] = new Thread(new Runnable()
+                                {
+                                    public void run()
+                                    {
+                                        try
+                                        {
+                                            for (int j = 0; j < 10; j++)
+                                            {
+                                                database.begin(tag);
+                                                int now = live.incrementAndGet();
+                                                int was;
+                                                while ((was = peak.get()) < now)
+                                                {
+                                                    peak.compareAndSet(was, now);
+                                                }
+                                                Thread.sleep(1);
+                                                live.decrementAndGet();
+                                                database.commit(tag);
+                                            }
+                                        }
+                                        catch (Throwable exception)
+                                        {
+                                            failed.incrementAndGet();
+                                        }
+                                    }
+                                });
+                threads[i].start();
+            }
+            for (Thread thread : threads)
+            {
+                thread.join();
+            }
+            check(failed.get() == 0, failed.get() + " threads failed");
+            check(peak.get() <= 3, "peak " + peak.get());
+            check(StubDriver.opened.get() - opened <= 3, "opened " + (StubDriver.opened.get() - opened));
+
+            // Each cursor outside a transaction takes a connection of its own
+            DatabaseCursor<?>[] cursors = new DatabaseCursor<?>[3];
+            for (int i = 0; i < cursors.length; i++)
+            {
+                cursors[i] = database.openCursor(tag, "select ID from TEST");
+            }
+            long start = System.currentTimeMillis();
+            try
+            {
+                database.begin(tag);
+                logger.log("... test failed a fourth connection was given out");
+            }
+            catch (DatabaseException exception)
+            {
+                check(System.currentTimeMillis() - start >= 190, "did not wait");
+            }
+            for (DatabaseCursor<?> cursor : cursors)
+            {
+                cursor.close();
+            }
+            database.begin(tag);
+            database.commit(tag);
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // A closed statement is kept for the next prepare of the same text, the least
+    //    recently used goes past sqlStatementCache, and the cache is closed with a
+    //    connection that is in error or is closed
+    //-------------------------------------------------------------------------------
+    private void statements()
+    {
+        logger.log("Considering the prepared statement cache");
+        StubDriver.reset();
+        String tag = configure("CACHE");
+        System.setProperty(tag + "_sqlStatementCache", "2");
+        try
+        {
+            long hits = database.getStatementHits();
+            long misses = database.getStatementMisses();
+
+            for (int i = 0; i < 100; i++)
+            {
+                DatabaseStatement statement = database.prepareStatement(tag, "update TEST set VALUE11 = ?");
+                statement.setString(1, "A" + i);
+                statement.executeUpdate();
+                statement.close();
+            }
+            check(StubDriver.prepared.get() == 1, "prepared " + StubDriver.prepared.get());
+            check(database.getStatementHits() - hits == 99, "hits " + (database.getStatementHits() - hits));
+            check(database.getStatementMisses() - misses == 1, "misses " + (database.getStatementMisses() - misses));
+
+            // Two are kept - select 2 pushes out the update and select 3 pushes out
+            //    select 1, which is then prepared again
+            int open = StubDriver.statements.get();
+            String[] texts = {"select 1", "select 2", "select 3", "select 1"};
+            for (String text : texts)
+            {
+                database.prepareStatement(tag, text).close();
+            }
+            check(StubDriver.prepared.get() == 5, "evicted prepared " + StubDriver.prepared.get());
+            check(StubDriver.statements.get() == open + 1, "open " + (StubDriver.statements.get() - open));
+
+            open = StubDriver.statements.get();
+            DatabaseStatement statement = database.prepareStatement(tag, "select 3");
+            StubDriver.fail = true;
+            try
+            {
+                statement.executeUpdate();
+                logger.log("... test failed the execute did not fail");
+            }
+            catch (DatabaseException exception)
+            {
+            }
+            statement.close();
+            database.release(tag);
+            check(StubDriver.statements.get() == open - 2, "kept after error " + (StubDriver.statements.get() - open));
+
+            open = StubDriver.statements.get();
+            database.prepareStatement(tag, "select 4").close();
+            database.release(tag);
+            check(StubDriver.statements.get() == open + 1, "not cached");
+            database.closeAll();
+            check(StubDriver.statements.get() == open, "kept after closeAll");
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // The fetch size is the oracle default unless the tag sets one, maxrows lowers
+    //    it and a query or statement can give its own
+    //-------------------------------------------------------------------------------
+    private void fetchSize()
+    {
+        logger.log("Considering the fetch size");
+        StubDriver.reset();
+        String tag = configure("FETCH");
+        System.setProperty(tag + "_sqlFetchSize", "250");
+        try
+        {
+            database.executeQuery(STUB, "update TEST set VALUE11 = 'A'", null);
+            check(StubDriver.fetchSize == 1000, "oracle default " + StubDriver.fetchSize);
+
+            database.executeQuery(tag, "update TEST set VALUE11 = 'A'", null);
+            check(StubDriver.fetchSize == 250, "tag " + StubDriver.fetchSize);
+
+            database.executeQuery(tag, "update TEST set VALUE11 = 'A'", null, 20);
+            check(StubDriver.fetchSize == 20, "maxrows " + StubDriver.fetchSize);
+
+            database.executeQuery(tag, "update TEST set VALUE11 = 'A'", null, 0, 5000);
+            check(StubDriver.fetchSize == 5000, "query " + StubDriver.fetchSize);
+
+            database.openCursor(tag, "select ID from TEST", ids(), 40).close();
+            check(StubDriver.fetchSize == 40, "cursor " + StubDriver.fetchSize);
+
+            DatabaseStatement statement = database.prepareStatement(tag, "update TEST set VALUE11 = ?");
+            statement.setFetchSize(77);
+            statement.setString(1, "A");
+            statement.executeQuery(null);
+            statement.close();
+            check(StubDriver.fetchSize == 77, "statement " + StubDriver.fetchSize);
+
+            database.release(STUB);
+            database.release(tag);
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // A cursor reads only what is asked for and closes itself at the end. One on a
+    //    connection the thread holds is closed when that is released; one with a
+    //    connection of its own gives it back when closed, from whatever thread.
+    //-------------------------------------------------------------------------------
+    private void cursors()
+    {
+        logger.log("Considering cursor close");
+        StubDriver.reset();
+        String tag = configure("CURSOR");
+        System.setProperty(tag + "_sqlPoolMax", "1");
+        System.setProperty(tag + "_sqlPoolWait", "200");
+        try
+        {
+            int results = StubDriver.results.get();
+
+            DatabaseCursor<Integer> cursor = database.openCursor(tag, "select ID from TEST", ids());
+            int rows = 0;
+            while (cursor.hasNext())
+            {
+                check(cursor.next() == ++rows, "row " + rows);
+            }
+            check(cursor.isClosed() && (cursor.getRows() == StubDriver.rows), "not closed at the end");
+            check(StubDriver.results.get() == results, "ResultSet left open");
+
+            database.begin(tag);
+            cursor = database.openCursor(tag, "select ID from TEST", ids());
+            cursor.next();
+            database.release(tag);
+            check(cursor.isClosed() && ! cursor.hasNext(), "not closed by release");
+            check(StubDriver.results.get() == results, "ResultSet left open by release");
+
+            final DatabaseCursor<Integer> other = database.openCursor(tag, "select ID from TEST", ids());
+            other.next();
+            Thread thread = new Thread(new Runnable()
+                            {
+                                public void run()
+                                {
+                                    other.close();
+                                }
+                            });
+            thread.start();
+            thread.join();
+
+            // The one connection is back
+            database.openCursor(tag, "select ID from TEST", ids()).close();
+            check(StubDriver.results.get() == results, "ResultSet left open by another thread");
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // A cursor opened outside a transaction has a connection of its own - it is the
+    //    cursor's, so the opening thread ending does not let cleanup() take it
+    //-------------------------------------------------------------------------------
+    private void cursorThread()
+    {
+        logger.log("Considering a cursor opened on a thread that ends");
+        StubDriver.reset();
+        try
+        {
+            final ArrayList<DatabaseCursor<Integer>> cursors = new ArrayList<DatabaseCursor<Integer>>();
+            Thread thread = new Thread(new Runnable()
+                            {
+                                public void run()
+                                {
+                                    cursors.add(database.openCursor(STUB, "select ID from TEST", ids()));
+                                }
+                            });
+            thread.start();
+            thread.join();
+
+            DatabaseCursor<Integer> cursor = cursors.get(0);
+            // cleanup() may open connections to warm a pool but must close none
+            int closed = StubDriver.opened.get() - StubDriver.open.get();
+            check(cursor.next() == 1, "first row");
+
+            database.cleanup();
+
+            int rows = 1;
+            while (cursor.hasNext())
+            {
+                cursor.next();
+                rows++;
+            }
+            check(rows == StubDriver.rows, "read " + rows + " rows");
+            check(StubDriver.opened.get() - StubDriver.open.get() == closed, "connection closed under the cursor");
+
+            cursor.close();
+            check(StubDriver.results.get() == 0, "ResultSet left open");
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // Cancelling a running call cancels its statement and the connection is closed;
+    //    the next call on the same worker is not touched
+    //-------------------------------------------------------------------------------
+    private void asyncCancel()
+    {
+        logger.log("Considering cancelling an async call");
+        StubDriver.reset();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            database.setExecutor(executor);
+            int closed = StubDriver.opened.get() - StubDriver.open.get();
+
+            StubDriver.block = 5000;
+            CompletableFuture<Integer> future = database.executeUpdateAsync(STUB, "update TEST set VALUE11 = 'A'");
+            Thread.sleep(200);
+            check(future.cancel(true), "not cancelled");
+            StubDriver.block = 0;
+
+            // The one worker runs this once the cancelled call has given its connection back
+            check(database.executeUpdateAsync(STUB, "update TEST set VALUE11 = 'B'").get() == 1, "next call");
+            check(StubDriver.cancels.get() > 0, "statement not cancelled");
+            check(StubDriver.opened.get() - StubDriver.open.get() == closed + 1, "cancelled connection reused");
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+        finally
+        {
+            StubDriver.block = 0;
+            database.setExecutor(null);
+            executor.shutdown();
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // A transaction cancelled between statements stops at the next one and rolls
+    //    back rather than commits
+    //-------------------------------------------------------------------------------
+    private void asyncTransaction()
+    {
+        logger.log("Considering cancelling an async transaction");
+        StubDriver.reset();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            database.setExecutor(executor);
+
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch cancelled = new CountDownLatch(1);
+            final AtomicInteger updates = new AtomicInteger();
+            CompletableFuture<Integer> future = database.transactionAsync(STUB, new Callable<Integer>()
+                    {
+                        public Integer call() throws Exception
+                        {
+                            updates.addAndGet(database.executeUpdate(STUB, "update TEST set VALUE11 = 'A'"));
+                            started.countDown();
+                            cancelled.await();
+                            return updates.addAndGet(database.executeUpdate(STUB, "update TEST set VALUE11 = 'B'"));
+                        }
+                    });
+            started.await();
+            check(future.cancel(true), "not cancelled");
+            cancelled.countDown();
+
+            // The one worker runs this once the transaction has finished
+            executor.submit(new Runnable()
+                    {
+                        public void run()
+                        {
+                        }
+                    }).get();
+            check(updates.get() == 1, "ran " + updates.get() + " updates");
+            check(StubDriver.commits.get() == 0, "committed");
+            check(StubDriver.rollbacks.get() > 0, "not rolled back");
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+        finally
+        {
+            database.setExecutor(null);
+            executor.shutdown();
+        }
+    }
+
+    private static DatabaseCursor.Mapper<Integer> ids()
+    {
+        return new DatabaseCursor.Mapper<Integer>()
+        {
+            public Integer map(ResultSet set) throws SQLException
+            {
+                return set.getInt(1);
+            }
+        };
+    }
+
+    private static void check(boolean passed, String text)
+    {
+        if (! passed)
+        {
+            logger.log("... test failed " + text);
+        }
+    }
+
     private void insert(final int numberThreads, final int transactions, final int batchsize)
     {
         Thread[] threads = new Thread[numberThreads];
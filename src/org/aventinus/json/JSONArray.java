@@ -19,6 +19,9 @@
 package org.aventinus.json;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import java.util.stream.*;
 
 import org.aventinus.util.*;
 
@@ -33,10 +36,24 @@ public class JSONArray
     private static Toolbox toolbox = Toolbox.toolbox();
     private static Logger logger = Logger.logger(JSONArray.class);
 
+    // The least text worth handing to another thread when parsing in parallel
+    private static final int PARALLEL_CHUNK = 32768;
+
     private String error = "";
 
     private ArrayList<String> mList = new ArrayList<String>();
 
+    // A view shares the text it was parsed from and holds the element offsets -
+    //    the elements are only copied into mList if the array is changed
+    private String mSource = null;
+    private int[] mOffsets = null;
+    private int mCount = 0;
+
+    // A packed array holds only numbers, mCount of them, as a long[] or double[]
+    //    rather than a String each - adding anything else unpacks it into mList
+    private long[] mLongs = null;
+    private double[] mDoubles = null;
+
     //-------------------------------------------------------------------------------
     //
     //-------------------------------------------------------------------------------
@@ -44,10 +61,156 @@ public class JSONArray
     {
     }
 
+    JSONArray(String source)
+    {
+        mSource = source;
+        mOffsets = new int[16];
+    }
+
     public JSONArray(JSONArray other)
     {
         error = other.error;
         mList.addAll(other.mList);
+
+        // The offsets are never changed once parsed so they can be shared
+        mSource = other.mSource;
+        mOffsets = other.mOffsets;
+        mCount = other.mCount;
+
+        if (other.mLongs != null)
+        {
+            mLongs = Arrays.copyOf(other.mLongs, other.mCount);
+        }
+        if (other.mDoubles != null)
+        {
+            mDoubles = Arrays.copyOf(other.mDoubles, other.mCount);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // Parallel parsing of a large top level array such as a bulk import. A single
+    //    quick pass finds where each element starts and ends and the elements are
+    //    then validated across a ForkJoinPool. parallel() gives the same view of the
+    //    input that parsing it serially would; stream() gives the elements, which
+    //    must all be objects, as JSONObjects already indexed for lookup.
+    //-------------------------------------------------------------------------------
+    public static JSONArray parallel(String input)
+    {
+        return parallel(input, ForkJoinPool.commonPool());
+    }
+
+    public static JSONArray parallel(String input, ForkJoinPool pool)
+    {
+        JSONArray array = JSONObject.split(input);
+        pool.invoke(new Validate(array, 0, array.mCount));
+        return array;
+    }
+
+    public static Spliterator<JSONObject> spliterator(String input)
+    {
+        JSONArray array = JSONObject.split(input);
+        return new Elements(array, 0, array.mCount);
+    }
+
+    public static Stream<JSONObject> stream(String input)
+    {
+        return StreamSupport.stream(spliterator(input), true);
+    }
+
+    // The text held by elements from up to end
+    private int length(int from, int end)
+    {
+        return (from < end) ? mOffsets[end * 2 - 1] - mOffsets[from * 2] : 0;
+    }
+
+    private static final class Validate extends RecursiveAction
+    {
+        static final long serialVersionUID = 1;
+
+        private final JSONArray mArray;
+        private final int mFrom;
+        private final int mEnd;
+
+        Validate(JSONArray array, int from, int end)
+        {
+            mArray = array;
+            mFrom = from;
+            mEnd = end;
+        }
+
+        protected void compute()
+        {
+            if ((mEnd - mFrom > 1) && (mArray.length(mFrom, mEnd) > PARALLEL_CHUNK))
+            {
+                int middle = (mFrom + mEnd) >>> 1;
+                invokeAll(new Validate(mArray, mFrom, middle), new Validate(mArray, middle, mEnd));
+                return;
+            }
+
+            for (int i = mFrom; i < mEnd; i++)
+            {
+                char first = mArray.mSource.charAt(mArray.mOffsets[i * 2]);
+                if ((first == '{') || (first == '['))
+                {
+                    JSONObject.validate(mArray.mSource, mArray.mOffsets[i * 2], mArray.mOffsets[i * 2 + 1]);
+                }
+            }
+        }
+    }
+
+    private static final class Elements implements Spliterator<JSONObject>
+    {
+        private final JSONArray mArray;
+        private int mIndex;
+        private final int mEnd;
+
+        Elements(JSONArray array, int from, int end)
+        {
+            mArray = array;
+            mIndex = from;
+            mEnd = end;
+        }
+
+        public boolean tryAdvance(Consumer<? super JSONObject> action)
+        {
+            if (mIndex >= mEnd)
+            {
+                return false;
+            }
+
+            int start = mArray.mOffsets[mIndex * 2];
+            if (mArray.mSource.charAt(start) != '{')
+            {
+                throw new JSONException("Not an object [" + mIndex + "]");
+            }
+
+            action.accept(JSONObject.element(mArray.mSource, start, mArray.mOffsets[mIndex * 2 + 1]));
+            mIndex++;
+            return true;
+        }
+
+        public Spliterator<JSONObject> trySplit()
+        {
+            if ((mEnd - mIndex < 2) || (mArray.length(mIndex, mEnd) <= PARALLEL_CHUNK))
+            {
+                return null;
+            }
+
+            int middle = (mIndex + mEnd) >>> 1;
+            Elements prefix = new Elements(mArray, mIndex, middle);
+            mIndex = middle;
+            return prefix;
+        }
+
+        public long estimateSize()
+        {
+            return mEnd - mIndex;
+        }
+
+        public int characteristics()
+        {
+            return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
     }
 
     //-------------------------------------------------------------------------------
@@ -55,6 +218,8 @@ public class JSONArray
     //-------------------------------------------------------------------------------
     public JSONArray add(String value)
     {
+        materialise();
+
         if (value == null)
         {
             throw new JSONException("String value cannot be null");
@@ -65,47 +230,129 @@ public class JSONArray
 
     public JSONArray add(int value)
     {
-        mList.add(Integer.toString(value));
-        return this;
+        return add((long)value);
     }
 
     public JSONArray add(long value)
     {
+        if (packing(true))
+        {
+            mLongs = capacity(mLongs, mCount + 1);
+            mLongs[mCount++] = value;
+            return this;
+        }
+
+        materialise();
+
         mList.add(Long.toString(value));
         return this;
     }
 
     public JSONArray add(double value)
     {
+        if (packing(false))
+        {
+            mDoubles = capacity(mDoubles, mCount + 1);
+            mDoubles[mCount++] = value;
+            return this;
+        }
+
+        materialise();
+
         mList.add(Double.toString(value));
         return this;
     }
 
+    public JSONArray add(long[] values)
+    {
+        if (packing(true))
+        {
+            mLongs = capacity(mLongs, mCount + values.length);
+            System.arraycopy(values, 0, mLongs, mCount, values.length);
+            mCount += values.length;
+            return this;
+        }
+
+        materialise();
+
+        mList.ensureCapacity(mList.size() + values.length);
+        for (long value : values)
+        {
+            mList.add(Long.toString(value));
+        }
+        return this;
+    }
+
+    public JSONArray add(double[] values)
+    {
+        if (packing(false))
+        {
+            mDoubles = capacity(mDoubles, mCount + values.length);
+            System.arraycopy(values, 0, mDoubles, mCount, values.length);
+            mCount += values.length;
+            return this;
+        }
+
+        materialise();
+
+        mList.ensureCapacity(mList.size() + values.length);
+        for (double value : values)
+        {
+            mList.add(Double.toString(value));
+        }
+        return this;
+    }
+
     public JSONArray add(boolean value)
     {
+        materialise();
+
         mList.add(value ? "true" : "false");
         return this;
     }
 
     public JSONArray add(JSONObject value)
     {
+        materialise();
+
         mList.add(value.toString());
         return this;
     }
 
     public JSONArray add(JSONArray value)
     {
+        materialise();
+
         mList.add(value.toString());
         return this;
     }
 
     public void remove(int index)
     {
+        if (mLongs != null)
+        {
+            checkIndex(index);
+            System.arraycopy(mLongs, index + 1, mLongs, index, mCount - index - 1);
+            mCount--;
+            return;
+        }
+        if (mDoubles != null)
+        {
+            checkIndex(index);
+            System.arraycopy(mDoubles, index + 1, mDoubles, index, mCount - index - 1);
+            mCount--;
+            return;
+        }
+
+        materialise();
+
         mList.remove(index);
     }
 
     public void appendLF()
     {
+        materialise();
+
         for (int i = 0; i < mList.size(); i++)
         {
             mList.set(i, mList.get(i) + "\n");
@@ -117,15 +364,47 @@ public class JSONArray
         StringBuilder buffer = new StringBuilder();
 
         buffer.append("[");
-        boolean first = true;
-        for (String value: mList)
+        if ((mLongs != null) || (mDoubles != null))
+        {
+            for (int i = 0; i < mCount; i++)
+            {
+                if (i > 0)
+                {
+                    buffer.append(",");
+                }
+                if (mLongs != null)
+                {
+                    buffer.append(mLongs[i]);
+                }
+                else
+                {
+                    buffer.append(mDoubles[i]);
+                }
+            }
+        }
+        else if (mSource != null)
         {
-            if (! first)
+            for (int i = 0; i < mCount; i++)
             {
-                buffer.append(",");
+                if (i > 0)
+                {
+                    buffer.append(",");
+                }
+                buffer.append(mSource, mOffsets[i * 2], mOffsets[i * 2 + 1]);
+            }
+        }
+        else
+        {
+            boolean first = true;
+            for (String value: mList)
+            {
+                if (! first)
+                {
+                    buffer.append(",");
+                }
+                first = false;
+                buffer.append(value);
             }
-            first = false;
-            buffer.append(value);
         }
         buffer.append("]");
 
@@ -134,25 +413,146 @@ public class JSONArray
 
     protected void addRaw(String value)
     {
+        materialise();
+
         mList.add(value);
     }
 
+    protected void addRaw(int start, int end)
+    {
+        if (mCount * 2 == mOffsets.length)
+        {
+            mOffsets = Arrays.copyOf(mOffsets, mOffsets.length * 2);
+        }
+
+        mOffsets[mCount * 2] = start;
+        mOffsets[mCount * 2 + 1] = end;
+        mCount++;
+    }
+
+    private void materialise()
+    {
+        if ((mSource != null) || (mLongs != null) || (mDoubles != null))
+        {
+            mList.ensureCapacity(mCount);
+            for (int i = 0; i < mCount; i++)
+            {
+                mList.add(element(i));
+            }
+
+            mSource = null;
+            mOffsets = null;
+            mLongs = null;
+            mDoubles = null;
+            mCount = 0;
+        }
+    }
+
+    // Whether a number can go into the packed array - an empty array starts one
+    private boolean packing(boolean longs)
+    {
+        if (size() == 0)
+        {
+            mSource = null;
+            mOffsets = null;
+            mCount = 0;
+
+            if (longs && (mLongs == null))
+            {
+                mLongs = new long[16];
+                mDoubles = null;
+            }
+            else if ((! longs) && (mDoubles == null))
+            {
+                mDoubles = new double[16];
+                mLongs = null;
+            }
+        }
+
+        return longs ? (mLongs != null) : (mDoubles != null);
+    }
+
+    private static long[] capacity(long[] values, int needed)
+    {
+        if (needed <= values.length)
+        {
+            return values;
+        }
+        return Arrays.copyOf(values, Math.max(needed, Math.max(16, values.length * 2)));
+    }
+
+    private static double[] capacity(double[] values, int needed)
+    {
+        if (needed <= values.length)
+        {
+            return values;
+        }
+        return Arrays.copyOf(values, Math.max(needed, Math.max(16, values.length * 2)));
+    }
+
+    private String element(int index)
+    {
+        if (mLongs != null)
+        {
+            checkIndex(index);
+            return Long.toString(mLongs[index]);
+        }
+        if (mDoubles != null)
+        {
+            checkIndex(index);
+            return Double.toString(mDoubles[index]);
+        }
+        if (mSource != null)
+        {
+            checkIndex(index);
+            return mSource.substring(mOffsets[index * 2], mOffsets[index * 2 + 1]);
+        }
+        return mList.get(index);
+    }
+
+    private char first(int index)
+    {
+        if ((mLongs != null) || (mDoubles != null))
+        {
+            checkIndex(index);
+            return '0'; // only ever asked whether it is { or [
+        }
+        if (mSource != null)
+        {
+            checkIndex(index);
+            return mSource.charAt(mOffsets[index * 2]);
+        }
+        return mList.get(index).charAt(0);
+    }
+
+    private void checkIndex(int index)
+    {
+        if ((index < 0) || (index >= mCount))
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mCount);
+        }
+    }
+
     //-------------------------------------------------------------------------------
     //
     //-------------------------------------------------------------------------------
     public int size()
     {
+        if ((mSource != null) || (mLongs != null) || (mDoubles != null))
+        {
+            return mCount;
+        }
         return mList.size();
     }
 
     public boolean isObject(int index)
     {
-        return mList.get(index).startsWith("{");
+        return (first(index) == '{');
     }
 
     public boolean isArray(int index)
     {
-        return mList.get(index).startsWith("[");
+        return (first(index) == '[');
     }
 
     boolean isValue(int index)
@@ -173,21 +573,44 @@ public class JSONArray
             throw new JSONException("Not a value");
         }
 
-        return JSONObject.unescape(mList.get(index));
+        return JSONObject.unescape(element(index));
     }
 
     public int getInteger(int index)
     {
+        if (mLongs != null)
+        {
+            checkIndex(index);
+            if ((int)mLongs[index] == mLongs[index])
+            {
+                return (int)mLongs[index];
+            }
+        }
         return JSONObject.parseInt(getString(index));
     }
 
     public long getLong(int index)
     {
+        if (mLongs != null)
+        {
+            checkIndex(index);
+            return mLongs[index];
+        }
         return JSONObject.parseLong(getString(index));
     }
 
     public double getDouble(int index)
     {
+        if (mDoubles != null)
+        {
+            checkIndex(index);
+            return mDoubles[index];
+        }
+        if (mLongs != null)
+        {
+            checkIndex(index);
+            return mLongs[index];
+        }
         return JSONObject.parseDouble(getString(index));
     }
 
@@ -203,17 +626,16 @@ public class JSONArray
             throw new JSONException("Not an object");
         }
 
+        if (mSource != null)
+        {
+            return new JSONObject(mSource, mOffsets[index * 2], mOffsets[index * 2 + 1]);
+        }
         return new JSONObject(mList.get(index));
     }
 
     public JSONMap getMap(int index)
     {
-        if (! isObject(index))
-        {
-            throw new JSONException("Not an object");
-        }
-
-        return new JSONObject(mList.get(index)).getMap();
+        return getObject(index).getMap();
     }
 
     public JSONArray getArray(int index)
@@ -223,12 +645,158 @@ public class JSONArray
             throw new JSONException("Not an array");
         }
 
-        return new JSONObject(new StringBuilder("{a:").append(mList.get(index)).append("}").toString()).getArray("a");
+        if (mSource != null)
+        {
+            return JSONObject.toArray(mSource, mOffsets[index * 2]);
+        }
+        return JSONObject.toArray(mList.get(index), 0);
     }
 
     public String toString(int index)
     {
-        return mList.get(index);
+        return element(index);
+    }
+
+    //-------------------------------------------------------------------------------
+    // A long series of numbers - a time series say - is best held packed: 8 bytes
+    //    an element rather than a String each, and read without parsing. Adding
+    //    numbers to an empty array packs it; pack() packs an array that was parsed
+    //    or built from text if every element is a number written as Long.toString()
+    //    or Double.toString() would write it, so toString() is unchanged.
+    //-------------------------------------------------------------------------------
+    public boolean pack()
+    {
+        if ((mLongs != null) || (mDoubles != null))
+        {
+            return true;
+        }
+
+        int count = size();
+        if (count == 0)
+        {
+            return false;
+        }
+
+        long[] longs = null;
+        double[] doubles = null;
+        try
+        {
+            if (integral(element(0)))
+            {
+                longs = new long[count];
+                for (int i = 0; i < count; i++)
+                {
+                    String value = element(i);
+                    if (! integral(value))
+                    {
+                        return false;
+                    }
+                    longs[i] = Long.parseLong(value);
+                    if (! Long.toString(longs[i]).equals(value))
+                    {
+                        return false;
+                    }
+                }
+            }
+            else
+            {
+                doubles = new double[count];
+                for (int i = 0; i < count; i++)
+                {
+                    String value = element(i);
+                    char first = value.charAt(0);
+                    if ((first != '-') && ((first < '0') || (first > '9')))
+                    {
+                        return false;
+                    }
+                    doubles[i] = Double.parseDouble(value);
+                    if (! Double.toString(doubles[i]).equals(value))
+                    {
+                        return false;
+                    }
+                }
+            }
+        }
+        catch (NumberFormatException exception)
+        {
+            return false;
+        }
+
+        mList = new ArrayList<String>();
+        mSource = null;
+        mOffsets = null;
+        mLongs = longs;
+        mDoubles = doubles;
+        mCount = count;
+        return true;
+    }
+
+    private static boolean integral(String value)
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            char inputc = value.charAt(i);
+            if (((inputc < '0') || (inputc > '9')) && ((inputc != '-') || (i > 0)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isPacked()
+    {
+        return (mLongs != null) || (mDoubles != null);
+    }
+
+    public long[] toLongArray()
+    {
+        if (mLongs != null)
+        {
+            return Arrays.copyOf(mLongs, mCount);
+        }
+
+        long[] values = new long[size()];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = getLong(i);
+        }
+        return values;
+    }
+
+    public double[] toDoubleArray()
+    {
+        if (mDoubles != null)
+        {
+            return Arrays.copyOf(mDoubles, mCount);
+        }
+
+        double[] values = new double[size()];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = getDouble(i);
+        }
+        return values;
+    }
+
+    // A packed array is streamed where it is - it must not be changed meanwhile
+
+    public LongStream longStream()
+    {
+        if (mLongs != null)
+        {
+            return Arrays.stream(mLongs, 0, mCount);
+        }
+        return Arrays.stream(toLongArray());
+    }
+
+    public DoubleStream doubleStream()
+    {
+        if (mDoubles != null)
+        {
+            return Arrays.stream(mDoubles, 0, mCount);
+        }
+        return Arrays.stream(toDoubleArray());
     }
 
     //-------------------------------------------------------------------------------
@@ -254,9 +822,9 @@ public class JSONArray
             prefix = prefix + "   ";
         }
 
-        for (int i = 0; i < mList.size(); i++)
+        for (int i = 0; i < size(); i++)
         {
-            String value = mList.get(i);
+            String value = element(i);
             if (isObject(i))
             {
                 buffer.append(prefix).append("   ").append("{\n");
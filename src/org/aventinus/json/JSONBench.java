@@ -0,0 +1,667 @@
+//-----------------------------------------------------------------------------------
+// Copyright (c) 2009-2013, Gordon Beck (gordon.beck@aventinus.org). All rights reserved.
+//
+//    This file is part of a suite of tools.
+//
+//    The tools are free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    The tools are distributed in the hope that they will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with these tools.  If not, see <http://www.gnu.org/licenses/>.
+//-----------------------------------------------------------------------------------
+package org.aventinus.json;
+
+import java.io.*;
+import java.lang.management.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+import org.aventinus.util.*;
+
+//-----------------------------------------------------------------------------------
+// Benchmarks for the JSON classes, run with "make bench" or
+//
+//    java org.aventinus.json.JSONBench [-w warmups] [-i iterations] [-t millis] [filter]
+//
+// Every operation is run against small, medium and huge documents in a flat and
+//    a nested shape. Each benchmark is warmed up and then timed over a number of
+//    fixed length iterations; the report gives the mean time per operation, its
+//    spread over the iterations, the rate and the bytes allocated per operation
+//    (where the JVM can count them). Results are consumed so that the JIT cannot
+//    drop the work. A filter runs only the benchmarks whose name contains it.
+//-----------------------------------------------------------------------------------
+public class JSONBench
+{
+    private static Toolbox toolbox = Toolbox.toolbox();
+    private static Logger logger = Logger.logger(JSONBench.class);
+
+    private static final int SMALL = 10;
+    private static final int MEDIUM = 1000;
+    private static final int HUGE = 50000;
+
+    private static volatile int sink;
+
+    private static final ForkJoinPool serial = new ForkJoinPool(1);
+
+    private int mWarmups = 3;
+    private int mIterations = 5;
+    private long mMillis = 500;
+    private String mFilter = "";
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    private static abstract class Benchmark
+    {
+        abstract Object run();
+    }
+
+    // One document in every form the benchmarks need
+    private static final class Document
+    {
+        String mName;
+        String mText;
+        String mArray;
+        byte[] mBytes;
+        byte[] mBinary;
+        JSONObject mParsed;
+        JSONObject mBuilt;
+        JSONObject mChanged;
+        JSONPatch mPatch;
+        String mKey;
+        JSONPath mPath;
+        String[] mStrings;
+        String[] mEscaped;
+        double[] mSeries;
+        JSONArray mPacked;
+        String mSeriesText;
+        Quote mQuote;
+        JSONObject mQuoteObject;
+        boolean mNested;
+        int mSize;
+    }
+
+    // A small class bound by JSONCodec and, for comparison, encoded by hand
+    public static final class Quote implements JSONObject.Encodable
+    {
+        private String mSymbol;
+        private long mTime;
+        private double mBid;
+        private double mAsk;
+        private int mSize;
+        private boolean mFirm;
+
+        public JSONObject encode(JSONObject json)
+        {
+            return json.add("symbol", mSymbol).add("time", mTime).add("bid", mBid).add("ask", mAsk)
+                .add("size", mSize).add("firm", mFirm);
+        }
+
+        static Quote decode(JSONObject json)
+        {
+            Quote quote = new Quote();
+            quote.mSymbol = json.getString("symbol");
+            quote.mTime = json.getLong("time");
+            quote.mBid = json.getDouble("bid");
+            quote.mAsk = json.getDouble("ask");
+            quote.mSize = json.getInteger("size");
+            quote.mFirm = json.getBoolean("firm");
+            return quote;
+        }
+    }
+
+    private static final JSONCodec<Quote> quotes = JSONCodec.of(Quote.class);
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    public static void main(String[] args)
+    {
+        JSONBench bench = new JSONBench();
+
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equals("-w") && (i + 1 < args.length))
+            {
+                bench.mWarmups = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-i") && (i + 1 < args.length))
+            {
+                bench.mIterations = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-t") && (i + 1 < args.length))
+            {
+                bench.mMillis = Long.parseLong(args[++i]);
+            }
+            else
+            {
+                bench.mFilter = args[i];
+            }
+        }
+
+        bench.run();
+    }
+
+    public JSONBench()
+    {
+    }
+
+    public void run()
+    {
+        try
+        {
+            logger.log(String.format("%-32s %12s %10s %14s %12s", "Benchmark", "ns/op", "+/-%", "ops/s", "bytes/op"));
+
+            int[] sizes = { SMALL, MEDIUM, HUGE };
+            for (int nested = 0; nested < 2; nested++)
+            {
+                for (int size : sizes)
+                {
+                    run(document(size, nested == 1));
+                }
+            }
+        }
+        catch (Throwable exception)
+        {
+            logger.log(exception);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    private void run(final Document document)
+    {
+        String name = document.mName + ".";
+
+        measure(name + "parse", new Benchmark() { Object run()
+        {
+            return new JSONObject(document.mText);
+        }});
+
+        measure(name + "parseBytes", new Benchmark() { Object run()
+        {
+            return new JSONObject(document.mBytes, 0, document.mBytes.length);
+        }});
+
+        measure(name + "decodeAndParse", new Benchmark() { Object run()
+        {
+            return new JSONObject(new String(document.mBytes, StandardCharsets.UTF_8));
+        }});
+
+        measure(name + "parseBinary", new Benchmark() { Object run()
+        {
+            return JSONBinary.toObject(document.mBinary);
+        }});
+
+        measure(name + "trustedBinary", new Benchmark() { Object run()
+        {
+            return JSONBinary.toObject(document.mBinary, true);
+        }});
+
+        measure(name + "parseAndGet", new Benchmark() { Object run()
+        {
+            return new JSONObject(document.mText).getString(document.mKey);
+        }});
+
+        measure(name + "trustedAndGet", new Benchmark() { Object run()
+        {
+            return new JSONObject(document.mText, true).getString(document.mKey);
+        }});
+
+        measure(name + "trustedBytesAndGet", new Benchmark() { Object run()
+        {
+            return new JSONObject(document.mBytes, true).getString(document.mKey);
+        }});
+
+        measure(name + "get", new Benchmark() { Object run()
+        {
+            return document.mParsed.getString(document.mKey);
+        }});
+
+        measure(name + "getPath", new Benchmark() { Object run()
+        {
+            return document.mPath.getString(document.mParsed);
+        }});
+
+        measure(name + "getMap", new Benchmark() { Object run()
+        {
+            return document.mParsed.getMap();
+        }});
+
+        measure(name + "getMapInterned", new Benchmark() { Object run()
+        {
+            JSONObject.internKeys(true);
+            try
+            {
+                return document.mParsed.getMap();
+            }
+            finally
+            {
+                JSONObject.internKeys(false);
+            }
+        }});
+
+        measure(name + "getList", new Benchmark() { Object run()
+        {
+            return document.mParsed.getList();
+        }});
+
+        measure(name + "toString", new Benchmark() { Object run()
+        {
+            return document.mBuilt.toString();
+        }});
+
+        measure(name + "builder", new Benchmark() { Object run()
+        {
+            return build(document.mSize, document.mNested).toString();
+        }});
+
+        measure(name + "writer", new Benchmark() { Object run()
+        {
+            return write(document.mSize, document.mNested);
+        }});
+
+        measure(name + "encodeBinary", new Benchmark() { Object run()
+        {
+            return JSONBinary.encode(document.mParsed);
+        }});
+
+        measure(name + "diff", new Benchmark() { Object run()
+        {
+            return JSONPatch.diff(document.mParsed, document.mChanged).toString();
+        }});
+
+        measure(name + "patch", new Benchmark() { Object run()
+        {
+            JSONObject object = new JSONObject(document.mParsed);
+            document.mPatch.apply(object);
+            return object;
+        }});
+
+        measure(name + "escape", new Benchmark() { Object run()
+        {
+            int length = 0;
+            for (String value : document.mStrings)
+            {
+                length += JSONObject.escape(value).length();
+            }
+            return length;
+        }});
+
+        measure(name + "unescape", new Benchmark() { Object run()
+        {
+            int length = 0;
+            for (String value : document.mEscaped)
+            {
+                length += JSONObject.unescape(value).length();
+            }
+            return length;
+        }});
+
+        if (document.mArray != null)
+        {
+            measure(name + "parseArray", new Benchmark() { Object run()
+            {
+                return JSONArray.parallel(document.mArray, serial);
+            }});
+
+            measure(name + "parseArrayParallel", new Benchmark() { Object run()
+            {
+                return JSONArray.parallel(document.mArray);
+            }});
+
+            measure(name + "streamArray", new Benchmark() { Object run()
+            {
+                return JSONArray.stream(document.mArray).mapToLong(new ToLongFunction<JSONObject>() {
+                    public long applyAsLong(JSONObject record)
+                    {
+                        return record.getLong("identifier");
+                    }
+                }).sum();
+            }});
+        }
+
+        final StringBuilder buffer = new StringBuilder();
+
+        measure(name + "escapeInto", new Benchmark() { Object run()
+        {
+            buffer.setLength(0);
+            for (String value : document.mStrings)
+            {
+                JSONObject.escape(value, buffer);
+            }
+            return buffer.length();
+        }});
+
+        measure(name + "unescapeInto", new Benchmark() { Object run()
+        {
+            buffer.setLength(0);
+            for (String value : document.mEscaped)
+            {
+                JSONObject.unescape(value, buffer);
+            }
+            return buffer.length();
+        }});
+
+        measure(name + "removeValue", new Benchmark() { Object run()
+        {
+            JSONObject object = new JSONObject(document.mParsed);
+            return object.removeValue(document.mKey);
+        }});
+
+        measure(name + "edits", new Benchmark() { Object run()
+        {
+            JSONObject object = new JSONObject(document.mParsed);
+            object.removeValue(document.mKey);
+            for (int i = 0; i < 100; i++)
+            {
+                object.add("edit" + i, i);
+            }
+            for (int i = 0; i < 100; i += 2)
+            {
+                object.removeValue("edit" + i);
+            }
+            return object.toString();
+        }});
+
+        measure(name + "seriesAdd", new Benchmark() { Object run()
+        {
+            JSONArray array = new JSONArray();
+            for (double value : document.mSeries)
+            {
+                array.add(value);
+            }
+            return array;
+        }});
+
+        measure(name + "seriesGet", new Benchmark() { Object run()
+        {
+            double total = 0;
+            for (int i = 0; i < document.mPacked.size(); i++)
+            {
+                total += document.mPacked.getDouble(i);
+            }
+            return total;
+        }});
+
+        measure(name + "seriesPack", new Benchmark() { Object run()
+        {
+            JSONArray array = JSONObject.toArray(document.mSeriesText, 0);
+            array.pack();
+            return array.doubleStream().sum();
+        }});
+
+        measure(name + "codecEncode", new Benchmark() { Object run()
+        {
+            return quotes.encode(document.mQuote).toString();
+        }});
+
+        measure(name + "handEncode", new Benchmark() { Object run()
+        {
+            return new JSONObject().encode(document.mQuote).toString();
+        }});
+
+        measure(name + "codecDecode", new Benchmark() { Object run()
+        {
+            return quotes.decode(new JSONObject(document.mQuoteObject));
+        }});
+
+        measure(name + "handDecode", new Benchmark() { Object run()
+        {
+            return Quote.decode(new JSONObject(document.mQuoteObject));
+        }});
+    }
+
+    //-------------------------------------------------------------------------------
+    // Each iteration runs the benchmark for mMillis - the time per operation is
+    //    taken from the iterations after the warmups
+    //-------------------------------------------------------------------------------
+    private void measure(String name, Benchmark benchmark)
+    {
+        if (name.indexOf(mFilter) < 0)
+        {
+            return;
+        }
+
+        for (int i = 0; i < mWarmups; i++)
+        {
+            iteration(benchmark);
+        }
+
+        double[] nanos = new double[mIterations];
+        long operations = 0;
+        long allocated = 0;
+        for (int i = 0; i < mIterations; i++)
+        {
+            long before = allocated();
+            long[] result = iteration(benchmark);
+            long after = allocated();
+
+            nanos[i] = (double)result[1] / result[0];
+            operations += result[0];
+            if ((before >= 0) && (after >= 0))
+            {
+                allocated += after - before;
+            }
+            else
+            {
+                allocated = -1;
+            }
+        }
+
+        double mean = 0;
+        for (double value : nanos)
+        {
+            mean += value;
+        }
+        mean /= nanos.length;
+
+        double deviation = 0;
+        for (double value : nanos)
+        {
+            deviation += (value - mean) * (value - mean);
+        }
+        deviation = Math.sqrt(deviation / nanos.length);
+
+        logger.log(String.format("%-32s %12.1f %10.1f %14.0f %12s",
+                                 name, mean, (mean > 0) ? 100 * deviation / mean : 0, 1e9 / mean,
+                                 (allocated < 0) ? "-" : String.valueOf(allocated / operations)));
+    }
+
+    // The operations run and the nanoseconds they took
+    private long[] iteration(Benchmark benchmark)
+    {
+        long limit = mMillis * 1000000L;
+        long operations = 0;
+        int batch = 1;
+        int hash = 0;
+
+        long start = System.nanoTime();
+        long elapsed = 0;
+        while (elapsed < limit)
+        {
+            for (int i = 0; i < batch; i++)
+            {
+                hash += benchmark.run().hashCode();
+            }
+            operations += batch;
+            elapsed = System.nanoTime() - start;
+
+            if (batch < 1024)
+            {
+                batch *= 2;
+            }
+        }
+
+        sink += hash;
+        return new long[] { operations, elapsed };
+    }
+
+    private static long allocated()
+    {
+        try
+        {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean)
+            {
+                return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        catch (Throwable exception)
+        {
+            // Not every JVM counts allocations
+        }
+        return -1;
+    }
+
+    //-------------------------------------------------------------------------------
+    // A flat document is size name:value pairs of mixed values; a nested one is an
+    //    array of size records each holding an object and an array
+    //-------------------------------------------------------------------------------
+    private static Document document(int size, boolean nested)
+    {
+        Document document = new Document();
+
+        document.mName = ((size == SMALL) ? "small" : (size == MEDIUM) ? "medium" : "huge") + (nested ? "Nested" : "Flat");
+        document.mSize = size;
+        document.mNested = nested;
+        document.mBuilt = build(size, nested);
+        document.mText = document.mBuilt.toString();
+        document.mBytes = document.mText.getBytes(StandardCharsets.UTF_8);
+        document.mBinary = JSONBinary.encode(document.mBuilt);
+        document.mParsed = new JSONObject(document.mText);
+
+        if (nested)
+        {
+            document.mKey = "count";
+            document.mArray = document.mParsed.getArray("records").toString();
+            document.mPath = JSONPath.compile("records[" + (size / 2) + "].address.city");
+        }
+        else
+        {
+            document.mKey = "key" + (size / 2);
+            document.mPath = JSONPath.compile(document.mKey);
+        }
+
+        // The same document with a value replaced, one added and one removed
+        document.mChanged = new JSONObject(document.mParsed);
+        document.mChanged.removeValue(document.mKey);
+        document.mChanged.add(document.mKey, "changed").add("added", 1);
+        document.mChanged.removeValue(nested ? "count" : "key0");
+        document.mChanged = new JSONObject(document.mChanged.toString());
+        document.mPatch = JSONPatch.diff(document.mParsed, document.mChanged);
+
+        ArrayList<String> strings = new ArrayList<String>();
+        for (int i = 0; i < Math.min(size, 1000); i++)
+        {
+            strings.add("Line " + i + "\twith \"quotes\", a \\ and\nnew lines");
+            strings.add("plain value " + i);
+        }
+        document.mStrings = strings.toArray(new String[strings.size()]);
+        document.mEscaped = new String[document.mStrings.length];
+        for (int i = 0; i < document.mStrings.length; i++)
+        {
+            document.mEscaped[i] = JSONObject.escape(document.mStrings[i]);
+        }
+
+        // A time series of size points
+        document.mSeries = new double[size];
+        for (int i = 0; i < size; i++)
+        {
+            document.mSeries[i] = i * 0.25;
+        }
+        document.mPacked = new JSONArray().add(document.mSeries);
+        document.mSeriesText = document.mPacked.toString();
+
+        document.mQuote = new Quote();
+        document.mQuote.mSymbol = "VOD.L";
+        document.mQuote.mTime = 1381234567890L;
+        document.mQuote.mBid = 221.35;
+        document.mQuote.mAsk = 221.4;
+        document.mQuote.mSize = size;
+        document.mQuote.mFirm = true;
+        document.mQuoteObject = new JSONObject(quotes.encode(document.mQuote).toString());
+
+        return document;
+    }
+
+    private static JSONObject build(int size, boolean nested)
+    {
+        JSONObject object = new JSONObject();
+
+        if (! nested)
+        {
+            for (int i = 0; i < size; i++)
+            {
+                switch (i % 4)
+                {
+                    case 0: object.add("key" + i, i); break;
+                    case 1: object.add("key" + i, "value " + i); break;
+                    case 2: object.add("key" + i, i * 1.25); break;
+                    default: object.add("key" + i, (i % 8) == 3); break;
+                }
+            }
+            return object;
+        }
+
+        object.add("count", size).key("records").startArray();
+        for (int i = 0; i < size; i++)
+        {
+            object.startObject()
+                  .add("identifier", 1000000000000L + i)
+                  .add("name", "record " + i)
+                  .add("price", i * 1.25)
+                  .add("active", (i % 2) == 0)
+                  .key("address").startObject()
+                      .add("street", i + " High Street")
+                      .add("city", "City " + (i % 100))
+                  .endObject()
+                  .key("tags").startArray().value("a").value("b").value(i).endArray()
+                  .endObject();
+        }
+        object.endArray();
+
+        return object;
+    }
+
+    private static int write(int size, boolean nested)
+    {
+        CharArrayWriter output = new CharArrayWriter();
+        JSONWriter writer = new JSONWriter(output);
+
+        if (! nested)
+        {
+            for (int i = 0; i < size; i++)
+            {
+                writer.add("key" + i, i);
+            }
+        }
+        else
+        {
+            writer.add("count", size).key("records").startArray();
+            for (int i = 0; i < size; i++)
+            {
+                writer.startObject()
+                      .add("identifier", 1000000000000L + i)
+                      .add("name", "record " + i)
+                      .add("price", i * 1.25)
+                      .add("active", (i % 2) == 0)
+                      .endObject();
+            }
+            writer.endArray();
+        }
+        writer.close();
+
+        return output.size();
+    }
+}
@@ -0,0 +1,748 @@
+//-----------------------------------------------------------------------------------
+// Copyright (c) 2009-2013, Gordon Beck (gordon.beck@aventinus.org). All rights reserved.
+//
+//    This file is part of a suite of tools.
+//
+//    The tools are free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    The tools are distributed in the hope that they will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with these tools.  If not, see <http://www.gnu.org/licenses/>.
+//-----------------------------------------------------------------------------------
+package org.aventinus.json;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import org.aventinus.util.*;
+
+//-----------------------------------------------------------------------------------
+// A compact XDR encoding of JSON for snapshots and messages. The layout is:
+//
+//    MAGIC
+//    key count, keys              - each name once, as it appears in the text
+//    value
+//
+// where a value is a tag followed by
+//
+//    OBJECT   member count, (key number, value)...
+//    ARRAY    element count, value...
+//    STRING   the text between the quotes, escapes included
+//    INTEGER  int
+//    LONG     long
+//    DOUBLE   long - the bits of the double
+//    TRUE FALSE NULL
+//    TOKEN    any other unquoted value, as text
+//
+// Text is an XDR string - a length then UTF-8 bytes padded to four. Numbers are
+//    only stored natively when they print back exactly as they were written so
+//    decoding gives back the same text and values as the original.
+//-----------------------------------------------------------------------------------
+public final class JSONBinary
+{
+    //-------------------------------------------------------------------------------
+    // Use of toolbox is dicey as it uses JSONObject to initialiase
+    //-------------------------------------------------------------------------------
+    private static Toolbox toolbox = Toolbox.toolbox();
+    private static Logger logger = Logger.logger(JSONBinary.class);
+
+    private static final int MAGIC = 0x4a534e31; // JSN1
+
+    private static final int OBJECT = 1;
+    private static final int ARRAY = 2;
+    private static final int STRING = 3;
+    private static final int INTEGER = 4;
+    private static final int LONG = 5;
+    private static final int DOUBLE = 6;
+    private static final int TRUE = 7;
+    private static final int FALSE = 8;
+    private static final int NULL = 9;
+    private static final int TOKEN = 10;
+
+    private static final byte[][] PADDING = { {}, {0, 0, 0}, {0, 0}, {0} };
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    private JSONBinary()
+    {
+    }
+
+    public static byte[] encode(JSONObject object)
+    {
+        return encode(object.toString());
+    }
+
+    public static byte[] encode(JSONArray array)
+    {
+        return encode(array.toString());
+    }
+
+    public static byte[] encode(JSONMap map)
+    {
+        return encode(map.toString());
+    }
+
+    public static byte[] encode(JSONList list)
+    {
+        return encode(list.toString());
+    }
+
+    //-------------------------------------------------------------------------------
+    // The value is written out once, straight from the input, and the result is a
+    //    view over that text - it is not parsed again. Every count and length is
+    //    checked against the bytes that are left, and each key, STRING and TOKEN is
+    //    checked as it is copied to be one that JSONObject(String) would accept.
+    //    trusted skips the checks of the text for input we encoded ourselves, as
+    //    JSONObject(String, boolean) does.
+    //-------------------------------------------------------------------------------
+    public static JSONObject toObject(byte[] input)
+    {
+        return toObject(input, false);
+    }
+
+    public static JSONObject toObject(byte[] input, boolean trusted)
+    {
+        Reader reader = new Reader(input, ! trusted);
+        reader.tag(OBJECT);
+
+        StringBuilder buffer = new StringBuilder(input.length * 2);
+        reader.append(buffer, OBJECT);
+        reader.end();
+
+        return new JSONObject(buffer.toString(), 0, buffer.length());
+    }
+
+    public static JSONArray toArray(byte[] input)
+    {
+        return toArray(input, false);
+    }
+
+    // The elements are noted as they are written so the array is made over the text
+    //    without looking at it again
+    public static JSONArray toArray(byte[] input, boolean trusted)
+    {
+        Reader reader = new Reader(input, ! trusted);
+        reader.tag(ARRAY);
+
+        StringBuilder buffer = new StringBuilder(input.length * 2);
+        int count = reader.count(4);
+        int[] spans = new int[count * 2];
+
+        buffer.append('[');
+        for (int i = 0; i < count; i++)
+        {
+            if (i > 0)
+            {
+                buffer.append(',');
+            }
+            spans[i * 2] = buffer.length();
+            reader.append(buffer, reader.integer());
+            spans[i * 2 + 1] = buffer.length();
+        }
+        buffer.append(']');
+        reader.end();
+
+        JSONArray array = new JSONArray(buffer.toString());
+        for (int i = 0; i < count; i++)
+        {
+            array.addRaw(spans[i * 2], spans[i * 2 + 1]);
+        }
+        return array;
+    }
+
+    public static JSONMap toMap(byte[] input)
+    {
+        return toMap(input, false);
+    }
+
+    // Read member by member without building the whole text
+    public static JSONMap toMap(byte[] input, boolean trusted)
+    {
+        JSONMap map = new JSONMap();
+
+        Reader reader = new Reader(input, ! trusted);
+        reader.tag(OBJECT);
+        int count = reader.count(8);
+        for (int i = 0; i < count; i++)
+        {
+            String name = JSONObject.unescape(reader.key());
+            map.putRaw(name, reader.value());
+        }
+        reader.end();
+
+        return map;
+    }
+
+    public static JSONList toList(byte[] input)
+    {
+        return toList(input, false);
+    }
+
+    public static JSONList toList(byte[] input, boolean trusted)
+    {
+        JSONList list = new JSONList();
+
+        Reader reader = new Reader(input, ! trusted);
+        reader.tag(OBJECT);
+        int count = reader.count(8);
+        for (int i = 0; i < count; i++)
+        {
+            String name = JSONObject.unescape(reader.key());
+            list.addRaw(name, reader.value());
+        }
+        reader.end();
+
+        return list;
+    }
+
+    //-------------------------------------------------------------------------------
+    // The text is read once by a JSONReader into a list of XDR words and strings
+    //    so that the Encoder can be allocated at its exact size
+    //-------------------------------------------------------------------------------
+    private static byte[] encode(String text)
+    {
+        Words words = new Words();
+
+        HashMap<String, Integer> keys = new HashMap<String, Integer>();
+        ArrayList<byte[]> dictionary = new ArrayList<byte[]>();
+
+        int[] counts = new int[16];   // word holding the count of each open object or array
+        int depth = -1;
+
+        JSONReader reader = new JSONReader(new StringReader(text));
+        int event;
+        while ((event = reader.next()) != JSONReader.END_DOCUMENT)
+        {
+            switch (event)
+            {
+                case JSONReader.KEY:
+                {
+                    words.increment(counts[depth]);
+
+                    String key = reader.getRawKey();
+                    Integer number = keys.get(key);
+                    if (number == null)
+                    {
+                        number = dictionary.size();
+                        keys.put(key, number);
+                        dictionary.add(key.getBytes(StandardCharsets.UTF_8));
+                    }
+                    words.add(number);
+                    break;
+                }
+
+                case JSONReader.START_OBJECT:
+                case JSONReader.START_ARRAY:
+                {
+                    element(words, counts, depth);
+
+                    words.add((event == JSONReader.START_OBJECT) ? OBJECT : ARRAY);
+                    if (++depth == counts.length)
+                    {
+                        counts = Arrays.copyOf(counts, counts.length * 2);
+                    }
+                    counts[depth] = words.size();
+                    words.add(0);
+                    break;
+                }
+
+                case JSONReader.END_OBJECT:
+                case JSONReader.END_ARRAY:
+                {
+                    depth--;
+                    break;
+                }
+
+                case JSONReader.VALUE:
+                {
+                    element(words, counts, depth);
+                    value(words, reader.getRawValue());
+                    break;
+                }
+            }
+        }
+
+        int length = 8;
+        for (byte[] key : dictionary)
+        {
+            length += 4 + padded(key.length);
+        }
+        length += words.length();
+
+        XDRUtilities.Encoder encoder = new XDRUtilities.Encoder(length);
+        encoder.storeInteger(MAGIC);
+        encoder.storeInteger(dictionary.size());
+        for (byte[] key : dictionary)
+        {
+            store(encoder, key);
+        }
+        words.store(encoder);
+
+        return encoder.getBuffer();
+    }
+
+    // An element of an array is counted when it starts - a member when its key is seen
+    private static void element(Words words, int[] counts, int depth)
+    {
+        if ((depth >= 0) && (words.get(counts[depth] - 1) == ARRAY))
+        {
+            words.increment(counts[depth]);
+        }
+    }
+
+    private static void value(Words words, String raw)
+    {
+        char first = raw.charAt(0);
+
+        if (first == '"')
+        {
+            words.add(STRING);
+            words.add(raw.substring(1, raw.length() - 1).getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        if (raw.equals("true"))
+        {
+            words.add(TRUE);
+            return;
+        }
+        if (raw.equals("false"))
+        {
+            words.add(FALSE);
+            return;
+        }
+        if (raw.equals("null"))
+        {
+            words.add(NULL);
+            return;
+        }
+
+        if ((first == '-') || ((first >= '0') && (first <= '9')))
+        {
+            try
+            {
+                long value = Long.parseLong(raw);
+                if (Long.toString(value).equals(raw))
+                {
+                    if ((value >= Integer.MIN_VALUE) && (value <= Integer.MAX_VALUE))
+                    {
+                        words.add(INTEGER);
+                        words.add((int)value);
+                    }
+                    else
+                    {
+                        words.add(LONG);
+                        words.add(value);
+                    }
+                    return;
+                }
+            }
+            catch (NumberFormatException exception)
+            {
+                try
+                {
+                    double value = Double.parseDouble(raw);
+                    if (Double.toString(value).equals(raw))
+                    {
+                        words.add(DOUBLE);
+                        words.add(Double.doubleToRawLongBits(value));
+                        return;
+                    }
+                }
+                catch (NumberFormatException exception2)
+                {
+                }
+            }
+        }
+
+        words.add(TOKEN);
+        words.add(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int padded(int length)
+    {
+        return (length + 3) / 4 * 4;
+    }
+
+    private static void store(XDRUtilities.Encoder encoder, byte[] value)
+    {
+        encoder.storeInteger(value.length);
+        encoder.storeByteArray(value);
+        encoder.storeByteArray(PADDING[value.length % 4]);
+    }
+
+    //-------------------------------------------------------------------------------
+    // The encoded form before it is written - ints, with the text held aside
+    //-------------------------------------------------------------------------------
+    private static final class Words
+    {
+        private int[] mWords = new int[256];
+        private int mCount = 0;
+        private BitSet mIsText = new BitSet();
+        private ArrayList<byte[]> mText = new ArrayList<byte[]>();
+        private int mLength = 0;
+
+        void add(int word)
+        {
+            if (mCount == mWords.length)
+            {
+                mWords = Arrays.copyOf(mWords, mWords.length * 2);
+            }
+            mWords[mCount++] = word;
+            mLength += 4;
+        }
+
+        void add(long word)
+        {
+            add((int)(word >> 32));
+            add((int)word);
+        }
+
+        // The word for text is its number in mText
+        void add(byte[] text)
+        {
+            mIsText.set(mCount);
+            add(mText.size());
+            mText.add(text);
+            mLength += padded(text.length);
+        }
+
+        int get(int index)
+        {
+            return mWords[index];
+        }
+
+        void increment(int index)
+        {
+            mWords[index]++;
+        }
+
+        int size()
+        {
+            return mCount;
+        }
+
+        int length()
+        {
+            return mLength;
+        }
+
+        void store(XDRUtilities.Encoder encoder)
+        {
+            for (int i = 0; i < mCount; i++)
+            {
+                if (mIsText.get(i))
+                {
+                    JSONBinary.store(encoder, mText.get(mWords[i]));
+                }
+                else
+                {
+                    encoder.storeInteger(mWords[i]);
+                }
+            }
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // Every word is read through the Reader, which checks it is there, so a truncated
+    //    or forged input fails with a JSONException before anything is allocated for
+    //    it. When validating, the text it copies out is checked as parse() reads it:
+    //    a quoted name or string may hold anything but an unescaped quote, and an
+    //    unquoted name or value is printable, has no delimiters and does not start
+    //    a // comment.
+    //-------------------------------------------------------------------------------
+    private static final class Reader
+    {
+        private XDRUtilities.Decoder mDecoder;
+        private int mLength;
+        private boolean mValidate;
+        private String[] mKeys;
+        private byte[] mScratch = new byte[64];
+        private char[] mChars = new char[64];
+
+        Reader(byte[] input, boolean validate)
+        {
+            mDecoder = new XDRUtilities.Decoder(input);
+            mLength = input.length;
+            mValidate = validate;
+
+            if ((input.length < 8) || (mDecoder.extractInteger() != MAGIC))
+            {
+                throw new JSONException("Invalid binary JSON - bad header");
+            }
+
+            // Each key takes at least its length word
+            mKeys = new String[count(4)];
+            for (int i = 0; i < mKeys.length; i++)
+            {
+                int length = read();
+                if (mValidate && ! name(mScratch, length))
+                {
+                    throw new JSONException("Invalid binary JSON - bad key");
+                }
+                mKeys[i] = new String(mScratch, 0, length, StandardCharsets.UTF_8);
+            }
+        }
+
+        // The outer value must be kind
+        void tag(int kind)
+        {
+            if (integer() != kind)
+            {
+                throw new JSONException((kind == OBJECT) ? "Invalid binary JSON - not an object" : "Invalid binary JSON - not an array");
+            }
+        }
+
+        void end()
+        {
+            if (remaining() != 0)
+            {
+                throw new JSONException("Invalid binary JSON - trailing bytes");
+            }
+        }
+
+        String key()
+        {
+            int number = integer();
+            if ((number < 0) || (number >= mKeys.length))
+            {
+                throw new JSONException("Invalid binary JSON - bad key");
+            }
+            return mKeys[number];
+        }
+
+        String value()
+        {
+            StringBuilder buffer = new StringBuilder();
+            append(buffer, integer());
+            return buffer.toString();
+        }
+
+        void append(StringBuilder buffer, int tag)
+        {
+            switch (tag)
+            {
+                case OBJECT:
+                {
+                    int count = count(8);
+                    buffer.append('{');
+                    for (int i = 0; i < count; i++)
+                    {
+                        if (i > 0)
+                        {
+                            buffer.append(',');
+                        }
+                        buffer.append(key()).append(':');
+                        append(buffer, integer());
+                    }
+                    buffer.append('}');
+                    break;
+                }
+
+                case ARRAY:
+                {
+                    int count = count(4);
+                    buffer.append('[');
+                    for (int i = 0; i < count; i++)
+                    {
+                        if (i > 0)
+                        {
+                            buffer.append(',');
+                        }
+                        append(buffer, integer());
+                    }
+                    buffer.append(']');
+                    break;
+                }
+
+                case STRING:
+                {
+                    int length = read();
+                    if (mValidate && ! quoted(mScratch, 0, length))
+                    {
+                        throw new JSONException("Invalid binary JSON - bad string");
+                    }
+                    buffer.append('"');
+                    appendText(buffer, length);
+                    buffer.append('"');
+                    break;
+                }
+
+                case INTEGER:
+                    buffer.append(integer());
+                    break;
+
+                case LONG:
+                    buffer.append(longValue());
+                    break;
+
+                case DOUBLE:
+                    buffer.append(Double.longBitsToDouble(longValue()));
+                    break;
+
+                case TRUE:
+                    buffer.append("true");
+                    break;
+
+                case FALSE:
+                    buffer.append("false");
+                    break;
+
+                case NULL:
+                    buffer.append("null");
+                    break;
+
+                case TOKEN:
+                {
+                    int length = read();
+                    if (mValidate && ! unquoted(mScratch, length))
+                    {
+                        throw new JSONException("Invalid binary JSON - bad token");
+                    }
+                    appendText(buffer, length);
+                    break;
+                }
+
+                default:
+                    throw new JSONException("Invalid binary JSON - bad tag [" + tag + "]");
+            }
+        }
+
+        // ASCII - the usual case - goes into the buffer in one copy
+        private void appendText(StringBuilder buffer, int length)
+        {
+            if (length > mChars.length)
+            {
+                mChars = new char[mScratch.length];
+            }
+            for (int i = 0; i < length; i++)
+            {
+                byte value = mScratch[i];
+                if (value < 0)
+                {
+                    buffer.append(new String(mScratch, 0, length, StandardCharsets.UTF_8));
+                    return;
+                }
+                mChars[i] = (char)value;
+            }
+            buffer.append(mChars, 0, length);
+        }
+
+        private static boolean name(byte[] text, int length)
+        {
+            if ((length > 0) && (text[0] == '"'))
+            {
+                return (length > 1) && (text[length - 1] == '"') && quoted(text, 1, length - 1);
+            }
+            return unquoted(text, length);
+        }
+
+        // A trailing \ would escape the closing quote
+        private static boolean quoted(byte[] text, int start, int end)
+        {
+            for (int i = start; i < end; i++)
+            {
+                if (text[i] == '"')
+                {
+                    return false;
+                }
+                if (text[i] == '\\')
+                {
+                    if (i + 1 == end)
+                    {
+                        return false;
+                    }
+                    if ((text[i + 1] == '\\') || (text[i + 1] == '"'))
+                    {
+                        i++;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private static boolean unquoted(byte[] text, int length)
+        {
+            if ((length == 0) || ((length > 1) && (text[0] == '/') && (text[1] == '/')))
+            {
+                return false;
+            }
+            for (int i = 0; i < length; i++)
+            {
+                byte value = text[i];
+                if ((value >= 0) && ((value <= ' ') || (value == '"') || (value == ',') || (value == ':')
+                                     || (value == '{') || (value == '}') || (value == '[') || (value == ']')))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Reads the next text into mScratch and returns its length
+        private int read()
+        {
+            int length = integer();
+            if ((length < 0) || (length > remaining()))
+            {
+                throw new JSONException("Invalid binary JSON - bad length");
+            }
+
+            int padded = padded(length);
+            if (padded > remaining())
+            {
+                throw new JSONException("Invalid binary JSON - truncated");
+            }
+            if (padded > mScratch.length)
+            {
+                mScratch = new byte[padded];
+            }
+            mDecoder.extractByteArray(mScratch, 0, padded);
+
+            return length;
+        }
+
+        // A count of entries that each take at least size bytes
+        int count(int size)
+        {
+            int count = integer();
+            if ((count < 0) || (count > remaining() / size))
+            {
+                throw new JSONException("Invalid binary JSON - bad count");
+            }
+            return count;
+        }
+
+        int integer()
+        {
+            if (remaining() < 4)
+            {
+                throw new JSONException("Invalid binary JSON - truncated");
+            }
+            return mDecoder.extractInteger();
+        }
+
+        private long longValue()
+        {
+            if (remaining() < 8)
+            {
+                throw new JSONException("Invalid binary JSON - truncated");
+            }
+            return mDecoder.extractLong();
+        }
+
+        private int remaining()
+        {
+            return mLength - mDecoder.getOffset();
+        }
+    }
+}
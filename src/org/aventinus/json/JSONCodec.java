@@ -0,0 +1,681 @@
+//-----------------------------------------------------------------------------------
+// Copyright (c) 2009-2013, Gordon Beck (gordon.beck@aventinus.org). All rights reserved.
+//
+//    This file is part of a suite of tools.
+//
+//    The tools are free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    The tools are distributed in the hope that they will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with these tools.  If not, see <http://www.gnu.org/licenses/>.
+//-----------------------------------------------------------------------------------
+package org.aventinus.json;
+
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.function.*;
+
+//-----------------------------------------------------------------------------------
+// Binds the fields of a class to the members of an object so that it need not
+//    be Encodable and can be decoded as well. The fields are found once per class
+//    and each is given a method handle to read and write it; the class is made
+//    with a Supplier spun by LambdaMetafactory where its no argument constructor
+//    is public and with a method handle otherwise. After that no reflection is
+//    done per call.
+//
+// Every field that is not static, transient or synthetic is bound, those of
+//    super classes too. A field mName is the member "name", any other keeps its
+//    own name. The fields can be primitives or their boxes, String, an enum,
+//    long[], double[], String[], JSONObject, JSONArray or another class that is
+//    bound in turn. Null fields are left out and missing members leave the field
+//    as the constructor set it, as does a null member for a primitive; final
+//    fields are encoded but not decoded. A field hides a super class field that
+//    has the same member name.
+//
+//    JSONCodec<Trade> codec = JSONCodec.of(Trade.class);
+//    String text = codec.encode(trade).toString();
+//    Trade copy = codec.decode(new JSONObject(text));
+//-----------------------------------------------------------------------------------
+public final class JSONCodec<T>
+{
+    private static final ClassValue<JSONCodec<?>> codecs = new ClassValue<JSONCodec<?>>()
+    {
+        protected JSONCodec<?> computeValue(Class<?> type)
+        {
+            return new JSONCodec<Object>(type);
+        }
+    };
+
+    private final Class<?> mType;
+    private final Binding[] mBindings;
+    private final Supplier<Object> mFactory;
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    @SuppressWarnings("unchecked")
+    public static <T> JSONCodec<T> of(Class<T> type)
+    {
+        return (JSONCodec<T>)codecs.get(type);
+    }
+
+    private JSONCodec(Class<?> type)
+    {
+        if (type.isInterface() || type.isPrimitive() || type.isArray() || type.isEnum() || Modifier.isAbstract(type.getModifiers()))
+        {
+            throw new JSONException("Cannot bind [" + type.getName() + "]");
+        }
+
+        mType = type;
+        mFactory = factory(type);
+
+        // A field hides one of the same name in a super class, as it does in Java
+        HashSet<String> names = new HashSet<String>();
+        ArrayList<Binding> bindings = new ArrayList<Binding>();
+        for (Class<?> current = type; current != Object.class; current = current.getSuperclass())
+        {
+            ArrayList<Binding> declared = new ArrayList<Binding>();
+            HashSet<String> hidden = new HashSet<String>(names);
+            for (Field field : current.getDeclaredFields())
+            {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic())
+                {
+                    continue;
+                }
+
+                String name = name(field);
+                if (hidden.contains(name))
+                {
+                    continue;
+                }
+                if (! names.add(name))
+                {
+                    throw new JSONException("Cannot bind [" + type.getName() + "] - more than one field for [" + name + "]");
+                }
+                declared.add(binding(field, name));
+            }
+
+            // Super class members come first
+            bindings.addAll(0, declared);
+        }
+        mBindings = bindings.toArray(new Binding[bindings.size()]);
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    public JSONObject encode(T value)
+    {
+        return encode(value, new JSONObject());
+    }
+
+    public JSONObject encode(T value, JSONObject json)
+    {
+        for (Binding binding : mBindings)
+        {
+            binding.encode(value, json);
+        }
+        return json;
+    }
+
+    public T decode(JSONObject json)
+    {
+        return decode(json.getMap());
+    }
+
+    @SuppressWarnings("unchecked")
+    public T decode(JSONMap map)
+    {
+        Object value = mFactory.get();
+        for (Binding binding : mBindings)
+        {
+            if (binding.mSetter != null)
+            {
+                // A null leaves a primitive as the constructor set it
+                String raw = map.toString(binding.mName);
+                if ((raw != null) && ((binding instanceof ObjectBinding) || ! raw.equals("null")))
+                {
+                    binding.decode(value, raw);
+                }
+            }
+        }
+        return (T)value;
+    }
+
+    //-------------------------------------------------------------------------------
+    // A LambdaMetafactory Supplier can only be spun for a constructor that this
+    //    class can see - anything else is called through its method handle
+    //-------------------------------------------------------------------------------
+    @SuppressWarnings("unchecked")
+    private static Supplier<Object> factory(Class<?> type)
+    {
+        final Constructor<?> constructor;
+        try
+        {
+            constructor = type.getDeclaredConstructor();
+        }
+        catch (NoSuchMethodException exception)
+        {
+            throw new JSONException("Cannot bind [" + type.getName() + "] - no constructor without arguments");
+        }
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try
+        {
+            if (Modifier.isPublic(type.getModifiers()) && Modifier.isPublic(constructor.getModifiers())
+                && ((type.getEnclosingClass() == null) || Modifier.isStatic(type.getModifiers())))
+            {
+                MethodHandle handle = lookup.unreflectConstructor(constructor);
+                CallSite site = LambdaMetafactory.metafactory(lookup, "get", MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class), handle, MethodType.methodType(type));
+                return (Supplier<Object>)site.getTarget().invokeExact();
+            }
+        }
+        catch (Throwable exception)
+        {
+            // Class loaders or access that LambdaMetafactory does not like - fall back
+        }
+
+        try
+        {
+            constructor.setAccessible(true);
+            final MethodHandle handle = lookup.unreflectConstructor(constructor).asType(MethodType.methodType(Object.class));
+            return new Supplier<Object>()
+            {
+                public Object get()
+                {
+                    try
+                    {
+                        return (Object)handle.invokeExact();
+                    }
+                    catch (RuntimeException exception)
+                    {
+                        throw exception;
+                    }
+                    catch (Throwable exception)
+                    {
+                        throw new JSONException("Cannot make [" + constructor.getDeclaringClass().getName() + "]", exception);
+                    }
+                }
+            };
+        }
+        catch (IllegalAccessException | SecurityException exception)
+        {
+            throw new JSONException("Cannot bind [" + type.getName() + "]", exception);
+        }
+    }
+
+    private static String name(Field field)
+    {
+        String name = field.getName();
+        if ((name.length() > 1) && (name.charAt(0) == 'm') && Character.isUpperCase(name.charAt(1)))
+        {
+            return Character.toLowerCase(name.charAt(1)) + name.substring(2);
+        }
+        return name;
+    }
+
+    private Binding binding(Field field, String name)
+    {
+        MethodHandle getter;
+        MethodHandle setter = null;
+        try
+        {
+            field.setAccessible(true);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            getter = lookup.unreflectGetter(field);
+            if (! Modifier.isFinal(field.getModifiers()))
+            {
+                setter = lookup.unreflectSetter(field);
+            }
+        }
+        catch (IllegalAccessException | SecurityException exception)
+        {
+            throw new JSONException("Cannot bind [" + mType.getName() + "." + field.getName() + "]", exception);
+        }
+
+        Class<?> type = field.getType();
+
+        if (type == long.class)
+        {
+            return new LongBinding(name, getter, setter);
+        }
+        if (type == int.class)
+        {
+            return new IntBinding(name, getter, setter);
+        }
+        if (type == double.class)
+        {
+            return new DoubleBinding(name, getter, setter);
+        }
+        if (type == boolean.class)
+        {
+            return new BooleanBinding(name, getter, setter);
+        }
+        if (type.isPrimitive())
+        {
+            throw new JSONException("Cannot bind [" + mType.getName() + "." + field.getName() + "] of type " + type.getName());
+        }
+        return new ObjectBinding(name, type, getter, setter);
+    }
+
+    //-------------------------------------------------------------------------------
+    // The handles are adapted to take the object as an Object so that they can be
+    //    invoked exactly - the primitives are never boxed
+    //-------------------------------------------------------------------------------
+    private static abstract class Binding
+    {
+        final String mName;
+        final MethodHandle mGetter;
+        final MethodHandle mSetter;
+
+        Binding(String name, MethodHandle getter, MethodHandle setter, Class<?> type)
+        {
+            mName = name;
+            mGetter = getter.asType(MethodType.methodType(type, Object.class));
+            mSetter = (setter == null) ? null : setter.asType(MethodType.methodType(void.class, Object.class, type));
+        }
+
+        abstract void encode(Object object, JSONObject json);
+        abstract void decode(Object object, String raw);
+
+        JSONException failed(Throwable exception)
+        {
+            if (exception instanceof JSONException)
+            {
+                return (JSONException)exception;
+            }
+            return new JSONException("Cannot bind [" + mName + "]", exception);
+        }
+    }
+
+    private static final class LongBinding extends Binding
+    {
+        LongBinding(String name, MethodHandle getter, MethodHandle setter)
+        {
+            super(name, getter, setter, long.class);
+        }
+
+        void encode(Object object, JSONObject json)
+        {
+            try
+            {
+                json.add(mName, (long)mGetter.invokeExact(object));
+            }
+            catch (Throwable exception)
+            {
+                throw failed(exception);
+            }
+        }
+
+        void decode(Object object, String raw)
+        {
+            try
+            {
+                mSetter.invokeExact(object, JSONObject.parseLong(JSONObject.unescape(raw)));
+            }
+            catch (Throwable exception)
+            {
+                throw failed(exception);
+            }
+        }
+    }
+
+    private static final class IntBinding extends Binding
+    {
+        IntBinding(String name, MethodHandle getter, MethodHandle setter)
+        {
+            super(name, getter, setter, int.class);
+        }
+
+        void encode(Object object, JSONObject json)
+        {
+            try
+            {
+                json.add(mName, (int)mGetter.invokeExact(object));
+            }
+            catch (Throwable exception)
+            {
+                throw failed(exception);
+            }
+        }
+
+        void decode(Object object, String raw)
+        {
+            try
+            {
+                mSetter.invokeExact(object, JSONObject.parseInt(JSONObject.unescape(raw)));
+            }
+            catch (Throwable exception)
+            {
+                throw failed(exception);
+            }
+        }
+    }
+
+    private static final class DoubleBinding extends Binding
+    {
+        DoubleBinding(String name, MethodHandle getter, MethodHandle setter)
+        {
+            super(name, getter, setter, double.class);
+        }
+
+        void encode(Object object, JSONObject json)
+        {
+            try
+            {
+                json.add(mName, (double)mGetter.invokeExact(object));
+            }
+            catch (Throwable exception)
+            {
+                throw failed(exception);
+            }
+        }
+
+        void decode(Object object, String raw)
+        {
+            try
+            {
+                mSetter.invokeExact(object, JSONObject.parseDouble(JSONObject.unescape(raw)));
+            }
+            catch (Throwable exception)
+            {
+                throw failed(exception);
+            }
+        }
+    }
+
+    private static final class BooleanBinding extends Binding
+    {
+        BooleanBinding(String name, MethodHandle getter, MethodHandle setter)
+        {
+            super(name, getter, setter, boolean.class);
+        }
+
+        void encode(Object object, JSONObject json)
+        {
+            try
+            {
+                json.add(mName, (boolean)mGetter.invokeExact(object));
+            }
+            catch (Throwable exception)
+            {
+                throw failed(exception);
+            }
+        }
+
+        void decode(Object object, String raw)
+        {
+            try
+            {
+                mSetter.invokeExact(object, JSONObject.unescape(raw).equals("true"));
+            }
+            catch (Throwable exception)
+            {
+                throw failed(exception);
+            }
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // Everything held by reference - the kind is worked out once
+    //-------------------------------------------------------------------------------
+    private static final int STRING = 1;
+    private static final int LONG = 2;
+    private static final int INTEGER = 3;
+    private static final int DOUBLE = 4;
+    private static final int BOOLEAN = 5;
+    private static final int ENUM = 6;
+    private static final int LONGS = 7;
+    private static final int DOUBLES = 8;
+    private static final int STRINGS = 9;
+    private static final int OBJECT = 10;
+    private static final int ARRAY = 11;
+    private static final int BOUND = 12;
+
+    private static final class ObjectBinding extends Binding
+    {
+        private final Class<?> mType;
+        private final int mKind;
+
+        // Found when first used so that a class can hold one of its own kind
+        private JSONCodec<Object> mCodec = null;
+
+        ObjectBinding(String name, Class<?> type, MethodHandle getter, MethodHandle setter)
+        {
+            super(name, getter, setter, Object.class);
+
+            mType = type;
+            if (type == String.class)
+            {
+                mKind = STRING;
+            }
+            else if (type == Long.class)
+            {
+                mKind = LONG;
+            }
+            else if (type == Integer.class)
+            {
+                mKind = INTEGER;
+            }
+            else if (type == Double.class)
+            {
+                mKind = DOUBLE;
+            }
+            else if (type == Boolean.class)
+            {
+                mKind = BOOLEAN;
+            }
+            else if (type.isEnum())
+            {
+                mKind = ENUM;
+            }
+            else if (type == long[].class)
+            {
+                mKind = LONGS;
+            }
+            else if (type == double[].class)
+            {
+                mKind = DOUBLES;
+            }
+            else if (type == String[].class)
+            {
+                mKind = STRINGS;
+            }
+            else if (type == JSONObject.class)
+            {
+                mKind = OBJECT;
+            }
+            else if (type == JSONArray.class)
+            {
+                mKind = ARRAY;
+            }
+            else if (type.isArray() || type.isInterface() || Modifier.isAbstract(type.getModifiers())
+                     || type.getName().startsWith("java."))
+            {
+                throw new JSONException("Cannot bind [" + name + "] of type " + type.getName());
+            }
+            else
+            {
+                mKind = BOUND;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private JSONCodec<Object> codec()
+        {
+            if (mCodec == null)
+            {
+                mCodec = (JSONCodec<Object>)codecs.get(mType);
+            }
+            return mCodec;
+        }
+
+        void encode(Object object, JSONObject json)
+        {
+            Object value;
+            try
+            {
+                value = (Object)mGetter.invokeExact(object);
+            }
+            catch (Throwable exception)
+            {
+                throw failed(exception);
+            }
+
+            if (value == null)
+            {
+                return;
+            }
+
+            switch (mKind)
+            {
+                case STRING:
+                    json.add(mName, (String)value);
+                    break;
+                case ENUM:
+                    json.add(mName, ((Enum<?>)value).name());
+                    break;
+                case LONG:
+                case INTEGER:
+                case DOUBLE:
+                case BOOLEAN:
+                    json.addRaw(mName, value.toString());
+                    break;
+                case LONGS:
+                    json.add(mName, new JSONArray().add((long[])value));
+                    break;
+                case DOUBLES:
+                    json.add(mName, new JSONArray().add((double[])value));
+                    break;
+                case STRINGS:
+                    JSONArray strings = new JSONArray();
+                    for (String string : (String[])value)
+                    {
+                        strings.add(string);
+                    }
+                    json.add(mName, strings);
+                    break;
+                case OBJECT:
+                    json.add(mName, (JSONObject)value);
+                    break;
+                case ARRAY:
+                    json.add(mName, (JSONArray)value);
+                    break;
+                default:
+                    json.add(mName, codec().encode(value));
+                    break;
+            }
+        }
+
+        void decode(Object object, String raw)
+        {
+            if (raw.equals("null"))
+            {
+                set(object, null);
+                return;
+            }
+
+            Object value;
+            switch (mKind)
+            {
+                case STRING:
+                    value = JSONObject.unescape(raw);
+                    break;
+                case LONG:
+                    value = JSONObject.parseLong(JSONObject.unescape(raw));
+                    break;
+                case INTEGER:
+                    value = JSONObject.parseInt(JSONObject.unescape(raw));
+                    break;
+                case DOUBLE:
+                    value = JSONObject.parseDouble(JSONObject.unescape(raw));
+                    break;
+                case BOOLEAN:
+                    value = JSONObject.unescape(raw).equals("true");
+                    break;
+                case ENUM:
+                    value = constant(JSONObject.unescape(raw));
+                    break;
+                case LONGS:
+                    value = array(raw).toLongArray();
+                    break;
+                case DOUBLES:
+                    value = array(raw).toDoubleArray();
+                    break;
+                case STRINGS:
+                    JSONArray array = array(raw);
+                    String[] strings = new String[array.size()];
+                    for (int i = 0; i < strings.length; i++)
+                    {
+                        strings[i] = array.getString(i);
+                    }
+                    value = strings;
+                    break;
+                case OBJECT:
+                    value = object(raw);
+                    break;
+                case ARRAY:
+                    value = array(raw);
+                    break;
+                default:
+                    value = codec().decode(object(raw).getMap());
+                    break;
+            }
+
+            set(object, value);
+        }
+
+        private void set(Object object, Object value)
+        {
+            try
+            {
+                mSetter.invokeExact(object, value);
+            }
+            catch (Throwable exception)
+            {
+                throw failed(exception);
+            }
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private Object constant(String name)
+        {
+            try
+            {
+                return Enum.valueOf((Class<? extends Enum>)mType, name);
+            }
+            catch (IllegalArgumentException exception)
+            {
+                throw new JSONException("Invalid value for [" + mName + "] - " + name);
+            }
+        }
+
+        private JSONObject object(String raw)
+        {
+            if (raw.charAt(0) != '{')
+            {
+                throw new JSONException("Not an object [" + mName + "]");
+            }
+            return new JSONObject(raw, 0, raw.length());
+        }
+
+        private JSONArray array(String raw)
+        {
+            if (raw.charAt(0) != '[')
+            {
+                throw new JSONException("Not an array [" + mName + "]");
+            }
+            return JSONObject.toArray(raw, 0);
+        }
+    }
+}
@@ -36,6 +36,12 @@ public class JSONList
     private List<String> names = new ArrayList<String>();
     private List<String> values = new ArrayList<String>();
 
+    // The decoded values, parallel to values - created on the first typed read and
+    //    only extended as far as values when next read. Concurrent readers share the
+    //    array without locks: an entry lost to a racing write or copy only costs a
+    //    decode, and JSONValue is safe to read however it was published.
+    private volatile JSONValue[] cache = null;
+
     //-------------------------------------------------------------------------------
     //
     //-------------------------------------------------------------------------------
@@ -47,6 +53,12 @@ public class JSONList
     {
         names.addAll(other.names);
         values.addAll(other.values);
+
+        JSONValue[] cache = other.cache;
+        if (cache != null)
+        {
+            this.cache = cache.clone();
+        }
     }
 
     public JSONList add(String name, String value)
@@ -152,7 +164,7 @@ public class JSONList
                 buffer.append(",");
             }
             first = false;
-            buffer.append(JSONObject.escape(names.get(index)));
+            JSONObject.escape(names.get(index), buffer);
             buffer.append(":");
             buffer.append(values.get(index)); 
         }
@@ -167,6 +179,24 @@ public class JSONList
         values.add(value);
     }
 
+    private JSONValue decoded(int index, String value)
+    {
+        JSONValue[] cache = this.cache;
+        if ((cache == null) || (cache.length < values.size()))
+        {
+            cache = (cache == null) ? new JSONValue[values.size()] : Arrays.copyOf(cache, values.size());
+            this.cache = cache;
+        }
+
+        JSONValue decoded = cache[index];
+        if ((decoded == null) || (decoded.mSource != value))
+        {
+            decoded = new JSONValue(value);
+            cache[index] = decoded;
+        }
+        return decoded;
+    }
+
     //-------------------------------------------------------------------------------
     //
     //-------------------------------------------------------------------------------
@@ -179,12 +209,22 @@ public class JSONList
     {
         names.clear();
         values.clear();
+        cache = null;
     }
 
     public void remove(int index)
     {
         names.remove(index);
         values.remove(index);
+
+        JSONValue[] cache = this.cache;
+        if ((cache != null) && (index < cache.length))
+        {
+            JSONValue[] shifted = new JSONValue[cache.length - 1];
+            System.arraycopy(cache, 0, shifted, 0, index);
+            System.arraycopy(cache, index + 1, shifted, index, cache.length - index - 1);
+            this.cache = shifted;
+        }
     }
 
     public String getName(int index)
@@ -245,35 +285,35 @@ public class JSONList
             throw new JSONException("Not a value");
         }
 
-        return JSONObject.unescape(value);
+        return decoded(index, value).getString();
     }
 
     public int getInteger(int index)
     {
         String value = getValue(index);
 
-        return JSONObject.parseInt(JSONObject.unescape(value));
+        return decoded(index, value).getInteger();
     }
 
     public long getLong(int index)
     {
         String value = getValue(index);
 
-        return JSONObject.parseLong(JSONObject.unescape(value));
+        return decoded(index, value).getLong();
     }
 
     public double getDouble(int index)
     {
         String value = getValue(index);
 
-        return JSONObject.parseDouble(JSONObject.unescape(value));
+        return decoded(index, value).getDouble();
     }
 
     public boolean getBoolean(int index)
     {
         String value = getValue(index);
 
-        return JSONObject.unescape(value).equals("true");
+        return decoded(index, value).getBoolean();
     }
 
     public JSONObject getObject(int index)
@@ -285,7 +325,7 @@ public class JSONList
             throw new JSONException("Not an object");
         }
 
-        return new JSONObject(value);
+        return decoded(index, value).getObject();
     }
 
     public JSONArray getArray(int index)
@@ -297,7 +337,7 @@ public class JSONList
             throw new JSONException("Not an array");
         }
 
-        return new JSONObject(new StringBuilder("{a:").append(value).append("}").toString()).getArray("a");
+        return decoded(index, value).getArray();
     }
 
     public JSONMap getMap(int index)
@@ -309,7 +349,7 @@ public class JSONList
             throw new JSONException("Not an object");
         }
 
-        return new JSONMap(new JSONObject(value).getMap());
+        return decoded(index, value).getMap();
     }
 
     public JSONList getList(int index)
@@ -321,7 +361,7 @@ public class JSONList
             throw new JSONException("Not an object");
         }
 
-        return new JSONObject(value).getList();
+        return decoded(index, value).getList();
     }
 
     //-------------------------------------------------------------------------------
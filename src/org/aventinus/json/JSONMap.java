@@ -19,6 +19,7 @@
 package org.aventinus.json;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.aventinus.util.*;
 
@@ -35,6 +36,10 @@ public class JSONMap
 
     private Map<String, String> map = new HashMap<String, String>();
 
+    // The decoded values - created on the first typed read. Concurrent readers fill
+    //    it together; a map lost to a racing first read only costs a decode.
+    private volatile Map<String, JSONValue> cache = null;
+
     //-------------------------------------------------------------------------------
     //
     //-------------------------------------------------------------------------------
@@ -45,6 +50,11 @@ public class JSONMap
     public JSONMap(JSONMap other)
     {
         map.putAll(other.map);
+
+        if (other.cache != null)
+        {
+            cache = new ConcurrentHashMap<String, JSONValue>(other.cache);
+        }
     }
 
     public JSONMap put(String name, Object value)
@@ -59,6 +69,7 @@ public class JSONMap
         }
 
         map.put(name, "null");
+        invalidate(name);
         return this;
     }
 
@@ -74,6 +85,7 @@ public class JSONMap
         }
 
         map.put(name, JSONObject.escape(value));
+        invalidate(name);
         return this;
     }
 
@@ -85,6 +97,7 @@ public class JSONMap
         }
 
         map.put(name, Integer.toString(value));
+        invalidate(name);
         return this;
     }
 
@@ -96,6 +109,7 @@ public class JSONMap
         }
 
         map.put(name, Long.toString(value));
+        invalidate(name);
         return this;
     }
 
@@ -107,6 +121,7 @@ public class JSONMap
         }
 
         map.put(name, Double.toString(value));
+        invalidate(name);
         return this;
     }
 
@@ -118,6 +133,7 @@ public class JSONMap
         }
 
         map.put(name, value ? "true" : "false");
+        invalidate(name);
         return this;
     }
 
@@ -129,6 +145,7 @@ public class JSONMap
         }
 
         map.put(name, value.toString());
+        invalidate(name);
         return this;
     }
 
@@ -140,6 +157,7 @@ public class JSONMap
         }
 
         map.put(name, value.toString());
+        invalidate(name);
         return this;
     }
 
@@ -151,14 +169,14 @@ public class JSONMap
 
         buffer.append("{");
         boolean first = true;
-        for (String name: map.values())
+        for (String name: map.keySet())
         {
             if (! first)
             {
                 buffer.append(",");
             }
             first = false;
-            buffer.append(JSONObject.escape(name));
+            JSONObject.escape(name, buffer);
             buffer.append(":");
             buffer.append(map.get(name));
         }
@@ -170,6 +188,33 @@ public class JSONMap
     protected void putRaw(String name, String value)
     {
         map.put(name, value);
+        invalidate(name);
+    }
+
+    private void invalidate(String name)
+    {
+        if (cache != null)
+        {
+            cache.remove(name);
+        }
+    }
+
+    private JSONValue decoded(String name, String value)
+    {
+        Map<String, JSONValue> cache = this.cache;
+        if (cache == null)
+        {
+            cache = new ConcurrentHashMap<String, JSONValue>();
+            this.cache = cache;
+        }
+
+        JSONValue decoded = cache.get(name);
+        if ((decoded == null) || (decoded.mSource != value))
+        {
+            decoded = new JSONValue(value);
+            cache.put(name, decoded);
+        }
+        return decoded;
     }
 
     //-------------------------------------------------------------------------------
@@ -183,6 +228,7 @@ public class JSONMap
     public void clear()
     {
         map.clear();
+        cache = null;
     }
 
     public Set<String> keySet()
@@ -197,6 +243,7 @@ public class JSONMap
 
     public String remove(String name)
     {
+        invalidate(name);
         return map.remove(name);
     }
 
@@ -252,7 +299,7 @@ public class JSONMap
             throw new JSONException("Not a value");
         }
 
-        return JSONObject.unescape(value);
+        return decoded(name, value).getString();
     }
 
     public String getString(String name, String defaultValue)
@@ -268,7 +315,7 @@ public class JSONMap
             throw new JSONException("Not a value");
         }
 
-        return new String(JSONObject.unescape(value));
+        return decoded(name, value).getString();
     }
 
     public int getInteger(String name)
@@ -279,7 +326,7 @@ public class JSONMap
             throw new JSONException("Value does not exist");
         }
 
-        return JSONObject.parseInt(JSONObject.unescape(value));
+        return decoded(name, value).getInteger();
     }
 
     public int getInteger(String name, int defaultValue)
@@ -290,7 +337,7 @@ public class JSONMap
             return defaultValue;
         }
 
-        return JSONObject.parseInt(JSONObject.unescape(value));
+        return decoded(name, value).getInteger();
     }
 
     public long getLong(String name)
@@ -301,7 +348,7 @@ public class JSONMap
             throw new JSONException("Value does not exist");
         }
 
-        return JSONObject.parseLong(JSONObject.unescape(value));
+        return decoded(name, value).getLong();
     }
 
     public long getLong(String name, long defaultValue)
@@ -312,7 +359,7 @@ public class JSONMap
             return defaultValue;
         }
 
-        return JSONObject.parseLong(JSONObject.unescape(value));
+        return decoded(name, value).getLong();
     }
 
     public double getDouble(String name)
@@ -323,7 +370,7 @@ public class JSONMap
             throw new JSONException("Value does not exist");
         }
 
-        return JSONObject.parseDouble(JSONObject.unescape(value));
+        return decoded(name, value).getDouble();
     }
 
     public double getDouble(String name, double defaultValue)
@@ -334,7 +381,7 @@ public class JSONMap
             return defaultValue;
         }
 
-        return JSONObject.parseDouble(JSONObject.unescape(value));
+        return decoded(name, value).getDouble();
     }
 
     public boolean getBoolean(String name)
@@ -345,7 +392,7 @@ public class JSONMap
             throw new JSONException("Value does not exist");
         }
 
-        return JSONObject.unescape(value).equals("true");
+        return decoded(name, value).getBoolean();
     }
 
     public boolean getBoolean(String name, boolean defaultValue)
@@ -356,7 +403,7 @@ public class JSONMap
             return defaultValue;
         }
 
-        return JSONObject.unescape(value).equals("true");
+        return decoded(name, value).getBoolean();
     }
 
     public JSONObject getObject(String name)
@@ -372,7 +419,7 @@ public class JSONMap
             throw new JSONException("Not an object");
         }
 
-        return new JSONObject(value);
+        return decoded(name, value).getObject();
     }
 
     public JSONObject getObject(String name, JSONObject defaultValue)
@@ -388,7 +435,7 @@ public class JSONMap
             throw new JSONException("Not an object");
         }
 
-        return new JSONObject(value);
+        return decoded(name, value).getObject();
     }
 
     public JSONArray getArray(String name)
@@ -404,7 +451,7 @@ public class JSONMap
             throw new JSONException("Not an array");
         }
 
-        return new JSONObject(new StringBuilder("{a:").append(value).append("}").toString()).getArray("a");
+        return decoded(name, value).getArray();
     }
 
     public JSONArray getArray(String name, JSONArray defaultValue)
@@ -420,7 +467,7 @@ public class JSONMap
             throw new JSONException("Not an array");
         }
 
-        return new JSONObject(new StringBuilder("{a:").append(value).append("}").toString()).getArray("a");
+        return decoded(name, value).getArray();
     }
 
     public JSONMap getMap(String name)
@@ -436,7 +483,7 @@ public class JSONMap
             throw new JSONException("Not an object");
         }
 
-        return new JSONMap(new JSONObject(value).getMap());
+        return decoded(name, value).getMap();
     }
 
     public JSONMap getMap(String name, JSONMap defaultValue)
@@ -452,7 +499,7 @@ public class JSONMap
             throw new JSONException("Not an object");
         }
 
-        return new JSONMap(new JSONObject(value).getMap());
+        return decoded(name, value).getMap();
     }
 
     public JSONList getList(String name)
@@ -468,7 +515,7 @@ public class JSONMap
             throw new JSONException("Not an object");
         }
 
-        return new JSONObject(value).getList();
+        return decoded(name, value).getList();
     }
 
     public JSONList getList(String name, JSONList defaultValue)
@@ -484,7 +531,7 @@ public class JSONMap
             throw new JSONException("Not an object");
         }
 
-        return new JSONObject(value).getList();
+        return decoded(name, value).getList();
     }
     public String toString(String name)
     {
@@ -514,7 +561,7 @@ public class JSONMap
             prefix = prefix + "   ";
         }
 
-        for (String name: map.values())
+        for (String name: map.keySet())
         {
             if (isObject(name))
             {
@@ -20,6 +20,10 @@ package org.aventinus.json;
 
 import java.util.*;
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
 
 import org.aventinus.util.*;
 
@@ -56,12 +60,35 @@ public class JSONObject
     private int mStart;
     private int mEnd;
 
+    // UTF-8 input is scanned as bytes - every delimiter is ASCII and every byte of a
+    //    multi-byte character is above ' ' so only the values read are decoded.
+    //    Offsets are absolute indexes into the buffer, which may be a mapped file.
+    private ByteBuffer mBytes;
+    private int mLimit;
+
+    // The array behind mBytes when it is a heap buffer - charAt() reads it directly
+    //    rather than through ByteBuffer.get()
+    private byte[] mHeap;
+
     private int[] mStack = null;
     private int mStackIdx = -1;
 
+    private Index mIndex = null;
+
+    // The text has been through parse() once so nested values can be skipped over
+    private boolean mValid = false;
+
+    // Top level adds and removes on parsed text are logged rather than made and
+    //    apply() only writes them into new text when the whole of it is needed
+    private Edits mEdits = null;
+
+    // See freeze()
+    private boolean mFrozen = false;
+
     private String error = "";
 
     private static boolean verbose = false;
+    private static boolean internKeys = false;
 
     //-------------------------------------------------------------------------------
     //
@@ -77,7 +104,40 @@ public class JSONObject
 
     public JSONObject(byte[] input)
     {
-        this(new String(input));
+        this(input, 0, input.length);
+    }
+
+    public JSONObject(byte[] input, int offset, int length)
+    {
+        if ((offset < 0) || (length < 0) || (offset + length > input.length))
+        {
+            throw new JSONException("Invalid offset or length");
+        }
+
+        mBytes = ByteBuffer.wrap(input);
+        mHeap = input;
+        mLimit = offset + length;
+        mStart = offset;
+        validate(false);
+    }
+
+    public JSONObject(ByteBuffer input)
+    {
+        if (input.hasArray())
+        {
+            mBytes = ByteBuffer.wrap(input.array());
+            mHeap = input.array();
+            mStart = input.arrayOffset() + input.position();
+            mLimit = input.arrayOffset() + input.limit();
+        }
+        else
+        {
+            // A direct or mapped buffer is read in place
+            mBytes = input.duplicate();
+            mStart = input.position();
+            mLimit = input.limit();
+        }
+        validate(false);
     }
 
     public JSONObject(String input)
@@ -85,19 +145,47 @@ public class JSONObject
         fromString(input);
     }
 
-    private void fromString(String input)
+    //-------------------------------------------------------------------------------
+    // For text that we wrote ourselves - toString() of another JSONObject, a message
+    //    from our own services. Nothing is validated up front: the end of the object
+    //    is found by following the nesting and quotes only and a value is not looked
+    //    at until a getter asks for it, so a consumer pays only for what it reads.
+    //    Text that is not well formed may give wrong values rather than an error;
+    //    anything from outside should use JSONObject(String).
+    //-------------------------------------------------------------------------------
+    public JSONObject(String input, boolean trusted)
     {
         mInput = input;
+        mStart = 0;
+        validate(trusted);
+    }
+
+    public JSONObject(byte[] input, boolean trusted)
+    {
+        mBytes = ByteBuffer.wrap(input);
+        mHeap = input;
+        mLimit = input.length;
+        mStart = 0;
+        validate(trusted);
+    }
 
+    private void fromString(String input)
+    {
+        mInput = input;
         mStart = 0;
+        validate(false);
+    }
+
+    private void validate(boolean trusted)
+    {
         while(true)
         {
-            if (mStart >= mInput.length())
+            if (mStart >= scanLimit())
             {
                 throw new JSONException("Invalid JSON - no input");
             }
 
-            char inputc = mInput.charAt(mStart);
+            char inputc = charAt(mStart);
 
             if (inputc == '{')
             {
@@ -111,15 +199,30 @@ public class JSONObject
             mStart++;
         }                
 
-        mEnd = parse(mStart, null);
+        if (trusted)
+        {
+            try
+            {
+                mEnd = skip(mStart);
+            }
+            catch (IndexOutOfBoundsException exception)
+            {
+                throw new JSONException("Invalid JSON - unterminated message");
+            }
+        }
+        else
+        {
+            mEnd = parse(mStart, null);
+        }
         if (mEnd < 0)
         {
             throw new JSONException("Invalid JSON - invalid message");
         }
+        mValid = true;
 
-        for (int i = mEnd; i < mInput.length(); i++)
+        for (int i = mEnd; i < scanLimit(); i++)
         {
-            char inputc = mInput.charAt(i);
+            char inputc = charAt(i);
 
             if (inputc > ' ')
             {
@@ -128,12 +231,44 @@ public class JSONObject
         }                
     }
 
+    //-------------------------------------------------------------------------------
+    // A view over text that has already been validated by the parse() that found it.
+    //    The text is shared and is only copied out by convert() if the view is changed.
+    //-------------------------------------------------------------------------------
+    JSONObject(String input, int start, int end)
+    {
+        mInput = input;
+        mStart = start;
+        mEnd = end;
+        mValid = true;
+    }
+
+    private JSONObject(ByteBuffer input, int start, int end, int limit)
+    {
+        mBytes = input;
+        mHeap = input.hasArray() ? input.array() : null;
+        mLimit = limit;
+        mStart = start;
+        mEnd = end;
+        mValid = true;
+    }
+
     public JSONObject(JSONObject other)
     {
+        other.apply();
+
         mStart = other.mStart;
         mEnd = other.mEnd;
 
-        if (other.mInput == null)
+        if (other.mBytes != null)
+        {
+            mBytes = other.mBytes;
+            mHeap = other.mHeap;
+            mLimit = other.mLimit;
+            mIndex = other.mIndex;
+            mValid = other.mValid;
+        }
+        else if (other.mInput == null)
         {
             if (other.mStackIdx >= 0)
             {
@@ -149,6 +284,8 @@ public class JSONObject
         else
         {
             mInput = other.mInput;
+            mIndex = other.mIndex; // the offsets are into the shared input
+            mValid = other.mValid;
         }
 
         error = other.error;
@@ -163,11 +300,66 @@ public class JSONObject
         }
     }
 
+    //-------------------------------------------------------------------------------
+    // An immutable snapshot for sharing between threads - config and reference data
+    //    that many workers read. The snapshot is parsed text with its index already
+    //    built and nothing left to apply, so every read only reads; anything that
+    //    would change it throws without touching its state. Like any object it must
+    //    be handed to other threads safely - through a final or volatile field, a
+    //    concurrent collection or before they are started. A view over bytes reads
+    //    them in place so the buffer must not change. new JSONObject(frozen) gives
+    //    a copy that can be changed again.
+    //-------------------------------------------------------------------------------
+    public JSONObject freeze()
+    {
+        if (mFrozen)
+        {
+            return this;
+        }
+        if (error.length() > 0)
+        {
+            throw new JSONException("Invalid state");
+        }
+        if (mStackIdx >= 0)
+        {
+            throw new JSONException("Object is open pending additions");
+        }
+
+        JSONObject frozen = new JSONObject(this);
+        frozen.index();
+        frozen.mFrozen = true;
+
+        return frozen;
+    }
+
+    public boolean isFrozen()
+    {
+        return mFrozen;
+    }
+
+    private void checkFrozen()
+    {
+        if (mFrozen)
+        {
+            throw new JSONException("Object is frozen");
+        }
+    }
+
     public static void verbose(boolean value)
     {
         verbose = value;
     }
 
+    //-------------------------------------------------------------------------------
+    // When on, the keys that getMap(), getList() and getNames() take from the text
+    //    are shared through StringIntern - worth it when many objects hold the same
+    //    few keys. StringIntern keeps the hit rate and bytes saved.
+    //-------------------------------------------------------------------------------
+    public static void internKeys(boolean value)
+    {
+        internKeys = value;
+    }
+
 //    public void readExternal(ObjectInput input) throws ClassNotFoundException, IOException
 //    {
 //        fromString((String)input.readObject());
@@ -178,29 +370,48 @@ public class JSONObject
 //        output.writeObject(toString());
 //    }
 
+    //-------------------------------------------------------------------------------
+    // The file is read as UTF-8 - not the platform default that FileReader used -
+    //    straight into the byte array the object scans, so it is copied only once.
+    //-------------------------------------------------------------------------------
     public static JSONObject fromFile(String filename)
     {
-        BufferedReader reader = null;
+        if (filename.startsWith("file:"))
+        {
+            filename = filename.substring(5);
+        }
+
         try
         {
-            if (filename.startsWith("file:"))
-            {
-                filename = filename.substring(5);
-            }
+            return new JSONObject(Files.readAllBytes(Paths.get(filename)));
+        }
+        catch (IOException exception)
+        {
+            throw new JSONException(exception);
+        }
+    }
 
-            StringBuilder buffer = new StringBuilder();
-            reader = new BufferedReader(new FileReader(filename));
-            while(true)
-            {
-                String line = reader.readLine();
-                if (line == null)
-                {
-                    break;
-                }
-                buffer.append(line).append("\n");
-            }
+    //-------------------------------------------------------------------------------
+    // As fromFile() but the file is mapped rather than read so it is never copied onto
+    //    the heap - for large files that are read once. Values are decoded from the
+    //    mapping as they are asked for, so the file must not change while the object
+    //    (or anything taken from it) is in use: a file truncated or rewritten in place
+    //    gives SIGBUS on the next read, and on Windows the file stays locked until the
+    //    mapping is collected. Never use it for long lived objects such as config.
+    //-------------------------------------------------------------------------------
+    public static JSONObject mapFile(String filename)
+    {
+        if (filename.startsWith("file:"))
+        {
+            filename = filename.substring(5);
+        }
 
-            return new JSONObject(buffer.toString());
+        FileChannel channel = null;
+        try
+        {
+            channel = new RandomAccessFile(filename, "r").getChannel();
+
+            return new JSONObject(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
         }
         catch (Exception exception)
         {
@@ -208,7 +419,7 @@ public class JSONObject
         }
         finally
         {
-            Toolbox.close(reader);
+            Toolbox.close(channel);
         }
     }
 
@@ -225,6 +436,9 @@ public class JSONObject
     private static final int REMOVE_VALUE = 8;
     private static final int REMOVE_ARRAY = 9;
     private static final int REMOVE_OBJECT = 10;
+    private static final int GET_INDEX = 12;
+    private static final int GET_SPANS = 13;
+    private static final int REMOVE_ANY = 14;
 
     private static final class Request
     {
@@ -240,6 +454,51 @@ public class JSONObject
         private JSONMap mMap = null;
         private JSONList mList = null;
         private ArrayList<String> mNames = null;
+        private Index mIndex = null;
+
+        private int[] mSpans = null; // valueStart, valueEnd
+        private int mSpanCount = 0;
+        private int mElement = -1;
+        private int mSeen = 0;
+    }
+
+    //-------------------------------------------------------------------------------
+    // Offsets of the top level name:value pairs so that repeated getters do not
+    //    rescan the input. Names are held without their quotes and the slots are
+    //    an open addressed hash table of entry + 1 (0 is empty).
+    //-------------------------------------------------------------------------------
+    private static final int KIND_VALUE = 1;
+    private static final int KIND_OBJECT = 2;
+    private static final int KIND_ARRAY = 3;
+
+    private static final class Index
+    {
+        private Index() {}
+
+        private int mCount = 0;
+        private int[] mSlots = new int[16];
+        private int[] mHashes = new int[8];
+        private int[] mOffsets = new int[8 * 4]; // nameStart, nameEnd, valueStart, valueEnd
+        private byte[] mKinds = new byte[8];
+        private boolean mDuplicates = false;
+    }
+
+    //-------------------------------------------------------------------------------
+    // The edit log - the index entries removed from the text and the pairs added
+    //    after it. An added pair that is removed again has its value set to null.
+    //-------------------------------------------------------------------------------
+    private static final class Edits
+    {
+        private Edits() {}
+
+        private BitSet mRemoved = new BitSet();
+        private ArrayList<String> mNames = new ArrayList<String>();
+        private ArrayList<String> mValues = new ArrayList<String>();
+        private HashMap<String, ArrayDeque<Integer>> mAdded = new HashMap<String, ArrayDeque<Integer>>();
+
+        // A replaced pair is removed and added, but is written where it stood
+        private HashMap<Integer, Integer> mReplaced = new HashMap<Integer, Integer>();
+        private BitSet mInPlace = new BitSet();
     }
 
     //-------------------------------------------------------------------------------
@@ -275,8 +534,13 @@ public class JSONObject
         return addRaw(name, value ? "true" : "false");
     }
 
-    private JSONObject addRaw(String name, String value)
+    JSONObject addRaw(String name, String value)
     {
+        if (logged(name, value))
+        {
+            return this;
+        }
+
         convert();
 
         if (error.length() > 0)
@@ -292,7 +556,7 @@ public class JSONObject
             {
                 mBuffer.append(",");
             }
-            mBuffer.append(escape(name)).append(":").append(value);
+            escape(name, mBuffer).append(":").append(value);
 
             mBuffer.append("}"); // replace out }
         }
@@ -321,7 +585,7 @@ public class JSONObject
                 throw new JSONException("Invalid state");
             }
 
-            mBuffer.append(escape(name)).append(":").append(value);
+            escape(name, mBuffer).append(":").append(value);
         }
 
         return this;
@@ -329,6 +593,11 @@ public class JSONObject
 
     public JSONObject add(String name, JSONObject value)
     {
+        if (logged(name, value.toString()))
+        {
+            return this;
+        }
+
         convert();
 
         if (error.length() > 0)
@@ -344,7 +613,7 @@ public class JSONObject
             {
                 mBuffer.append(",");
             }
-            mBuffer.append(escape(name)).append(":").append(value.toString());
+            escape(name, mBuffer).append(":").append(value.toString());
 
             mBuffer.append("}"); // replace out }
         }
@@ -369,7 +638,7 @@ public class JSONObject
                 throw new JSONException("Invalid state");
             }
 
-            mBuffer.append(escape(name)).append(":").append(value.toString());
+            escape(name, mBuffer).append(":").append(value.toString());
         }
 
         return this;
@@ -413,6 +682,11 @@ public class JSONObject
 
     public JSONObject add(String name, JSONArray value)
     {
+        if (logged(name, value.toString()))
+        {
+            return this;
+        }
+
         convert();
 
         if (error.length() > 0)
@@ -428,7 +702,7 @@ public class JSONObject
             {
                 mBuffer.append(",");
             }
-            mBuffer.append(escape(name)).append(":").append(value.toString());
+            escape(name, mBuffer).append(":").append(value.toString());
 
             mBuffer.append("}"); // replace out }
         }
@@ -453,7 +727,7 @@ public class JSONObject
                 throw new JSONException("Invalid state");
             }
 
-            mBuffer.append(escape(name)).append(":").append(value.toString());
+            escape(name, mBuffer).append(":").append(value.toString());
         }
 
         return this;
@@ -497,73 +771,131 @@ public class JSONObject
 
     public String removeValue(String name)
     {
-        convert();
-
-        if (error.length() > 0)
+        String value = remove(name, REMOVE_VALUE);
+        if (value == null)
         {
-            throw new JSONException("Invalid state");
+            throw new JSONException("Did not find Value [" + name + "]");
         }
 
-        if (name.length() == 0)
-        {
-            throw new JSONException("Invalid name");
-        }
+        return unescape(value);
+    }
 
-        if (mStackIdx >= 0)
+    public JSONObject removeObject(String name)
+    {
+        String value = remove(name, REMOVE_OBJECT);
+        if (value == null)
         {
-            throw new JSONException("Object is open pending additions");
+            throw new JSONException("Did not find Object [" + name + "]");
         }
 
-        Request request = new Request();
-        request.mRequest = REMOVE_VALUE;
-        request.mName = name;
-
-        parse(mStart, request);
+        return new JSONObject(value);
+    }
 
-        if (! request.mResponse)
+    public JSONArray removeArray(String name)
+    {
+        String value = remove(name, REMOVE_ARRAY);
+        if (value == null)
         {
-            throw new JSONException("Did not find Value [" + name + "]");
+            throw new JSONException("Did not find Array [" + name + "]");
         }
 
-        return unescape(request.mValue);
+        return toArray(value, 0);
     }
 
-    public JSONObject removeObject(String name)
+    // The raw value of whatever kind is called name, removed, or null
+    String removeRaw(String name)
     {
-        convert();
+        return remove(name, REMOVE_ANY);
+    }
+
+    // The raw value of whatever kind is called name, or null
+    String getRaw(String name)
+    {
+        return (String)getValue(name, GET_VALUE);
+    }
+
+    //-------------------------------------------------------------------------------
+    // The raw value called name swapped for value where it stands, so the name keeps
+    //    its place, or null with nothing changed if there is no such name. Parsed text
+    //    only logs the swap; with duplicate names the first is changed in the text.
+    //-------------------------------------------------------------------------------
+    String replaceRaw(String name, String value)
+    {
+        checkFrozen();
 
         if (error.length() > 0)
         {
             throw new JSONException("Invalid state");
         }
 
-        if (name.length() == 0)
+        if (mStackIdx >= 0)
         {
-            throw new JSONException("Invalid name");
+            throw new JSONException("Object is open pending additions");
         }
 
-        if (mStackIdx >= 0)
+        if ((mInput == null) && (mBytes == null))
         {
-            throw new JSONException("Object is open pending additions");
+            // A finished builder is text like any other
+            mInput = mBuffer.toString();
+            mBuffer = null;
+            mStart = 0;
+            mEnd = mInput.length();
+            mValid = true;
+        }
+
+        int entry = find(name);
+        if (! mIndex.mDuplicates)
+        {
+            if (entry >= 0)
+            {
+                String previous = substring(mIndex.mOffsets[entry * 4 + 2], mIndex.mOffsets[entry * 4 + 3]);
+
+                logged(name, value);
+                int pair = mEdits.mNames.size() - 1;
+                mEdits.mRemoved.set(entry);
+                mEdits.mReplaced.put(entry, pair);
+                mEdits.mInPlace.set(pair);
+
+                return previous;
+            }
+
+            int added = added(name);
+            return (added < 0) ? null : mEdits.mValues.set(added, value);
         }
 
+        apply();
+
         Request request = new Request();
-        request.mRequest = REMOVE_OBJECT;
-        request.mName = name;
+        request.mRequest = GET_SPANS;
+        request.mSpans = new int[2];
+        request.mName = (mBytes != null) ? asBytes(name) : name;
+        request.mElement = -1;
 
         parse(mStart, request);
-
-        if (! request.mResponse)
+        if (request.mSpanCount == 0)
         {
-            throw new JSONException("Did not find Object [" + name + "]");
+            return null;
         }
 
-        return new JSONObject(request.mValue);
+        int valueStart = request.mSpans[0];
+        int valueEnd = request.mSpans[1];
+        String previous = substring(valueStart, valueEnd);
+
+        mInput = substring(mStart, valueStart) + value + substring(valueEnd, mEnd);
+        mBytes = null;
+        mHeap = null;
+        mStart = 0;
+        mEnd = mInput.length();
+        mIndex = null;
+
+        return previous;
     }
 
-    public JSONArray removeArray(String name)
+    // The raw value removed or null - parsed text only logs the removal. A pair
+    //    of another kind than type asks for is left in place.
+    private String remove(String name, int type)
     {
-        convert();
+        checkFrozen();
 
         if (error.length() > 0)
         {
@@ -580,23 +912,56 @@ public class JSONObject
             throw new JSONException("Object is open pending additions");
         }
 
+        if ((mInput != null) || (mBytes != null))
+        {
+            int entry = find(name);
+
+            // With duplicate names the index does not hold every pair
+            if (! mIndex.mDuplicates)
+            {
+                if (entry >= 0)
+                {
+                    if (! removes(type, mIndex.mKinds[entry]))
+                    {
+                        return null;
+                    }
+
+                    if (mEdits == null)
+                    {
+                        mEdits = new Edits();
+                    }
+                    mEdits.mRemoved.set(entry);
+
+                    return substring(mIndex.mOffsets[entry * 4 + 2], mIndex.mOffsets[entry * 4 + 3]);
+                }
+
+                int added = added(name);
+                if ((added < 0) || ! removes(type, kind(mEdits.mValues.get(added).charAt(0))))
+                {
+                    return null;
+                }
+
+                mEdits.mAdded.get(name).removeFirst();
+                return mEdits.mValues.set(added, null);
+            }
+        }
+
+        convert();
+
         Request request = new Request();
-        request.mRequest = REMOVE_ARRAY;
+        request.mRequest = type;
         request.mName = name;
 
         parse(mStart, request);
 
-        if (! request.mResponse)
-        {
-            throw new JSONException("Did not find Array [" + name + "]");
-        }
-
-        return new JSONObject("{a:" + request.mValue + "}").getArray("a");
+        return (request.mResponse) ? request.mValue : null;
     }
 
     public int length()
     {
-        if (mInput == null)
+        apply();
+
+        if ((mInput == null) && (mBytes == null))
         {
             return mBuffer.length();
         }
@@ -618,7 +983,13 @@ public class JSONObject
             throw new JSONException("Object is open pending additions");
         }
 
-        if (mInput == null)
+        apply();
+
+        if (mBytes != null)
+        {
+            return substring(mStart, mEnd);
+        }
+        else if (mInput == null)
         {
             return mBuffer.toString();
         }
@@ -632,36 +1003,180 @@ public class JSONObject
         }
     }
 
-    private void convert()
+    private boolean logged(String name, String value)
     {
-        if (mInput != null)
+        checkFrozen();
+
+        if ((mStackIdx >= 0) || ((mInput == null) && (mBytes == null)) || (error.length() > 0))
         {
-            // We need to detect the empty object by eliminating whitespace
-            //   between the braces
-            for (mStart = mStart + 1; mStart < mEnd; mStart++)
-            {
-                if (mInput.charAt(mStart) > ' ')
-                {
-                    break;
-                }
-            }
+            return false;
+        }
 
-            mBuffer = new StringBuilder("{");
-            mBuffer.append(mInput.substring(mStart, mEnd));
+        if (mEdits == null)
+        {
+            mEdits = new Edits();
+        }
 
-            mInput = null;
-            mStart = 0;
-            mEnd = -1;
+        ArrayDeque<Integer> added = mEdits.mAdded.get(name);
+        if (added == null)
+        {
+            added = new ArrayDeque<Integer>(1);
+            mEdits.mAdded.put(name, added);
         }
-    }
+        added.addLast(mEdits.mNames.size());
 
-    //-------------------------------------------------------------------------------
-    //
-    //-------------------------------------------------------------------------------
-    private static final int STACK_KEY = 1;
-    private static final int STACK_OBJECT = 2;
-    private static final int STACK_ARRAY = 3;
-    private static final int STACK_VALUE = 4;
+        mEdits.mNames.add(name);
+        mEdits.mValues.add(value);
+
+        return true;
+    }
+
+    // The first added pair called name that is still there, or -1
+    private int added(String name)
+    {
+        if (mEdits == null)
+        {
+            return -1;
+        }
+
+        ArrayDeque<Integer> added = mEdits.mAdded.get(name);
+        if ((added == null) || added.isEmpty())
+        {
+            return -1;
+        }
+        return added.getFirst();
+    }
+
+    //-------------------------------------------------------------------------------
+    // Writes the logged edits into new text - the pairs that are kept are copied
+    //    with the whitespace and comments between them, a replaced pair keeps its
+    //    name and place, and the added pairs follow.
+    //    Every part was valid so the result is too and the object is text again.
+    //-------------------------------------------------------------------------------
+    private void apply()
+    {
+        if (mEdits == null)
+        {
+            return;
+        }
+
+        Index index = index();
+        BitSet removed = mEdits.mRemoved;
+
+        StringBuilder buffer = new StringBuilder(mEnd - mStart + mEdits.mNames.size() * 16);
+        buffer.append('{');
+
+        int last = -1;
+        for (int i = 0; i < index.mCount; i++)
+        {
+            Integer pair = mEdits.mReplaced.get(i);
+            String replaced = (pair == null) ? null : mEdits.mValues.get(pair);
+            if (removed.get(i) && (replaced == null))
+            {
+                continue;
+            }
+
+            int nameStart = index.mOffsets[i * 4];
+            if (charAt(index.mOffsets[i * 4 + 1]) == '"')
+            {
+                nameStart--; // the index holds names without their quotes
+            }
+
+            if (i == 0)
+            {
+                buffer.append(substring(mStart + 1, nameStart));
+            }
+            else if (last == i - 1)
+            {
+                buffer.append(substring(index.mOffsets[last * 4 + 3], nameStart));
+            }
+            else if (last >= 0)
+            {
+                buffer.append(',');
+            }
+
+            if (replaced == null)
+            {
+                buffer.append(substring(nameStart, index.mOffsets[i * 4 + 3]));
+            }
+            else
+            {
+                buffer.append(substring(nameStart, index.mOffsets[i * 4 + 2])).append(replaced);
+            }
+            last = i;
+        }
+
+        if ((last >= 0) && (last == index.mCount - 1))
+        {
+            buffer.append(substring(index.mOffsets[last * 4 + 3], mEnd - 1));
+        }
+
+        for (int i = 0; i < mEdits.mNames.size(); i++)
+        {
+            String value = mEdits.mValues.get(i);
+            if ((value == null) || mEdits.mInPlace.get(i))
+            {
+                continue;
+            }
+
+            if (buffer.length() > 1)
+            {
+                buffer.append(',');
+            }
+            escape(mEdits.mNames.get(i), buffer).append(':').append(value);
+        }
+
+        buffer.append('}');
+
+        mInput = buffer.toString();
+        mBytes = null;
+        mHeap = null;
+        mStart = 0;
+        mEnd = mInput.length();
+        mIndex = null;
+        mValid = true;
+        mEdits = null;
+    }
+
+    private void convert()
+    {
+        checkFrozen();
+        apply();
+
+        // Every mutation comes through here so the offsets can no longer be trusted
+        mIndex = null;
+        mValid = false;
+
+        if ((mInput != null) || (mBytes != null))
+        {
+            // We need to detect the empty object by eliminating whitespace
+            //   between the braces
+            for (mStart = mStart + 1; mStart < mEnd; mStart++)
+            {
+                if (charAt(mStart) > ' ')
+                {
+                    break;
+                }
+            }
+
+            mBuffer = new StringBuilder("{");
+            mBuffer.append(substring(mStart, mEnd));
+
+            mInput = null;
+            mBytes = null;
+            mHeap = null;
+            mStart = 0;
+            mEnd = -1;
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    private static final int STACK_KEY = 1;
+    private static final int STACK_OBJECT = 2;
+    private static final int STACK_ARRAY = 3;
+    private static final int STACK_VALUE = 4;
 
     public JSONObject startObject()
     {
@@ -701,6 +1216,8 @@ public class JSONObject
 
     public JSONObject endObject()
     {
+        checkFrozen();
+
         if (mStackIdx <= 0)
         {
             error = "Invalid startArray()";
@@ -737,6 +1254,8 @@ public class JSONObject
 
     public JSONObject startArray()
     {
+        checkFrozen();
+
         if (mStackIdx <= 0)
         {
             error = "Invalid startArray()";
@@ -771,6 +1290,8 @@ public class JSONObject
 
     public JSONObject endArray()
     {     
+        checkFrozen();
+
         if (mStackIdx <= 0)
         {
             error = "Invalid endArray()";
@@ -831,7 +1352,7 @@ public class JSONObject
                 mBuffer.append(",");
             }
 
-            mBuffer.append(escape(key)).append(":");
+            escape(key, mBuffer).append(":");
         }
         else if (mStackIdx == 0)
         {
@@ -861,7 +1382,7 @@ public class JSONObject
                 throw new JSONException("Invalid key()");
             }
 
-            mBuffer.append(escape(key)).append(":");
+            escape(key, mBuffer).append(":");
         }
 
         return this;
@@ -894,6 +1415,8 @@ public class JSONObject
 
     private JSONObject rawValue(String value)
     {
+        checkFrozen();
+
         if (value.length() == 0)
         {
             error = "Invalid value";
@@ -961,48 +1484,49 @@ public class JSONObject
             throw new JSONException("Object is open pending additions");
         }
 
-        Request request = new Request();
-        request.mRequest = CONTAINS;
-        request.mName = name;
-
-        parse(mStart, request);
-
-        if (! request.mResponse)
+        if (find(name) >= 0)
         {
-            return false;
+            return true;
         }
 
-        return true;
+        return (added(name) >= 0);
     }
 
     public boolean isObject(String name)
     {
-        String value = (String)getValue(name, GET_VALUE);
-        if ((value == null) || (! value.startsWith("{")))
-        {
-            return false;
-        }
-        return true;
+        return (getKind(name) == KIND_OBJECT);
     }
 
     public boolean isArray(String name)
     {
-        String value = (String)getValue(name, GET_VALUE);
-        if ((value == null) || (! value.startsWith("[")))
-        {
-            return false;
-        }
-        return true;
+        return (getKind(name) == KIND_ARRAY);
     }
 
     boolean isValue(String name)
     {
-        String value = (String)getValue(name, GET_VALUE);
-        if ((value == null) || value.startsWith("{") || value.startsWith("["))
+        return (getKind(name) == KIND_VALUE);
+    }
+
+    private int getKind(String name)
+    {
+        if (name.length() == 0)
         {
-            return false;
+            throw new JSONException("Invalid name");
         }
-        return true;
+
+        if (mStackIdx >= 0)
+        {
+            throw new JSONException("Object is open pending additions");
+        }
+
+        int entry = find(name);
+        if (entry < 0)
+        {
+            int added = added(name);
+            return (added < 0) ? 0 : kind(mEdits.mValues.get(added).charAt(0));
+        }
+
+        return mIndex.mKinds[entry];
     }
 
     public String getString(String name)
@@ -1167,30 +1691,328 @@ public class JSONObject
             throw new JSONException("Object is open pending additions");
         }
 
+        int entry = find(name);
+        if (entry < 0)
+        {
+            int added = added(name);
+            if (added < 0)
+            {
+                return null;
+            }
+
+            String value = mEdits.mValues.get(added);
+            if (type == GET_VALUE)
+            {
+                return value;
+            }
+            else if (type == GET_OBJECT)
+            {
+                if (value.charAt(0) != '{')
+                {
+                    throw new JSONException("Not an object [" + name + "]");
+                }
+                return new JSONObject(value, 0, value.length());
+            }
+            else if (type == GET_ARRAY)
+            {
+                return (value.charAt(0) == '[') ? toArray(value, 0) : null;
+            }
+            throw new JSONException("Invalid request");
+        }
+
+        int valueStart = mIndex.mOffsets[entry * 4 + 2];
+        int valueEnd = mIndex.mOffsets[entry * 4 + 3];
+
+        if (type == GET_VALUE)
+        {
+            return substring(valueStart, valueEnd);
+        }
+        else if (type == GET_OBJECT)
+        {
+            if (mIndex.mKinds[entry] != KIND_OBJECT)
+            {
+                throw new JSONException("Not an object [" + name + "]");
+            }
+
+            return objectAt(valueStart, valueEnd);
+        }
+        else if (type == GET_ARRAY)
+        {
+            if (mIndex.mKinds[entry] != KIND_ARRAY)
+            {
+                return null;
+            }
+
+            return arrayAt(valueStart, valueEnd);
+        }
+        throw new JSONException("Invalid request");
+    }
+
+    private JSONObject objectAt(int start, int end)
+    {
+        if (mBytes != null)
+        {
+            return new JSONObject(mBytes, start, end, mLimit);
+        }
+        if (mInput == null)
+        {
+            return new JSONObject(substring(start, end), 0, end - start);
+        }
+        return new JSONObject(mInput, start, end);
+    }
+
+    private JSONArray arrayAt(int start, int end)
+    {
+        if (mInput == null)
+        {
+            return toArray(substring(start, end), 0);
+        }
+        return toArray(mInput, start);
+    }
+
+    //-------------------------------------------------------------------------------
+    // The values a compiled path matches, starting at segment first. Each segment
+    //    is one scan of the current object or array - nested values are skipped,
+    //    not parsed - and only the final matches are turned into Strings or views.
+    //    With all == null the first match is returned, otherwise every match is
+    //    added to all. Matches that are not of the kind asked for are passed over.
+    //-------------------------------------------------------------------------------
+    Object select(JSONPath path, int first, int kind, List<Object> all)
+    {
+        if (mStackIdx >= 0)
+        {
+            throw new JSONException("Object is open pending additions");
+        }
+
+        apply();
+
+        int[] spans = new int[] { mStart, mEnd };
+        int count = 1;
+
+        for (int segment = first; segment < path.size(); segment++)
+        {
+            Request request = new Request();
+            request.mRequest = GET_SPANS;
+            request.mSpans = new int[8];
+
+            for (int i = 0; i < count; i++)
+            {
+                int start = spans[i * 2];
+                int type = path.type(segment);
+
+                if ((type == JSONPath.NAME) || (type == JSONPath.ANY_NAME))
+                {
+                    if (charAt(start) != '{')
+                    {
+                        continue;
+                    }
+
+                    if ((type == JSONPath.NAME) && (start == mStart))
+                    {
+                        // The top level is answered from the index
+                        int entry = find(path.name(segment));
+                        if (entry >= 0)
+                        {
+                            addSpan(request, mIndex.mOffsets[entry * 4 + 2], mIndex.mOffsets[entry * 4 + 3]);
+                        }
+                        continue;
+                    }
+
+                    request.mName = (type == JSONPath.NAME) ? path.name(segment) : null;
+                    if ((request.mName != null) && (mBytes != null))
+                    {
+                        request.mName = asBytes(request.mName);
+                    }
+                    request.mElement = -1;
+                }
+                else
+                {
+                    if (charAt(start) != '[')
+                    {
+                        continue;
+                    }
+
+                    request.mName = null;
+                    request.mElement = path.element(segment);
+                }
+
+                request.mSeen = 0;
+                parse(start, request);
+            }
+
+            spans = request.mSpans;
+            count = request.mSpanCount;
+        }
+
+        for (int i = 0; i < count; i++)
+        {
+            int start = spans[i * 2];
+            int end = spans[i * 2 + 1];
+            char inputc = charAt(start);
+
+            Object value;
+            if (kind == JSONPath.OBJECT)
+            {
+                if (inputc != '{')
+                {
+                    continue;
+                }
+                value = objectAt(start, end);
+            }
+            else if (kind == JSONPath.ARRAY)
+            {
+                if (inputc != '[')
+                {
+                    continue;
+                }
+                value = arrayAt(start, end);
+            }
+            else
+            {
+                if ((kind == JSONPath.VALUE) && ((inputc == '{') || (inputc == '[')))
+                {
+                    continue;
+                }
+                value = substring(start, end);
+            }
+
+            if (all == null)
+            {
+                return value;
+            }
+            all.add(value);
+        }
+
+        return null;
+    }
+
+    // Records a value matched by a GET_SPANS parse() - true once the scan can stop
+    private boolean span(Request request, int start, int nameStart, int nameEnd, int valueStart, int valueEnd)
+    {
+        if (charAt(start) == '{')
+        {
+            if ((request.mName != null) && (! match(request, nameStart, nameEnd)))
+            {
+                return false;
+            }
+        }
+        else if ((request.mElement >= 0) && (request.mSeen++ != request.mElement))
+        {
+            return false;
+        }
+
+        addSpan(request, valueStart, valueEnd);
+
+        return (request.mName != null) || (request.mElement >= 0);
+    }
+
+    private static void addSpan(Request request, int start, int end)
+    {
+        if (request.mSpanCount * 2 == request.mSpans.length)
+        {
+            request.mSpans = Arrays.copyOf(request.mSpans, request.mSpans.length * 2);
+        }
+        request.mSpans[request.mSpanCount * 2] = start;
+        request.mSpans[request.mSpanCount * 2 + 1] = end;
+        request.mSpanCount++;
+    }
+
+    //-------------------------------------------------------------------------------
+    // The array at start becomes a view over input - the elements are not copied
+    //-------------------------------------------------------------------------------
+    static JSONArray toArray(String input, int start)
+    {
+        JSONObject source = new JSONObject(input, start, -1);
+
         Request request = new Request();
-        request.mRequest = type;
-        request.mName = name;
+        request.mRequest = GET_ARRAY;
+        request.mArray = new JSONArray(input);
 
-        parse(mStart, request);
+        source.parse(start, request);
 
-        if (! request.mResponse)
+        return request.mArray;
+    }
+
+    //-------------------------------------------------------------------------------
+    // A top level array is parsed in parallel in two steps. split() validates the
+    //    array itself but only skips over the objects and arrays in it; each of those
+    //    must then be checked by validate() or element(), which can run on any thread
+    //    as they share nothing but the input.
+    //-------------------------------------------------------------------------------
+    static JSONArray split(String input)
+    {
+        int start = 0;
+        while ((start < input.length()) && (input.charAt(start) <= ' '))
         {
-            return null;
+            start++;
+        }
+        if (start >= input.length())
+        {
+            throw new JSONException("Invalid JSON - no input");
         }
 
-        if (request.mRequest == GET_VALUE)
+        JSONObject source = new JSONObject(input, start, -1);
+        if (input.charAt(start) != '[')
         {
-            return request.mValue;
+            source.throwError("Invalid JSON - invalid leading characters", start);
         }
-        else if (request.mRequest == GET_OBJECT)
+
+        Request request = new Request();
+        request.mRequest = GET_ARRAY;
+        request.mArray = new JSONArray(input);
+
+        int end;
+        try
         {
-            return new JSONObject(new String(request.mValue));
+            end = source.parse(start, request);
         }
-        else if (request.mRequest == GET_ARRAY)
+        catch (IndexOutOfBoundsException exception)
         {
-            return request.mArray;
+            // skip() ran off the end of an element that is never closed
+            throw new JSONException("Invalid JSON - early end");
         }
-        throw new JSONException("Invalid request");
+
+        for (int i = end; i < input.length(); i++)
+        {
+            if (input.charAt(i) > ' ')
+            {
+                source.throwError("Invalid JSON - invalid trailing characters", end);
+            }
+        }
+
+        return request.mArray;
+    }
+
+    static void validate(String input, int start, int end)
+    {
+        JSONObject source = new JSONObject(input, start, end);
+        source.mValid = false;
+
+        if (source.parse(start, null) != end)
+        {
+            source.throwError("Invalid JSON - invalid nesting", start);
+        }
+    }
+
+    // As validate() for an object - the index is built by the same pass
+    static JSONObject element(String input, int start, int end)
+    {
+        JSONObject element = new JSONObject(input, start, end);
+        element.mValid = false;
+
+        Request request = new Request();
+        request.mRequest = GET_INDEX;
+        request.mIndex = new Index();
+
+        if (element.parse(start, request) != end)
+        {
+            element.throwError("Invalid JSON - invalid nesting", start);
+        }
+
+        element.mIndex = request.mIndex;
+        element.mValid = true;
+
+        return element;
     }
 
     public JSONMap getMap()
@@ -1200,6 +2022,8 @@ public class JSONObject
             throw new JSONException("Object is open pending additions");
         }
 
+        apply();
+
         Request request = new Request();
         request.mRequest = GET_MAP;
         request.mMap = new JSONMap();
@@ -1216,6 +2040,8 @@ public class JSONObject
             throw new JSONException("Object is open pending additions");
         }
 
+        apply();
+
         Request request = new Request();
         request.mRequest = GET_LIST;
         request.mList = new JSONList();
@@ -1232,6 +2058,8 @@ public class JSONObject
             throw new JSONException("Object is open pending additions");
         }
 
+        apply();
+
         Request request = new Request();
         request.mRequest = GET_NAMES;
         request.mNames = new ArrayList<String>();
@@ -1346,91 +2174,297 @@ public class JSONObject
             }
         }
 
-        if (level == 0)
+        if (level == 0)
+        {
+            buffer.append(prefix).append("}\n");
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    private int scanLimit()
+    {
+        if (mInput != null)
+        {
+            return mInput.length();
+        }
+        if (mBytes != null)
+        {
+            return mLimit;
+        }
+        return mBuffer.length();
+    }
+
+    private char charAt(int index)
+    {
+        if (mInput != null)
+        {
+            return mInput.charAt(index);
+        }
+        if (mHeap != null)
+        {
+            if (index >= mLimit)
+            {
+                throw new StringIndexOutOfBoundsException(index);
+            }
+            return (char)(mHeap[index] & 0xff);
+        }
+        if (mBytes != null)
+        {
+            if (index >= mLimit)
+            {
+                throw new StringIndexOutOfBoundsException(index);
+            }
+            return (char)(mBytes.get(index) & 0xff);
+        }
+        return mBuffer.charAt(index);
+    }
+
+    private String substring(int start, int end)
+    {
+        if (mInput != null)
+        {
+            return mInput.substring(start, end);
+        }
+        if (mBytes != null)
+        {
+            if (mHeap != null)
+            {
+                return new String(mHeap, start, end - start, StandardCharsets.UTF_8);
+            }
+            byte[] bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++)
+            {
+                bytes[i] = mBytes.get(start + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        return mBuffer.substring(start, end);
+    }
+
+    private boolean match(Request request, int start, int end)
+    {
+        if (request.mName == null)
+        {
+            return false;
+        }
+        if (request.mName.length() == 0)
+        {
+            return false;
+        }
+        if (start < 0)
+        {
+            return false;
+        }
+
+        if ((charAt(start) == '"') && (charAt(end - 1) == '"'))
+        {
+            start++;
+            end--;
+        }
+
+        if (request.mName.length() != end - start)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < end - start; i++)
         {
-            buffer.append(prefix).append("}\n");
+            if (request.mName.charAt(i) != charAt(start + i))
+            {
+                return false;
+            }
         }
+
+        return true;
     }
 
     //-------------------------------------------------------------------------------
-    //
+    // The index is built by a single parse() on the first lookup and reused until
+    //    the next mutation
     //-------------------------------------------------------------------------------
-    private int scanLimit()
+    private Index index()
     {
-        if (mInput == null)
+        if (mIndex == null)
         {
-            return mBuffer.length();
+            Request request = new Request();
+            request.mRequest = GET_INDEX;
+            request.mIndex = new Index();
+
+            parse(mStart, request);
+
+            mIndex = request.mIndex;
         }
-        return mInput.length();
+
+        return mIndex;
     }
 
-    private char charAt(int index)
+    // The entry for name, or -1 if there is none or it has been removed
+    private int find(String name)
     {
-        if (mInput == null)
+        Index index = index();
+
+        if (mBytes != null)
         {
-            return mBuffer.charAt(index);
+            name = asBytes(name);
         }
-        return mInput.charAt(index);
-    }
 
-    private String substring(int start, int end)
-    {
-        if (mInput == null)
+        int hash = name.hashCode();
+        int mask = index.mSlots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask)
         {
-            return mBuffer.substring(start, end);
+            int entry = index.mSlots[slot] - 1;
+            if (entry < 0)
+            {
+                return -1;
+            }
+
+            if (index.mHashes[entry] != hash)
+            {
+                continue;
+            }
+
+            int start = index.mOffsets[entry * 4];
+            int end = index.mOffsets[entry * 4 + 1];
+            if (name.length() != end - start)
+            {
+                continue;
+            }
+
+            int i = 0;
+            while ((i < end - start) && (name.charAt(i) == charAt(start + i)))
+            {
+                i++;
+            }
+            if (i == end - start)
+            {
+                return ((mEdits != null) && mEdits.mRemoved.get(entry)) ? -1 : entry;
+            }
         }
-        return mInput.substring(start, end);
     }
 
-    private boolean match(Request request, int start, int end)
+    // The name as one char per UTF-8 byte so that it compares with charAt()
+    private static String asBytes(String name)
     {
-        if (request.mName == null)
+        for (int i = 0; i < name.length(); i++)
         {
-            return false;
+            if (name.charAt(i) >= 0x80)
+            {
+                return new String(name.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+            }
         }
-        if (request.mName.length() == 0)
+        return name;
+    }
+
+    private void addIndex(Index index, int nameStart, int nameEnd, int valueStart, int valueEnd)
+    {
+        if ((charAt(nameStart) == '"') && (charAt(nameEnd - 1) == '"'))
         {
-            return false;
+            nameStart++;
+            nameEnd--;
         }
-        if (start < 0)
+
+        int hash = 0;
+        for (int i = nameStart; i < nameEnd; i++)
         {
-            return false;
+            hash = 31 * hash + charAt(i);
         }
 
-        if ((charAt(start) == '"') && (charAt(end - 1) == '"'))
+        // Duplicate names resolve to the first as they always have
+        int mask = index.mSlots.length - 1;
+        int slot;
+        for (slot = hash & mask; index.mSlots[slot] != 0; slot = (slot + 1) & mask)
         {
-            start++;
-            end--;
+            int entry = index.mSlots[slot] - 1;
+            if ((index.mHashes[entry] == hash) && (index.mOffsets[entry * 4 + 1] - index.mOffsets[entry * 4] == nameEnd - nameStart))
+            {
+                int other = index.mOffsets[entry * 4];
+                int i = 0;
+                while ((i < nameEnd - nameStart) && (charAt(nameStart + i) == charAt(other + i)))
+                {
+                    i++;
+                }
+                if (i == nameEnd - nameStart)
+                {
+                    index.mDuplicates = true;
+                    return;
+                }
+            }
         }
 
-        if (request.mName.length() != end - start)
+        int entry = index.mCount++;
+        if (entry == index.mHashes.length)
         {
-            return false;
+            index.mHashes = Arrays.copyOf(index.mHashes, entry * 2);
+            index.mOffsets = Arrays.copyOf(index.mOffsets, entry * 2 * 4);
+            index.mKinds = Arrays.copyOf(index.mKinds, entry * 2);
         }
 
-        for (int i = 0; i < end - start; i++)
+        index.mHashes[entry] = hash;
+        index.mOffsets[entry * 4] = nameStart;
+        index.mOffsets[entry * 4 + 1] = nameEnd;
+        index.mOffsets[entry * 4 + 2] = valueStart;
+        index.mOffsets[entry * 4 + 3] = valueEnd;
+
+        index.mKinds[entry] = (byte)kind(charAt(valueStart));
+
+        index.mSlots[slot] = entry + 1;
+
+        // Keep the table at most half full
+        if (index.mCount * 2 > index.mSlots.length)
         {
-            if (request.mName.charAt(i) != charAt(start + i))
+            int[] slots = new int[index.mSlots.length * 2];
+            mask = slots.length - 1;
+            for (int i = 0; i < index.mCount; i++)
             {
-                return false;
+                for (slot = index.mHashes[i] & mask; slots[slot] != 0; slot = (slot + 1) & mask)
+                {
+                }
+                slots[slot] = i + 1;
             }
+            index.mSlots = slots;
         }
+    }
 
-        return true;
+    private String key(int nameStart, int nameEnd)
+    {
+        String key = unescape(substring(nameStart, nameEnd));
+        return internKeys ? StringIntern.intern(key) : key;
     }
 
-    private void throwError(String text, int current)
+    private static boolean removes(int type, int kind)
     {
-        int start = 0;
-        int end;
-        if (mInput == null)
+        switch (type)
         {
-            end = mBuffer.length();
+            case REMOVE_VALUE:
+                return (kind == KIND_VALUE);
+            case REMOVE_OBJECT:
+                return (kind == KIND_OBJECT);
+            case REMOVE_ARRAY:
+                return (kind == KIND_ARRAY);
+            default:
+                return true;
         }
-        else
+    }
+
+    private static int kind(char first)
+    {
+        if (first == '{')
+        {
+            return KIND_OBJECT;
+        }
+        if (first == '[')
         {
-            end = mInput.length();
+            return KIND_ARRAY;
         }
+        return KIND_VALUE;
+    }
+
+    private void throwError(String text, int current)
+    {
+        int start = 0;
+        int end = scanLimit();
 
         if (end - current > 40)
         {
@@ -1441,14 +2475,7 @@ public class JSONObject
             start = current - 40;
         }
 
-        if (mInput == null)
-        {
-            error = text + " [" + mBuffer.substring(start, current) + "<=!=>" + mBuffer.substring(current, end) + "]";
-        }
-        else
-        {
-            error = text + " [" + mInput.substring(start, current) + "<=!=>" + mInput.substring(current, end) + "]";
-        }
+        error = text + " [" + substring(start, current) + "<=!=>" + substring(current, end) + "]";
 
         throw new JSONException(error);
     }
@@ -1683,34 +2710,58 @@ public class JSONObject
 
                 if (request != null)
                 {
-                    if (request.mRequest == GET_ARRAY)
+                    if (request.mRequest == GET_SPANS)
+                    {
+                        if (span(request, start, nameStart, nameEnd, valueStart, valueEnd))
+                        {
+                            return -1;
+                        }
+                    }
+                    else if (request.mRequest == GET_ARRAY)
                     {
                         if (request.mArray != null)
                         {
-                            request.mArray.addRaw(substring(valueStart, valueEnd));
+                            if (mInput == null)
+                            {
+                                request.mArray.addRaw(substring(valueStart, valueEnd));
+                            }
+                            else
+                            {
+                                request.mArray.addRaw(valueStart, valueEnd);
+                            }
                         }
                     }
                     else if (charAt(start) == '{')
                     {
                         if (request.mRequest == GET_MAP)
                         {
-                            request.mMap.putRaw(unescape(substring(nameStart, nameEnd)), substring(valueStart, valueEnd));
+                            request.mMap.putRaw(key(nameStart, nameEnd), substring(valueStart, valueEnd));
                         }
                         else if (request.mRequest == GET_LIST)
                         {
-                            request.mList.addRaw(unescape(substring(nameStart, nameEnd)), substring(valueStart, valueEnd));
+                            request.mList.addRaw(key(nameStart, nameEnd), substring(valueStart, valueEnd));
                         }
                         else if (request.mRequest == GET_NAMES)
                         {
-                            request.mNames.add(unescape(substring(nameStart, nameEnd)));
+                            request.mNames.add(key(nameStart, nameEnd));
+                        }
+                        else if (request.mRequest == GET_INDEX)
+                        {
+                            addIndex(request.mIndex, nameStart, nameEnd, valueStart, valueEnd);
                         }
                         else if (match(request, nameStart, nameEnd))
                         {
+                            boolean remove = (request.mRequest == REMOVE_VALUE) || (request.mRequest == REMOVE_OBJECT)
+                                          || (request.mRequest == REMOVE_ARRAY) || (request.mRequest == REMOVE_ANY);
+                            if (remove && ! removes(request.mRequest, kind(charAt(valueStart))))
+                            {
+                                return -1;
+                            }
                             if (request.mRequest != CONTAINS)
                             {
                                 request.mValue = substring(valueStart, valueEnd);
                             }
-                            if ((request.mRequest == REMOVE_VALUE) || (request.mRequest == REMOVE_OBJECT) || (request.mRequest == REMOVE_ARRAY))
+                            if (remove)
                             {
                                 fixupRemove(nameStart, valueEnd);
                             }
@@ -1851,7 +2902,7 @@ public class JSONObject
                 }
 
                 valueStart = current;
-                current = parse2(current, null);
+                current = mValid ? skip(current) : parse2(current, null);
                 if (current < 0)
                 {
                     return -1;
@@ -1880,7 +2931,7 @@ public class JSONObject
                         {
                             if (match(request, nameStart, nameEnd))
                             {
-                                request.mArray = new JSONArray();
+                                request.mArray = (mInput == null) ? new JSONArray() : new JSONArray(mInput);
                                 current = parse2(current, request);
                                 if (current < 0)
                                 {
@@ -1893,7 +2944,7 @@ public class JSONObject
                     }
                 }
 
-                current = parse2(current, null);
+                current = mValid ? skip(current) : parse2(current, null);
                 if (current < 0)
                 {
                     return -1;
@@ -1906,6 +2957,60 @@ public class JSONObject
         }
     }
 
+    //-------------------------------------------------------------------------------
+    // Finds the end of the object or array at start in text that parse() has already
+    //    validated - only the nesting, quotes and comments need to be followed.
+    //    As in parse() // is only a comment if it does not continue a name or value.
+    //-------------------------------------------------------------------------------
+    private int skip(int start)
+    {
+        int depth = 0;
+        for (int current = start; ; current++)
+        {
+            char inputc = charAt(current);
+
+            if (inputc == '"')
+            {
+                for (current++; charAt(current) != '"'; current++)
+                {
+                    if ((charAt(current) == '\\') && ((charAt(current + 1) == '\\') || (charAt(current + 1) == '"')))
+                    {
+                        current++;
+                    }
+                }
+            }
+            else if ((inputc == '{') || (inputc == '['))
+            {
+                depth++;
+            }
+            else if ((inputc == '}') || (inputc == ']'))
+            {
+                depth--;
+                if (depth == 0)
+                {
+                    return current + 1;
+                }
+            }
+            else if ((inputc == '/') && (charAt(current + 1) == '/'))
+            {
+                char previous = charAt(current - 1);
+                if ((previous <= ' ') || (previous == ',') || (previous == ':') || (previous == '"') ||
+                    (previous == '{') || (previous == '}') || (previous == '[') || (previous == ']'))
+                {
+                    int eol = current;
+                    while ((eol < scanLimit()) && (charAt(eol) != '\n') && (charAt(eol) != '\r'))
+                    {
+                        eol++;
+                    }
+                    if (eol < scanLimit())
+                    {
+                        current = eol;
+                    }
+                }
+            }
+        }
+    }
+
     //-------------------------------------------------------------------------------
     // We need to search left and then right looking to see if there is a comma to delete
     // It will be at the same nesting level as we are
@@ -1945,144 +3050,244 @@ public class JSONObject
     }
 
     //-------------------------------------------------------------------------------
-    //
+    // Escape and unescape are driven by tables indexed by character - ESCAPES holds
+    //    the letter written after the \ for a character that must be escaped (u for
+    //    the control characters without a short form) and UNESCAPES the character
+    //    an escape letter stands for. Both copy the runs between escapes in one
+    //    piece and can append straight into a caller's StringBuilder or Appendable.
+    //-------------------------------------------------------------------------------
+    private static final char[] ESCAPES = new char[128];
+    private static final char[] UNESCAPES = new char[128];
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    static
+    {
+        for (int i = 0; i < ' '; i++)
+        {
+            ESCAPES[i] = 'u';
+        }
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\r'] = 'r';
+        ESCAPES['\t'] = 't';
+
+        UNESCAPES['"'] = '"';
+        UNESCAPES['\\'] = '\\';
+        UNESCAPES['/'] = '/';
+        UNESCAPES['b'] = '\b';
+        UNESCAPES['f'] = '\f';
+        UNESCAPES['n'] = '\n';
+        UNESCAPES['r'] = '\r';
+        UNESCAPES['t'] = '\t';
+    }
+
+    //-------------------------------------------------------------------------------
+    // A quoted raw value without its quotes and escapes - anything else is returned
+    //    as it is. Unknown escapes, and u escapes without four hex digits, are kept.
     //-------------------------------------------------------------------------------
     public static String unescape(String value)
     {
-       if (value == null)
-       {
-           return value;
-       }
-
-       if (value.length() == 0)
-       {
-           return value;
-       }
-
-       if (value.charAt(0) != '"')
-       {
-           return value;
-       }
-
-       StringBuilder buffer = null;
-
-       int offset = 1;
-       for (int i = 1; i < value.length() - 1; )
-       {
-           char escape = 0;
-
-           if ((value.charAt(i) == '\\') && (value.charAt(i + 1) == '"'))
-           {
-               escape = '"';
-           }
-           else if ((value.charAt(i) == '\\') && (value.charAt(i + 1) == '\\'))
-           {
-               escape = '\\';
-           }
-           else if ((value.charAt(i) == '\\') && (value.charAt(i + 1) == 't'))
-           {
-               escape = '\t';
-           }
-           else if ((value.charAt(i) == '\\') && (value.charAt(i + 1) == 'n'))
-           {
-               escape = '\n';
-           }
-           else if ((value.charAt(i) == '\\') && (value.charAt(i + 1) == 'r'))
-           {
-               escape = '\r';
-           }
-
-           if (escape == 0)
-           {
-               i++;
-               continue;
-           }
-
-           if (buffer == null)
-           {
-               buffer = new StringBuilder(value.length());
-           }
-
-           buffer.append(value.substring(offset, i));
-           buffer.append(escape);
-           i = i + 2;
-           offset = i;
-       }
-       if (offset == 1)
-       {
-           return value.substring(1, value.length() - 1);
-       }
-
-       if (offset < value.length() - 1)
-       {
-           buffer.append(value.substring(offset, value.length() - 1));
-       }
-
-       return buffer.toString();
+        if ((value == null) || (value.length() < 2) || (value.charAt(0) != '"'))
+        {
+            return value;
+        }
+
+        int end = value.length() - 1;
+        int first = value.indexOf('\\', 1);
+        if ((first < 0) || (first >= end))
+        {
+            return value.substring(1, end);
+        }
+
+        StringBuilder buffer = new StringBuilder(end);
+        buffer.append(value, 1, first);
+        try
+        {
+            unescape(value, first, end, buffer);
+        }
+        catch (IOException exception)
+        {
+            throw new JSONException(exception);
+        }
+
+        return buffer.toString();
+    }
+
+    public static StringBuilder unescape(CharSequence value, StringBuilder buffer)
+    {
+        try
+        {
+            unescape(value, (Appendable)buffer);
+        }
+        catch (IOException exception)
+        {
+            throw new JSONException(exception);
+        }
+        return buffer;
+    }
+
+    public static void unescape(CharSequence value, Appendable output) throws IOException
+    {
+        int length = value.length();
+        if ((length < 2) || (value.charAt(0) != '"'))
+        {
+            output.append(value);
+        }
+        else
+        {
+            unescape(value, 1, length - 1, output);
+        }
+    }
+
+    private static void unescape(CharSequence value, int start, int end, Appendable output) throws IOException
+    {
+        int offset = start;
+        for (int i = start; i < end - 1; i++)
+        {
+            if (value.charAt(i) != '\\')
+            {
+                continue;
+            }
+
+            char letter = value.charAt(i + 1);
+            int unescaped;
+            int length;
+            if (letter == 'u')
+            {
+                unescaped = hex(value, i + 2, end);
+                length = 6;
+            }
+            else
+            {
+                unescaped = ((letter < 128) && (UNESCAPES[letter] != 0)) ? UNESCAPES[letter] : -1;
+                length = 2;
+            }
+
+            if (unescaped < 0)
+            {
+                i++; // an unknown escape is kept - including the character after the \
+                continue;
+            }
+
+            output.append(value, offset, i).append((char)unescaped);
+            i += length - 1;
+            offset = i + 1;
+        }
+
+        output.append(value, offset, end);
+    }
+
+    // The four hex digits from start as a character, or -1
+    private static int hex(CharSequence value, int start, int end)
+    {
+        if (start + 4 > end)
+        {
+            return -1;
+        }
+
+        int code = 0;
+        for (int i = start; i < start + 4; i++)
+        {
+            int digit = Character.digit(value.charAt(i), 16);
+            if (digit < 0)
+            {
+                return -1;
+            }
+            code = (code << 4) | digit;
+        }
+        return code;
     }
 
+    //-------------------------------------------------------------------------------
+    // The value quoted and escaped - control characters without a short escape are
+    //    written as a u escape of four hex digits
+    //-------------------------------------------------------------------------------
     public static String escape(String value)
     {
-       if (value == null)
-       {
-           return null;
-       }
-
-       StringBuilder buffer = new StringBuilder(value.length() + 10);
-
-       buffer.append('"');
-
-       int offset = 0;
-       for (int i = 0; i < value.length(); i++)
-       {
-           String escape = null;
-
-           if (value.charAt(i) == '"')
-           {
-               escape = "\\\"";
-           }
-           else if (value.charAt(i) == '\\')
-           {
-               escape = "\\\\";
-           }
-           else if (value.charAt(i) == '\t')
-           {
-               escape = "\\t";
-           }
-           else if (value.charAt(i) == '\n')
-           {
-               escape = "\\n";
-           }
-           else if (value.charAt(i) == '\r')
-           {
-               escape = "\\r";
-           }
-           else if (value.charAt(i) < ' ')
-           {
-               throw new JSONException("Invalid character");
-           }
-
-           if (escape == null)
-           {
-               continue;
-           }
-
-           buffer.append(value.substring(offset, i));
-           buffer.append(escape);
-           offset = i + 1;
-       }
-
-       if (offset == 0)
-       {
-           buffer.append(value);
-       }
-       else if (offset < value.length())      
-       {
-           buffer.append(value.substring(offset, value.length()));      
-       }
-
-       buffer.append('"');
-
-       return buffer.toString();
+        if (value == null)
+        {
+            return null;
+        }
+
+        int length = value.length();
+        int first = 0;
+        while ((first < length) && ((value.charAt(first) >= 128) || (ESCAPES[value.charAt(first)] == 0)))
+        {
+            first++;
+        }
+
+        if (first == length)
+        {
+            char[] quoted = new char[length + 2];
+            quoted[0] = '"';
+            value.getChars(0, length, quoted, 1);
+            quoted[length + 1] = '"';
+            return new String(quoted);
+        }
+
+        StringBuilder buffer = new StringBuilder(length + 16);
+        buffer.append('"').append(value, 0, first);
+        try
+        {
+            escape(value, first, length, buffer);
+        }
+        catch (IOException exception)
+        {
+            throw new JSONException(exception);
+        }
+        buffer.append('"');
+
+        return buffer.toString();
+    }
+
+    public static StringBuilder escape(CharSequence value, StringBuilder buffer)
+    {
+        try
+        {
+            escape(value, (Appendable)buffer);
+        }
+        catch (IOException exception)
+        {
+            throw new JSONException(exception);
+        }
+        return buffer;
+    }
+
+    public static void escape(CharSequence value, Appendable output) throws IOException
+    {
+        output.append('"');
+        escape(value, 0, value.length(), output);
+        output.append('"');
+    }
+
+    private static void escape(CharSequence value, int start, int end, Appendable output) throws IOException
+    {
+        int offset = start;
+        for (int i = start; i < end; i++)
+        {
+            char inputc = value.charAt(i);
+            if ((inputc >= 128) || (ESCAPES[inputc] == 0))
+            {
+                continue;
+            }
+
+            output.append(value, offset, i).append('\\').append(ESCAPES[inputc]);
+            if (ESCAPES[inputc] == 'u')
+            {
+                output.append('0').append('0').append(HEX[inputc >> 4]).append(HEX[inputc & 15]);
+            }
+            offset = i + 1;
+        }
+
+        if ((offset == 0) && (end == value.length()))
+        {
+            output.append(value); // a String is copied in bulk this way
+        }
+        else
+        {
+            output.append(value, offset, end);
+        }
     }
 }
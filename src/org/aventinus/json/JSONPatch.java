@@ -0,0 +1,451 @@
+//-----------------------------------------------------------------------------------
+// Copyright (c) 2009-2013, Gordon Beck (gordon.beck@aventinus.org). All rights reserved.
+//
+//    This file is part of a suite of tools.
+//
+//    The tools are free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    The tools are distributed in the hope that they will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with these tools.  If not, see <http://www.gnu.org/licenses/>.
+//-----------------------------------------------------------------------------------
+package org.aventinus.json;
+
+import java.util.*;
+
+//-----------------------------------------------------------------------------------
+// The difference between two objects as a list of add, replace and remove
+//    operations, so that a large state object that changes slowly can be kept in
+//    step by sending only what changed. Objects are compared member by member and
+//    recursively; arrays and values that differ are replaced whole. Values are
+//    compared and carried as raw text so nothing is decoded that has not changed.
+//
+// As text a patch is
+//
+//    {"ops":[{"op":"replace","path":["server","port"],"value":8080},
+//            {"op":"remove","path":["debug"]}]}
+//
+// apply() changes the target in place - each nested object that an operation
+//    reaches into is rewritten once however many operations touch it.
+//-----------------------------------------------------------------------------------
+public final class JSONPatch
+{
+    private static final int ADD = 1;
+    private static final int REPLACE = 2;
+    private static final int REMOVE = 3;
+
+    private static final String[] NAMES = { null, "add", "replace", "remove" };
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    private static final class Operation
+    {
+        final int mOp;
+        final String[] mPath;
+        final String mValue;
+
+        Operation(int op, String[] path, String value)
+        {
+            mOp = op;
+            mPath = path;
+            mValue = value;
+        }
+    }
+
+    private final ArrayList<Operation> mOperations = new ArrayList<Operation>();
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    private JSONPatch()
+    {
+    }
+
+    public static JSONPatch diff(JSONObject before, JSONObject after)
+    {
+        return diff(before.getMap(), after.getMap());
+    }
+
+    public static JSONPatch diff(JSONMap before, JSONMap after)
+    {
+        JSONPatch patch = new JSONPatch();
+        patch.diff(before, after, new ArrayList<String>());
+        return patch;
+    }
+
+    private void diff(JSONMap before, JSONMap after, ArrayList<String> path)
+    {
+        for (String name : after.keySet())
+        {
+            String value = after.toString(name);
+            String previous = before.toString(name);
+
+            if (previous == null)
+            {
+                add(ADD, path, name, value);
+            }
+            else if (! previous.equals(value))
+            {
+                if ((previous.charAt(0) == '{') && (value.charAt(0) == '{'))
+                {
+                    path.add(name);
+                    diff(map(previous), map(value), path);
+                    path.remove(path.size() - 1);
+                }
+                else
+                {
+                    add(REPLACE, path, name, value);
+                }
+            }
+        }
+
+        for (String name : before.keySet())
+        {
+            if (! after.containsKey(name))
+            {
+                add(REMOVE, path, name, null);
+            }
+        }
+    }
+
+    private void add(int op, ArrayList<String> path, String name, String value)
+    {
+        String[] full = path.toArray(new String[path.size() + 1]);
+        full[path.size()] = name;
+        mOperations.add(new Operation(op, full, value));
+    }
+
+    private static JSONMap map(String raw)
+    {
+        return new JSONObject(raw, 0, raw.length()).getMap();
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    public static JSONPatch fromString(String text)
+    {
+        return fromObject(new JSONObject(text));
+    }
+
+    public static JSONPatch fromObject(JSONObject object)
+    {
+        JSONPatch patch = new JSONPatch();
+
+        JSONArray operations = object.getArray("ops");
+        for (int i = 0; i < operations.size(); i++)
+        {
+            JSONMap operation = operations.getMap(i);
+
+            int op = Arrays.asList(NAMES).indexOf(operation.getString("op", ""));
+            if (op <= 0)
+            {
+                throw new JSONException("Invalid patch - unknown op [" + operation.getString("op", "") + "]");
+            }
+
+            JSONArray names = operation.getArray("path");
+            if (names.size() == 0)
+            {
+                throw new JSONException("Invalid patch - empty path");
+            }
+            String[] path = new String[names.size()];
+            for (int j = 0; j < path.length; j++)
+            {
+                path[j] = names.getString(j);
+            }
+
+            String value = operation.toString("value");
+            if ((value == null) != (op == REMOVE))
+            {
+                throw new JSONException("Invalid patch - " + NAMES[op] + " " + Arrays.toString(path));
+            }
+
+            patch.mOperations.add(new Operation(op, path, value));
+        }
+
+        return patch;
+    }
+
+    public String toString()
+    {
+        StringBuilder buffer = new StringBuilder();
+
+        buffer.append("{\"ops\":[");
+        for (int i = 0; i < mOperations.size(); i++)
+        {
+            Operation operation = mOperations.get(i);
+
+            if (i > 0)
+            {
+                buffer.append(",");
+            }
+            buffer.append("{\"op\":\"").append(NAMES[operation.mOp]).append("\",\"path\":[");
+            for (int j = 0; j < operation.mPath.length; j++)
+            {
+                if (j > 0)
+                {
+                    buffer.append(",");
+                }
+                JSONObject.escape(operation.mPath[j], buffer);
+            }
+            buffer.append("]");
+            if (operation.mValue != null)
+            {
+                buffer.append(",\"value\":").append(operation.mValue);
+            }
+            buffer.append("}");
+        }
+        buffer.append("]}");
+
+        return buffer.toString();
+    }
+
+    public JSONObject toObject()
+    {
+        return new JSONObject(toString());
+    }
+
+    public int size()
+    {
+        return mOperations.size();
+    }
+
+    public boolean isEmpty()
+    {
+        return mOperations.isEmpty();
+    }
+
+    //-------------------------------------------------------------------------------
+    // add puts the value whether or not the name is there, replace and remove need
+    //    it to be. Every path is checked before anything is changed so a patch that
+    //    does not fit the target is refused whole. The operations are grouped by the
+    //    object they change so that a nested object is taken out, patched and put
+    //    back only once. A replaced name keeps its place; an added one goes last.
+    //-------------------------------------------------------------------------------
+    public void apply(JSONObject target)
+    {
+        apply(new ObjectTarget(target));
+    }
+
+    public void apply(JSONMap target)
+    {
+        apply(new MapTarget(target));
+    }
+
+    private void apply(Target target)
+    {
+        check(target, mOperations, 0);
+        apply(target, mOperations, 0);
+    }
+
+    private static abstract class Target
+    {
+        abstract String get(String name);
+        abstract String remove(String name);
+        abstract String replace(String name, String value);
+        abstract void put(String name, String value);
+        abstract Target open(String value);
+    }
+
+    private static final class ObjectTarget extends Target
+    {
+        private final JSONObject mObject;
+
+        ObjectTarget(JSONObject object)
+        {
+            mObject = object;
+        }
+
+        String get(String name)
+        {
+            return mObject.getRaw(name);
+        }
+
+        String remove(String name)
+        {
+            return mObject.removeRaw(name);
+        }
+
+        String replace(String name, String value)
+        {
+            return mObject.replaceRaw(name, value);
+        }
+
+        void put(String name, String value)
+        {
+            mObject.addRaw(name, value);
+        }
+
+        Target open(String value)
+        {
+            return new ObjectTarget(new JSONObject(value, 0, value.length()));
+        }
+
+        public String toString()
+        {
+            return mObject.toString();
+        }
+    }
+
+    private static final class MapTarget extends Target
+    {
+        private final JSONMap mMap;
+
+        MapTarget(JSONMap map)
+        {
+            mMap = map;
+        }
+
+        String get(String name)
+        {
+            return mMap.toString(name);
+        }
+
+        String remove(String name)
+        {
+            return mMap.remove(name);
+        }
+
+        String replace(String name, String value)
+        {
+            String previous = mMap.toString(name);
+            if (previous != null)
+            {
+                mMap.putRaw(name, value);
+            }
+            return previous;
+        }
+
+        void put(String name, String value)
+        {
+            mMap.putRaw(name, value);
+        }
+
+        Target open(String value)
+        {
+            return new MapTarget(map(value));
+        }
+
+        public String toString()
+        {
+            return mMap.toString();
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // Follows the operations as apply() will make them, with the changes to each
+    //    object kept aside - a null value is a removed name
+    //-------------------------------------------------------------------------------
+    private static void check(Target target, List<Operation> operations, int depth)
+    {
+        HashMap<String, String> changed = new HashMap<String, String>();
+        LinkedHashMap<String, ArrayList<Operation>> nested = group(operations, depth);
+
+        for (Operation operation : operations)
+        {
+            if (depth < operation.mPath.length - 1)
+            {
+                continue;
+            }
+
+            String name = operation.mPath[depth];
+            String previous = changed.containsKey(name) ? changed.get(name) : target.get(name);
+            if ((previous == null) && (operation.mOp != ADD))
+            {
+                throw new JSONException("Did not find [" + path(operation) + "]");
+            }
+            changed.put(name, (operation.mOp == REMOVE) ? null : operation.mValue);
+        }
+
+        for (Map.Entry<String, ArrayList<Operation>> entry : nested.entrySet())
+        {
+            String name = entry.getKey();
+            String value = changed.containsKey(name) ? changed.get(name) : target.get(name);
+            if ((value == null) || (value.charAt(0) != '{'))
+            {
+                throw new JSONException("Did not find Object [" + path(entry.getValue().get(0), depth) + "]");
+            }
+
+            check(target.open(value), entry.getValue(), depth + 1);
+        }
+    }
+
+    private static void apply(Target target, List<Operation> operations, int depth)
+    {
+        LinkedHashMap<String, ArrayList<Operation>> nested = group(operations, depth);
+
+        for (Operation operation : operations)
+        {
+            if (depth < operation.mPath.length - 1)
+            {
+                continue;
+            }
+
+            String name = operation.mPath[depth];
+            if (operation.mOp == REMOVE)
+            {
+                target.remove(name);
+            }
+            else if (target.replace(name, operation.mValue) == null)
+            {
+                target.put(name, operation.mValue);
+            }
+        }
+
+        for (Map.Entry<String, ArrayList<Operation>> entry : nested.entrySet())
+        {
+            Target child = target.open(target.get(entry.getKey()));
+            apply(child, entry.getValue(), depth + 1);
+            target.replace(entry.getKey(), child.toString());
+        }
+    }
+
+    // The operations that reach below depth, by the name they go through there
+    private static LinkedHashMap<String, ArrayList<Operation>> group(List<Operation> operations, int depth)
+    {
+        LinkedHashMap<String, ArrayList<Operation>> nested = new LinkedHashMap<String, ArrayList<Operation>>();
+
+        for (Operation operation : operations)
+        {
+            if (depth < operation.mPath.length - 1)
+            {
+                ArrayList<Operation> group = nested.get(operation.mPath[depth]);
+                if (group == null)
+                {
+                    group = new ArrayList<Operation>();
+                    nested.put(operation.mPath[depth], group);
+                }
+                group.add(operation);
+            }
+        }
+
+        return nested;
+    }
+
+    private static String path(Operation operation)
+    {
+        return path(operation, operation.mPath.length - 1);
+    }
+
+    private static String path(Operation operation, int depth)
+    {
+        StringBuilder buffer = new StringBuilder();
+        for (int i = 0; i <= depth; i++)
+        {
+            if (i > 0)
+            {
+                buffer.append(".");
+            }
+            buffer.append(operation.mPath[i]);
+        }
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,513 @@
+//-----------------------------------------------------------------------------------
+// Copyright (c) 2009-2013, Gordon Beck (gordon.beck@aventinus.org). All rights reserved.
+//
+//    This file is part of a suite of tools.
+//
+//    The tools are free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    The tools are distributed in the hope that they will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with these tools.  If not, see <http://www.gnu.org/licenses/>.
+//-----------------------------------------------------------------------------------
+package org.aventinus.json;
+
+import java.util.*;
+
+//-----------------------------------------------------------------------------------
+// A compiled path such as a.b[3].c - a name selects a member of an object, [n]
+//    an element of an array, and * or [*] every member or element. The path is
+//    split once by compile() and can then be applied to any number of objects;
+//    each application walks the text left to right without building the
+//    intermediate objects that a chain of getObject() calls would.
+//
+// The single value getters return the first match, getStrings() and getObjects()
+//    every match.
+//-----------------------------------------------------------------------------------
+public final class JSONPath
+{
+    static final int NAME = 1;
+    static final int ANY_NAME = 2;
+    static final int ELEMENT = 3;
+    static final int ANY_ELEMENT = 4;
+
+    // The kinds of value select() is asked for
+    static final int ANY = 0;
+    static final int VALUE = 1;
+    static final int OBJECT = 2;
+    static final int ARRAY = 3;
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    private final String mPath;
+    private final int[] mTypes;
+    private final String[] mNames;
+    private final int[] mElements;
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    private JSONPath(String path)
+    {
+        mPath = path;
+
+        ArrayList<Integer> types = new ArrayList<Integer>();
+        ArrayList<String> names = new ArrayList<String>();
+        ArrayList<Integer> elements = new ArrayList<Integer>();
+
+        int current = 0;
+        int length = path.length();
+        while (current < length)
+        {
+            char inputc = path.charAt(current);
+
+            if (inputc == '[')
+            {
+                int close = path.indexOf(']', current);
+                if (close < 0)
+                {
+                    throw new JSONException("Invalid path - missing ] [" + path + "]");
+                }
+
+                String element = path.substring(current + 1, close).trim();
+                if (element.equals("*"))
+                {
+                    types.add(ANY_ELEMENT);
+                    elements.add(-1);
+                }
+                else
+                {
+                    int index;
+                    try
+                    {
+                        index = Integer.parseInt(element);
+                    }
+                    catch (NumberFormatException exception)
+                    {
+                        throw new JSONException("Invalid path - invalid element [" + path + "]");
+                    }
+                    if (index < 0)
+                    {
+                        throw new JSONException("Invalid path - invalid element [" + path + "]");
+                    }
+                    types.add(ELEMENT);
+                    elements.add(index);
+                }
+                names.add(null);
+
+                current = close + 1;
+                if ((current < length) && (path.charAt(current) == '.'))
+                {
+                    current++;
+                    if (current == length)
+                    {
+                        throw new JSONException("Invalid path - empty name [" + path + "]");
+                    }
+                }
+                continue;
+            }
+
+            int end = current;
+            while ((end < length) && (path.charAt(end) != '.') && (path.charAt(end) != '['))
+            {
+                if (path.charAt(end) == ']')
+                {
+                    throw new JSONException("Invalid path - unexpected ] [" + path + "]");
+                }
+                end++;
+            }
+
+            String name = path.substring(current, end);
+            if (name.length() == 0)
+            {
+                throw new JSONException("Invalid path - empty name [" + path + "]");
+            }
+
+            types.add(name.equals("*") ? ANY_NAME : NAME);
+            names.add(name.equals("*") ? null : name);
+            elements.add(-1);
+
+            current = end;
+            if ((current < length) && (path.charAt(current) == '.'))
+            {
+                current++;
+                if (current == length)
+                {
+                    throw new JSONException("Invalid path - empty name [" + path + "]");
+                }
+            }
+        }
+
+        if (types.size() == 0)
+        {
+            throw new JSONException("Invalid path - empty");
+        }
+
+        mTypes = new int[types.size()];
+        mNames = new String[types.size()];
+        mElements = new int[types.size()];
+        for (int i = 0; i < mTypes.length; i++)
+        {
+            mTypes[i] = types.get(i);
+            mNames[i] = names.get(i);
+            mElements[i] = elements.get(i);
+        }
+    }
+
+    public static JSONPath compile(String path)
+    {
+        return new JSONPath(path);
+    }
+
+    public String toString()
+    {
+        return mPath;
+    }
+
+    int size()
+    {
+        return mTypes.length;
+    }
+
+    int type(int segment)
+    {
+        return mTypes[segment];
+    }
+
+    String name(int segment)
+    {
+        return mNames[segment];
+    }
+
+    int element(int segment)
+    {
+        return mElements[segment];
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    public boolean exists(JSONObject object)
+    {
+        return object.select(this, 0, ANY, null) != null;
+    }
+
+    public boolean exists(JSONMap map)
+    {
+        return select(map, ANY, null) != null;
+    }
+
+    //-------------------------------------------------------------------------------
+    // The match as text - objects and arrays as JSON, values unescaped - or null
+    //-------------------------------------------------------------------------------
+    public String getText(JSONObject object)
+    {
+        return text((String)object.select(this, 0, ANY, null));
+    }
+
+    public String getText(JSONMap map)
+    {
+        return text((String)select(map, ANY, null));
+    }
+
+    private static String text(String raw)
+    {
+        if (raw == null)
+        {
+            return null;
+        }
+        if (raw.charAt(0) == '{')
+        {
+            return raw;
+        }
+        if (raw.charAt(0) == '[')
+        {
+            return JSONObject.toArray(raw, 0).toString();
+        }
+        return JSONObject.unescape(raw);
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    public String getString(JSONObject object)
+    {
+        return getString(object, null);
+    }
+
+    public String getString(JSONObject object, String defaultValue)
+    {
+        return string((String)object.select(this, 0, VALUE, null), defaultValue);
+    }
+
+    public String getString(JSONMap map)
+    {
+        return getString(map, null);
+    }
+
+    public String getString(JSONMap map, String defaultValue)
+    {
+        return string((String)select(map, VALUE, null), defaultValue);
+    }
+
+    private String string(String raw, String defaultValue)
+    {
+        if (raw == null)
+        {
+            if (defaultValue == null)
+            {
+                throw new JSONException("Did not find Value [" + mPath + "]");
+            }
+
+            return defaultValue;
+        }
+
+        return JSONObject.unescape(raw);
+    }
+
+    public int getInteger(JSONObject object)
+    {
+        return JSONObject.parseInt(getString(object));
+    }
+
+    public int getInteger(JSONObject object, int defaultValue)
+    {
+        String value = getString(object, "");
+        return (value.length() == 0) ? defaultValue : JSONObject.parseInt(value);
+    }
+
+    public int getInteger(JSONMap map)
+    {
+        return JSONObject.parseInt(getString(map));
+    }
+
+    public long getLong(JSONObject object)
+    {
+        return JSONObject.parseLong(getString(object));
+    }
+
+    public long getLong(JSONObject object, long defaultValue)
+    {
+        String value = getString(object, "");
+        return (value.length() == 0) ? defaultValue : JSONObject.parseLong(value);
+    }
+
+    public long getLong(JSONMap map)
+    {
+        return JSONObject.parseLong(getString(map));
+    }
+
+    public double getDouble(JSONObject object)
+    {
+        return JSONObject.parseDouble(getString(object));
+    }
+
+    public double getDouble(JSONObject object, double defaultValue)
+    {
+        String value = getString(object, "");
+        return (value.length() == 0) ? defaultValue : JSONObject.parseDouble(value);
+    }
+
+    public double getDouble(JSONMap map)
+    {
+        return JSONObject.parseDouble(getString(map));
+    }
+
+    public boolean getBoolean(JSONObject object)
+    {
+        return getString(object).equals("true");
+    }
+
+    public boolean getBoolean(JSONObject object, boolean defaultValue)
+    {
+        String value = getString(object, "");
+        return (value.length() == 0) ? defaultValue : value.equals("true");
+    }
+
+    public boolean getBoolean(JSONMap map)
+    {
+        return getString(map).equals("true");
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    public JSONObject getObject(JSONObject object)
+    {
+        return getObject(object, null);
+    }
+
+    public JSONObject getObject(JSONObject object, JSONObject defaultValue)
+    {
+        return found((JSONObject)object.select(this, 0, OBJECT, null), defaultValue, "Object");
+    }
+
+    public JSONObject getObject(JSONMap map)
+    {
+        return found((JSONObject)select(map, OBJECT, null), null, "Object");
+    }
+
+    public JSONArray getArray(JSONObject object)
+    {
+        return getArray(object, null);
+    }
+
+    public JSONArray getArray(JSONObject object, JSONArray defaultValue)
+    {
+        return found((JSONArray)object.select(this, 0, ARRAY, null), defaultValue, "Array");
+    }
+
+    public JSONArray getArray(JSONMap map)
+    {
+        return found((JSONArray)select(map, ARRAY, null), null, "Array");
+    }
+
+    private <T> T found(T value, T defaultValue, String kind)
+    {
+        if (value == null)
+        {
+            if (defaultValue == null)
+            {
+                throw new JSONException("Did not find " + kind + " [" + mPath + "]");
+            }
+
+            return defaultValue;
+        }
+
+        return value;
+    }
+
+    //-------------------------------------------------------------------------------
+    // Every match - an empty list if there are none
+    //-------------------------------------------------------------------------------
+    public List<String> getStrings(JSONObject object)
+    {
+        ArrayList<Object> all = new ArrayList<Object>();
+        object.select(this, 0, VALUE, all);
+        return strings(all);
+    }
+
+    public List<String> getStrings(JSONMap map)
+    {
+        ArrayList<Object> all = new ArrayList<Object>();
+        select(map, VALUE, all);
+        return strings(all);
+    }
+
+    private static List<String> strings(List<Object> all)
+    {
+        ArrayList<String> strings = new ArrayList<String>(all.size());
+        for (Object value : all)
+        {
+            strings.add(JSONObject.unescape((String)value));
+        }
+        return strings;
+    }
+
+    public List<JSONObject> getObjects(JSONObject object)
+    {
+        ArrayList<Object> all = new ArrayList<Object>();
+        object.select(this, 0, OBJECT, all);
+        return objects(all);
+    }
+
+    public List<JSONObject> getObjects(JSONMap map)
+    {
+        ArrayList<Object> all = new ArrayList<Object>();
+        select(map, OBJECT, all);
+        return objects(all);
+    }
+
+    private static List<JSONObject> objects(List<Object> all)
+    {
+        ArrayList<JSONObject> objects = new ArrayList<JSONObject>(all.size());
+        for (Object value : all)
+        {
+            objects.add((JSONObject)value);
+        }
+        return objects;
+    }
+
+    //-------------------------------------------------------------------------------
+    // A map has already split its top level so the first segment is answered by
+    //    the map and the rest by a view over the raw value it holds
+    //-------------------------------------------------------------------------------
+    private Object select(JSONMap map, int kind, List<Object> all)
+    {
+        if (mTypes[0] == NAME)
+        {
+            return select(mNames[0], map.toString(mNames[0]), kind, all);
+        }
+        if (mTypes[0] == ANY_NAME)
+        {
+            for (String name : map.keySet())
+            {
+                Object value = select(name, map.toString(name), kind, all);
+                if ((value != null) && (all == null))
+                {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Object select(String name, String raw, int kind, List<Object> all)
+    {
+        if (raw == null)
+        {
+            return null;
+        }
+
+        char inputc = raw.charAt(0);
+
+        if (mTypes.length > 1)
+        {
+            if ((inputc != '{') && (inputc != '['))
+            {
+                return null;
+            }
+            return new JSONObject(raw, 0, raw.length()).select(this, 1, kind, all);
+        }
+
+        Object value;
+        if (kind == OBJECT)
+        {
+            if (inputc != '{')
+            {
+                return null;
+            }
+            value = new JSONObject(raw, 0, raw.length());
+        }
+        else if (kind == ARRAY)
+        {
+            if (inputc != '[')
+            {
+                return null;
+            }
+            value = JSONObject.toArray(raw, 0);
+        }
+        else
+        {
+            if ((kind == VALUE) && ((inputc == '{') || (inputc == '[')))
+            {
+                return null;
+            }
+            value = raw;
+        }
+
+        if (all == null)
+        {
+            return value;
+        }
+        all.add(value);
+        return null;
+    }
+}
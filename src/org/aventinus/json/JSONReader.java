@@ -0,0 +1,616 @@
+//-----------------------------------------------------------------------------------
+// Copyright (c) 2009-2013, Gordon Beck (gordon.beck@aventinus.org). All rights reserved.
+//
+//    This file is part of a suite of tools.
+//
+//    The tools are free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    The tools are distributed in the hope that they will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with these tools.  If not, see <http://www.gnu.org/licenses/>.
+//-----------------------------------------------------------------------------------
+package org.aventinus.json;
+
+import java.util.*;
+import java.io.*;
+import java.nio.charset.*;
+
+import org.aventinus.util.*;
+
+//-----------------------------------------------------------------------------------
+// Pull parser over a stream using a fixed size buffer - it accepts the same relaxed
+//    grammar as JSONObject (optional commas, // comments and unquoted values).
+//
+//    while (reader.next() != JSONReader.END_DOCUMENT) ...
+//-----------------------------------------------------------------------------------
+public class JSONReader implements Closeable
+{
+    //-------------------------------------------------------------------------------
+    // Use of toolbox is dicey as it uses JSONObject to initialiase
+    //-------------------------------------------------------------------------------
+    private static Toolbox toolbox = Toolbox.toolbox();
+    private static Logger logger = Logger.logger(JSONReader.class);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    public static final int START_OBJECT = 1;
+    public static final int END_OBJECT = 2;
+    public static final int START_ARRAY = 3;
+    public static final int END_ARRAY = 4;
+    public static final int KEY = 5;
+    public static final int VALUE = 6;
+    public static final int END_DOCUMENT = 7;
+
+    // What we expect next within each open object or array
+    private static final int OBJECT_START = 1;
+    private static final int OBJECT_COMMA = 2;
+    private static final int OBJECT_VALUE = 3;
+    private static final int OBJECT_NEXT = 4;
+    private static final int ARRAY_START = 5;
+    private static final int ARRAY_COMMA = 6;
+    private static final int ARRAY_NEXT = 7;
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    private Reader mReader;
+    private char[] mBuffer = new char[BUFFER_SIZE];
+    private int mPosition = 0;
+    private int mLimit = 0;
+    private boolean mEof = false;
+
+    private int[] mStack = new int[16];
+    private int mStackIdx = -1;
+
+    private int mEvent = 0;
+    private String mKey = null;
+    private String mValue = null;
+    private StringBuilder mToken = new StringBuilder();
+
+    private String error = "";
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    public JSONReader(Reader reader)
+    {
+        mReader = reader;
+    }
+
+    public JSONReader(InputStream input)
+    {
+        this(new InputStreamReader(input, StandardCharsets.UTF_8));
+    }
+
+    public static JSONReader fromFile(String filename)
+    {
+        try
+        {
+            if (filename.startsWith("file:"))
+            {
+                filename = filename.substring(5);
+            }
+
+            return new JSONReader(new FileInputStream(filename));
+        }
+        catch (Exception exception)
+        {
+            throw new JSONException(exception);
+        }
+    }
+
+    public void close()
+    {
+        Toolbox.close(mReader);
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    public int next()
+    {
+        if (error.length() > 0)
+        {
+            throw new JSONException("Invalid state - in error[" + error + "]");
+        }
+
+        if (mEvent == END_DOCUMENT)
+        {
+            return END_DOCUMENT;
+        }
+
+        mValue = null;
+
+        while (true)
+        {
+            if (mStackIdx < 0)
+            {
+                // Only whitespace is allowed around the outer object - as in JSONObject
+                skipWhitespace(false);
+
+                int inputc = peek();
+                if (mEvent == 0)
+                {
+                    if (inputc < 0)
+                    {
+                        throwError("Invalid JSON - no input");
+                    }
+                    if (inputc == '{')
+                    {
+                        return start(OBJECT_START, START_OBJECT);
+                    }
+                    if (inputc == '[')
+                    {
+                        return start(ARRAY_START, START_ARRAY);
+                    }
+                    throwError("Invalid JSON - invalid leading characters");
+                }
+
+                if (inputc >= 0)
+                {
+                    throwError("Invalid JSON - invalid trailing characters");
+                }
+                return (mEvent = END_DOCUMENT);
+            }
+
+            skipWhitespace(true);
+
+            int state = mStack[mStackIdx];
+            int inputc = peek();
+
+            if (inputc < 0)
+            {
+                throwError("Invalid JSON - early end");
+            }
+
+            if ((state == OBJECT_START) || (state == OBJECT_COMMA) || (state == OBJECT_NEXT))
+            {
+                if (inputc == '}')
+                {
+                    if (state == OBJECT_COMMA)
+                    {
+                        throwError("Invalid JSON - missing name:value or value");
+                    }
+                    return end(END_OBJECT);
+                }
+                if (inputc == ',')
+                {
+                    if (state != OBJECT_NEXT)
+                    {
+                        throwError("Invalid JSON - missing name:value");
+                    }
+                    mPosition++;
+                    mStack[mStackIdx] = OBJECT_COMMA;
+                    continue;
+                }
+                if (inputc == ':')
+                {
+                    throwError("Invalid JSON - no name");
+                }
+                if ((inputc == '{') || (inputc == '['))
+                {
+                    throwError("Invalid JSON - missing name");
+                }
+                if (inputc == ']')
+                {
+                    throwError("Invalid JSON - invalid nesting");
+                }
+
+                mKey = token();
+
+                skipWhitespace(true);
+                if (peek() != ':')
+                {
+                    throwError("Invalid JSON - no name :");
+                }
+                mPosition++;
+
+                mStack[mStackIdx] = OBJECT_VALUE;
+                return (mEvent = KEY);
+            }
+
+            if (state == OBJECT_VALUE)
+            {
+                if ((inputc == '}') || (inputc == ']') || (inputc == ','))
+                {
+                    throwError("Invalid JSON - unexpected delimiter - missing value");
+                }
+                if (inputc == ':')
+                {
+                    throwError("Invalid JSON - invalid :");
+                }
+
+                mStack[mStackIdx] = OBJECT_NEXT;
+                if (inputc == '{')
+                {
+                    return start(OBJECT_START, START_OBJECT);
+                }
+                if (inputc == '[')
+                {
+                    return start(ARRAY_START, START_ARRAY);
+                }
+
+                mValue = token();
+                return (mEvent = VALUE);
+            }
+
+            // ARRAY_START, ARRAY_COMMA or ARRAY_NEXT
+
+            if (inputc == ']')
+            {
+                if (state == ARRAY_COMMA)
+                {
+                    throwError("Invalid JSON - missing name:value or value");
+                }
+                return end(END_ARRAY);
+            }
+            if (inputc == ',')
+            {
+                if (state != ARRAY_NEXT)
+                {
+                    throwError("Invalid JSON - missing value");
+                }
+                mPosition++;
+                mStack[mStackIdx] = ARRAY_COMMA;
+                continue;
+            }
+            if (inputc == ':')
+            {
+                throwError("Invalid JSON - invalid :");
+            }
+            if (inputc == '}')
+            {
+                throwError("Invalid JSON - invalid nesting");
+            }
+
+            mStack[mStackIdx] = ARRAY_NEXT;
+            if (inputc == '{')
+            {
+                return start(OBJECT_START, START_OBJECT);
+            }
+            if (inputc == '[')
+            {
+                return start(ARRAY_START, START_ARRAY);
+            }
+
+            mValue = token();
+            return (mEvent = VALUE);
+        }
+    }
+
+    public int getEvent()
+    {
+        return mEvent;
+    }
+
+    // The nesting depth of the current event - the outer object is at depth 1
+    public int getDepth()
+    {
+        return mStackIdx + 1;
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    public String getKey()
+    {
+        if (mKey == null)
+        {
+            throw new JSONException("No key");
+        }
+
+        return JSONObject.unescape(mKey);
+    }
+
+    public String getString()
+    {
+        return JSONObject.unescape(value());
+    }
+
+    public int getInteger()
+    {
+        return JSONObject.parseInt(getString());
+    }
+
+    public long getLong()
+    {
+        return JSONObject.parseLong(getString());
+    }
+
+    public double getDouble()
+    {
+        return JSONObject.parseDouble(getString());
+    }
+
+    public boolean getBoolean()
+    {
+        return getString().equals("true");
+    }
+
+    // The key and value as they appear in the text - quotes and escapes included
+    String getRawKey()
+    {
+        if (mKey == null)
+        {
+            throw new JSONException("No key");
+        }
+
+        return mKey;
+    }
+
+    String getRawValue()
+    {
+        return value();
+    }
+
+    private String value()
+    {
+        if (mEvent != VALUE)
+        {
+            throw new JSONException("Not a value");
+        }
+
+        return mValue;
+    }
+
+    //-------------------------------------------------------------------------------
+    // Having just seen START_OBJECT or START_ARRAY these consume the rest of it -
+    //    the usual way to walk a huge array one element at a time.
+    //-------------------------------------------------------------------------------
+    public JSONObject readObject()
+    {
+        if (mEvent != START_OBJECT)
+        {
+            throw new JSONException("Not at start of object");
+        }
+
+        String text = read("{");
+        return new JSONObject(text, 0, text.length());
+    }
+
+    public JSONArray readArray()
+    {
+        if (mEvent != START_ARRAY)
+        {
+            throw new JSONException("Not at start of array");
+        }
+
+        return JSONObject.toArray(read("["), 0);
+    }
+
+    public void skipValue()
+    {
+        if ((mEvent != START_OBJECT) && (mEvent != START_ARRAY))
+        {
+            throw new JSONException("Not at start of object or array");
+        }
+
+        int depth = mStackIdx;
+        while (mStackIdx >= depth)
+        {
+            next();
+        }
+    }
+
+    private String read(String start)
+    {
+        StringBuilder buffer = new StringBuilder(start);
+
+        int depth = mStackIdx;
+        while (mStackIdx >= depth)
+        {
+            int event = next();
+
+            if ((event == END_OBJECT) || (event == END_ARRAY))
+            {
+                buffer.append((event == END_OBJECT) ? '}' : ']');
+                continue;
+            }
+
+            char last = buffer.charAt(buffer.length() - 1);
+            if ((last != '{') && (last != '[') && (last != ':'))
+            {
+                buffer.append(',');
+            }
+
+            if (event == KEY)
+            {
+                buffer.append(mKey).append(':');
+            }
+            else if (event == VALUE)
+            {
+                buffer.append(mValue);
+            }
+            else
+            {
+                buffer.append((event == START_OBJECT) ? '{' : '[');
+            }
+        }
+
+        return buffer.toString();
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    private int start(int state, int event)
+    {
+        mPosition++;
+
+        if (++mStackIdx == mStack.length)
+        {
+            mStack = Arrays.copyOf(mStack, mStack.length * 2);
+        }
+        mStack[mStackIdx] = state;
+
+        return (mEvent = event);
+    }
+
+    private int end(int event)
+    {
+        mPosition++;
+        mStackIdx--;
+
+        return (mEvent = event);
+    }
+
+    // A quoted string keeps its quotes and escapes, just as JSONObject holds values
+    private String token()
+    {
+        mToken.setLength(0);
+
+        if (peek() == '"')
+        {
+            mToken.append('"');
+            mPosition++;
+
+            while (true)
+            {
+                if (! ensure(2))
+                {
+                    throwError("Invalid JSON - quoting");
+                }
+
+                char inputc = mBuffer[mPosition];
+                if ((inputc == '\\') && ((mBuffer[mPosition + 1] == '\\') || (mBuffer[mPosition + 1] == '"')))
+                {
+                    mToken.append(inputc).append(mBuffer[mPosition + 1]);
+                    mPosition += 2;
+                    continue;
+                }
+
+                mToken.append(inputc);
+                mPosition++;
+
+                if (inputc == '"')
+                {
+                    return mToken.toString();
+                }
+            }
+        }
+
+        while (true)
+        {
+            int inputc = peek();
+            if ((inputc <= ' ') || (inputc == ',') || (inputc == ':') || (inputc == '"') ||
+                (inputc == '{') || (inputc == '}') || (inputc == '[') || (inputc == ']'))
+            {
+                if (inputc == '"')
+                {
+                    throwError("Invalid JSON - unexpected quote");
+                }
+                if ((inputc == '{') || (inputc == '['))
+                {
+                    throwError("Invalid JSON - unexpected start of new value - missing whitespace ?");
+                }
+                return mToken.toString();
+            }
+
+            mToken.append((char)inputc);
+            mPosition++;
+        }
+    }
+
+    // As in JSONObject a // comment can only start between names and values
+    private void skipWhitespace(boolean comments)
+    {
+        while (true)
+        {
+            int inputc = peek();
+
+            if ((inputc == ' ') || (inputc == '\n') || (inputc == '\r') || (inputc == '\t'))
+            {
+                mPosition++;
+                continue;
+            }
+
+            if ((inputc >= 0) && (inputc < ' '))
+            {
+                if (! comments)
+                {
+                    mPosition++; // leading and trailing control characters are ignored
+                    continue;
+                }
+                throwError("Invalid JSON - invalid character");
+            }
+
+            if (comments && (inputc == '/') && ensure(2) && (mBuffer[mPosition + 1] == '/'))
+            {
+                mPosition += 2;
+                while ((inputc = peek()) >= 0)
+                {
+                    if ((inputc == '\n') || (inputc == '\r'))
+                    {
+                        break;
+                    }
+                    mPosition++;
+                }
+                continue;
+            }
+
+            return;
+        }
+    }
+
+    private int peek()
+    {
+        if ((mPosition < mLimit) || ensure(1))
+        {
+            return mBuffer[mPosition];
+        }
+        return -1;
+    }
+
+    private boolean ensure(int count)
+    {
+        try
+        {
+            while (mLimit - mPosition < count)
+            {
+                if (mEof)
+                {
+                    return false;
+                }
+
+                if (mPosition > 0)
+                {
+                    System.arraycopy(mBuffer, mPosition, mBuffer, 0, mLimit - mPosition);
+                    mLimit -= mPosition;
+                    mPosition = 0;
+                }
+
+                int chars = mReader.read(mBuffer, mLimit, mBuffer.length - mLimit);
+                if (chars < 0)
+                {
+                    mEof = true;
+                }
+                else
+                {
+                    mLimit += chars;
+                }
+            }
+            return true;
+        }
+        catch (IOException exception)
+        {
+            throw new JSONException(exception);
+        }
+    }
+
+    private void throwError(String text)
+    {
+        int start = Math.max(0, mPosition - 40);
+        int end = Math.min(mLimit, mPosition + 40);
+
+        error = text + " [" + new String(mBuffer, start, mPosition - start) + "<=!=>" + new String(mBuffer, mPosition, end - mPosition) + "]";
+
+        throw new JSONException(error);
+    }
+}
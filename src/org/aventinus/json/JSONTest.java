@@ -18,7 +18,10 @@
 //-----------------------------------------------------------------------------------
 package org.aventinus.json;
 
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
 
 import org.aventinus.util.*;
 
@@ -53,6 +56,55 @@ public class JSONTest
         {
 
             test("{}");
+
+            binary("{}");
+            binary("{a:1,\"b c\":\"x\\\"y\\u00e9\u00e9\",c:[1,2.5,-3000000000,1e3,01,true,false,null],d:{},e:[],f:{g:[{h:[[]]}]}}");
+            forged("{a:\"xy\"}", "xy", "x\"");
+            forged("{a:\"xy\"}", "xy", "x\\");
+            forged("{a:xy}", "xy", "x}");
+            forged("{a:[xy]}", "xy", "x ");
+            forged("{ab:1}", "ab", "a:");
+
+            patch("{a:1, b:{c:2, d:[1], e:{f:1}}, g:\"x\", h:[1]}", "{a:5, b:{c:2, d:[2], e:{f:2}, n:1}, g:\"x\", z:0}");
+
+            codec();
+
+            reader("{a:1,\"b c\":\"x\\\"y\",c:[1,[],{}],d:{e:null},f:-2.5e3}");
+            reader("[{a:1},[2,[3]],x,\"y\"]");
+            reader();
+
+            caches();
+
+            path("a.b", "[1]");
+            path("c[1].d", "[y]");
+            path("c[*].d", "[x, y]");
+            path("*.*", "[1]");
+            path("*.b", "[1]");
+            path("e[*][1]", "[2, 4]");
+            path("e[1][0]", "[3]");
+            path("c[2].d", "[]");
+            path("a.x", "[]");
+            path("a.b.c", "[]");
+            path("a[0]", "[]");
+            path();
+
+            parallel();
+
+            intern();
+
+            freeze();
+
+            packed();
+            pack("[1,-2,3]", true);
+            pack("[1.0,-2.5,1.0E20]", true);
+            pack("[1,2.5]", false);
+            pack("[1.0,2]", false);
+            pack("[01,2]", false);
+            pack("[-0,1]", false);
+            pack("[1e3]", false);
+            pack("[1,\"2\"]", false);
+            pack("[-]", false);
+            pack("[]", false);
 //        test("{a:1}");
 //        test("{a:{}");
 //        test("{1}", true);
@@ -235,6 +287,840 @@ public class JSONTest
         }
     }
 
+    //-------------------------------------------------------------------------------
+    // The binary form of compact text must give back the same text and encode to
+    //    the same bytes, and every truncation of it must be refused
+    //-------------------------------------------------------------------------------
+    private static void binary(String value)
+    {
+        logger.log("Considering binary [" + value + "]");
+        try
+        {
+            JSONObject object = new JSONObject(value);
+            byte[] encoded = JSONBinary.encode(object);
+
+            JSONObject decoded = JSONBinary.toObject(encoded);
+            if (! decoded.toString().equals(value))
+            {
+                logger.log("... test failed decoded=" + decoded.toString());
+            }
+            if (! Arrays.equals(JSONBinary.encode(decoded), encoded))
+            {
+                logger.log("... test failed re-encoded differently");
+            }
+            if (! JSONBinary.toObject(encoded, true).toString().equals(decoded.toString()))
+            {
+                logger.log("... test failed trusted=" + JSONBinary.toObject(encoded, true).toString());
+            }
+            if (! JSONBinary.toMap(encoded).toString().equals(JSONBinary.toMap(encoded, true).toString()))
+            {
+                logger.log("... test failed map=" + JSONBinary.toMap(encoded, true).toString());
+            }
+
+            for (int length = 0; length < encoded.length; length++)
+            {
+                try
+                {
+                    JSONBinary.toObject(Arrays.copyOf(encoded, length));
+                    logger.log("... test failed truncated to " + length);
+                }
+                catch (JSONException exception)
+                {
+                }
+            }
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // Binary input with text in it that JSONObject(String) would refuse must be
+    //    refused without trusted - from is replaced in the encoding by to
+    //-------------------------------------------------------------------------------
+    private static void forged(String value, String from, String to)
+    {
+        logger.log("Considering forged binary [" + value + "] with [" + from + "] as [" + to + "]");
+        try
+        {
+            byte[] encoded = JSONBinary.encode(new JSONObject(value));
+            String text = new String(encoded, "ISO-8859-1");
+            int at = text.indexOf(from);
+            System.arraycopy(to.getBytes("ISO-8859-1"), 0, encoded, at, to.length());
+
+            try
+            {
+                JSONBinary.toObject(encoded);
+                logger.log("... test failed object");
+            }
+            catch (JSONException exception)
+            {
+            }
+            try
+            {
+                JSONBinary.toMap(encoded);
+                logger.log("... test failed map");
+            }
+            catch (JSONException exception)
+            {
+            }
+            try
+            {
+                JSONBinary.toList(encoded);
+                logger.log("... test failed list");
+            }
+            catch (JSONException exception)
+            {
+            }
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // The diff applied to before must leave nothing to diff against after, and the
+    //    names that were there keep their order
+    //-------------------------------------------------------------------------------
+    private static void patch(String before, String after)
+    {
+        logger.log("Considering patch [" + before + "] to [" + after + "]");
+        try
+        {
+            JSONObject object = new JSONObject(before);
+            JSONObject target = new JSONObject(after);
+            List<String> names = object.getNames();
+
+            JSONPatch.diff(object, target).apply(object);
+
+            JSONPatch remaining = JSONPatch.diff(object, target);
+            if (! remaining.isEmpty())
+            {
+                logger.log("... test failed remaining=" + remaining.toString());
+            }
+
+            names.retainAll(target.getNames());
+            if (! object.getNames().subList(0, names.size()).equals(names))
+            {
+                logger.log("... test failed order=" + object.getNames());
+            }
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // A bound class must come back as it went, a null member leaves a primitive
+    //    alone, a hidden field is written once and what cannot be bound is refused
+    //-------------------------------------------------------------------------------
+    public enum Side { BUY, SELL }
+
+    public static class Leg
+    {
+        private String mName;
+        private long[] fills;
+    }
+
+    public static class Trade
+    {
+        private long id = 5;
+        private int count;
+        private double price;
+        private boolean live;
+        private Double rate;
+        private String book = "default";
+        private Side side;
+        private Leg leg;
+        private String[] tags;
+        private JSONObject extra;
+    }
+
+    public static class Amended extends Trade
+    {
+        private String book;
+    }
+
+    public static class Unbound
+    {
+        private Object value;
+    }
+
+    private static void codec()
+    {
+        logger.log("Considering JSONCodec");
+        try
+        {
+            JSONCodec<Trade> codec = JSONCodec.of(Trade.class);
+
+            Trade trade = new Trade();
+            trade.id = 3000000000L;
+            trade.count = -2;
+            trade.price = 101.25;
+            trade.live = true;
+            trade.rate = 0.5;
+            trade.book = "a \"b\"";
+            trade.side = Side.SELL;
+            trade.leg = new Leg();
+            trade.leg.mName = "near";
+            trade.leg.fills = new long[] {1, 2};
+            trade.tags = new String[] {"x", "y"};
+            trade.extra = new JSONObject("{n:1}");
+
+            String text = codec.encode(trade).toString();
+            Trade copy = codec.decode(new JSONObject(text));
+            if ((copy.id != trade.id) || (copy.count != trade.count) || (copy.price != trade.price) || ! copy.live
+                || ! copy.rate.equals(trade.rate) || ! copy.book.equals(trade.book) || (copy.side != Side.SELL)
+                || ! copy.leg.mName.equals("near") || ! Arrays.equals(copy.leg.fills, trade.leg.fills)
+                || ! Arrays.equals(copy.tags, trade.tags) || ! copy.extra.toString().equals("{n:1}"))
+            {
+                logger.log("... test failed copy of " + text);
+            }
+            if (! codec.encode(copy).toString().equals(text))
+            {
+                logger.log("... test failed re-encoded " + codec.encode(copy).toString());
+            }
+
+            copy = codec.decode(new JSONObject("{id:null, count:null, book:null, leg:null, rate:null}"));
+            if ((copy.id != 5) || (copy.book != null) || (copy.leg != null) || (copy.rate != null))
+            {
+                logger.log("... test failed nulls");
+            }
+
+            Amended amended = new Amended();
+            amended.book = "mine";
+            JSONObject json = JSONCodec.of(Amended.class).encode(amended);
+            if ((json.getNames().indexOf("book") != json.getNames().lastIndexOf("book")) || ! json.getString("book").equals("mine"))
+            {
+                logger.log("... test failed hidden " + json.toString());
+            }
+            amended = JSONCodec.of(Amended.class).decode(new JSONObject("{book:theirs}"));
+            if (! amended.book.equals("theirs") || ! ((Trade)amended).book.equals("default"))
+            {
+                logger.log("... test failed hidden decode");
+            }
+
+            failed("interface", new Runnable() { public void run() { JSONCodec.of(Runnable.class); } });
+            failed("Object field", new Runnable() { public void run() { JSONCodec.of(Unbound.class); } });
+            failed("enum value", new Runnable() { public void run() { JSONCodec.of(Trade.class).decode(new JSONObject("{side:HOLD}")); } });
+            failed("not an object", new Runnable() { public void run() { JSONCodec.of(Trade.class).decode(new JSONObject("{leg:1}")); } });
+            failed("not a number", new Runnable() { public void run() { JSONCodec.of(Trade.class).decode(new JSONObject("{count:x}")); } });
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+    }
+
+    private static void failed(String text, Runnable work)
+    {
+        try
+        {
+            work.run();
+            logger.log("... test failed " + text + " was accepted");
+        }
+        catch (JSONException exception)
+        {
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // The events for compact text must give back the same text
+    //-------------------------------------------------------------------------------
+    private static void reader(String value)
+    {
+        logger.log("Considering reader [" + value + "]");
+        try
+        {
+            JSONReader reader = new JSONReader(new StringReader(value));
+            StringBuilder buffer = new StringBuilder();
+            int event;
+            while ((event = reader.next()) != JSONReader.END_DOCUMENT)
+            {
+                if ((event == JSONReader.END_OBJECT) || (event == JSONReader.END_ARRAY))
+                {
+                    buffer.append((event == JSONReader.END_OBJECT) ? '}' : ']');
+                    continue;
+                }
+
+                char last = (buffer.length() == 0) ? '{' : buffer.charAt(buffer.length() - 1);
+                if ((last != '{') && (last != '[') && (last != ':'))
+                {
+                    buffer.append(',');
+                }
+                switch (event)
+                {
+                    case JSONReader.START_OBJECT:
+                        buffer.append('{');
+                        break;
+                    case JSONReader.START_ARRAY:
+                        buffer.append('[');
+                        break;
+                    case JSONReader.KEY:
+                        buffer.append(reader.getRawKey()).append(':');
+                        break;
+                    default:
+                        buffer.append(reader.getRawValue());
+                        break;
+                }
+            }
+            reader.close();
+
+            if (! buffer.toString().equals(value))
+            {
+                logger.log("... test failed events gave " + buffer.toString());
+            }
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // Elements read whole or skipped, typed values, text longer than the buffer and
+    //    the errors JSONObject(String) would give
+    //-------------------------------------------------------------------------------
+    private static void reader()
+    {
+        logger.log("Considering reader elements");
+        try
+        {
+            StringBuilder buffer = new StringBuilder("{rows:[");
+            for (int i = 0; i < 2000; i++)
+            {
+                buffer.append((i == 0) ? "" : ",").append("{id:").append(i).append(",name:\"row ").append(i).append("\",tags:[1,2]}");
+            }
+            buffer.append("], // a comment\n count:2000, live:true, rate:0.25}");
+
+            JSONReader reader = new JSONReader(new StringReader(buffer.toString()));
+            int rows = 0;
+            check(reader.next() == JSONReader.START_OBJECT, "start");
+            while (reader.next() != JSONReader.END_DOCUMENT)
+            {
+                if ((reader.getEvent() == JSONReader.KEY) && reader.getKey().equals("rows"))
+                {
+                    check(reader.next() == JSONReader.START_ARRAY, "rows");
+                    while (reader.next() == JSONReader.START_OBJECT)
+                    {
+                        if (rows % 2 == 0)
+                        {
+                            JSONObject row = reader.readObject();
+                            check(row.getInteger("id") == rows, "id " + row.getInteger("id"));
+                            check(row.getString("name").equals("row " + rows), "name " + row.getString("name"));
+                            check(row.getArray("tags").size() == 2, "tags");
+                        }
+                        else
+                        {
+                            reader.skipValue();
+                        }
+                        rows++;
+                    }
+                    check(reader.getEvent() == JSONReader.END_ARRAY, "end of rows");
+                }
+                else if (reader.getEvent() == JSONReader.KEY)
+                {
+                    String key = reader.getKey();
+                    check(reader.next() == JSONReader.VALUE, key);
+                    check(! key.equals("count") || (reader.getLong() == 2000), "count");
+                    check(! key.equals("live") || reader.getBoolean(), "live");
+                    check(! key.equals("rate") || (reader.getDouble() == 0.25), "rate");
+                }
+            }
+            check(rows == 2000, "rows " + rows);
+            reader.close();
+
+            reader = new JSONReader(new StringReader("{a:[1,2,[3]]}"));
+            reader.next();
+            reader.next();
+            reader.next();
+            check(reader.readArray().toString().equals("[1,2,[3]]"), "readArray");
+
+            for (String value : new String[] {"{a:1 b}", "{a:[1,}", "{a:{b:1}", "{a:1}}", "{:1}"})
+            {
+                try
+                {
+                    reader = new JSONReader(new StringReader(value));
+                    while (reader.next() != JSONReader.END_DOCUMENT)
+                    {
+                    }
+                    logger.log("... test failed reader accepted " + value);
+                }
+                catch (JSONException exception)
+                {
+                }
+            }
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // Typed reads come from the cache - nested ones as copies a caller can change -
+    //    and put, remove, clear and copies all see the right value
+    //-------------------------------------------------------------------------------
+    private static void caches()
+    {
+        logger.log("Considering value caches");
+        try
+        {
+            JSONObject object = new JSONObject("{a:1,b:\"x\\ty\",c:{d:2},e:[3],f:2.5}");
+
+            JSONMap map = object.getMap();
+            map.getObject("c").add("x", 1);
+            map.getMap("c").put("x", 1);
+            check(! map.getObject("c").containsKey("x"), "map object shared");
+            check(! map.getMap("c").containsKey("x"), "map map shared");
+            check(map.getString("b").equals("x\ty"), "map string " + map.getString("b"));
+            check(map.getInteger("a") == 1, "map integer");
+            check(map.getDouble("f") == 2.5, "map double");
+
+            JSONMap copy = new JSONMap(map);
+            map.put("a", 7);
+            map.put("b", "z");
+            map.put("c", new JSONObject("{d:3}"));
+            check(map.getInteger("a") == 7, "map put integer " + map.getInteger("a"));
+            check(map.getString("b").equals("z"), "map put string " + map.getString("b"));
+            check(map.getObject("c").getInteger("d") == 3, "map put object");
+            check(copy.getInteger("a") == 1, "map copy integer " + copy.getInteger("a"));
+            check(copy.getObject("c").getInteger("d") == 2, "map copy object");
+
+            map.remove("a");
+            check(! map.containsKey("a") && (map.getInteger("a", -1) == -1), "map remove");
+            map.put("a", 8);
+            check(map.getInteger("a") == 8, "map put after remove " + map.getInteger("a"));
+            map.clear();
+            check(map.getString("b", "none").equals("none"), "map clear");
+
+            JSONList list = object.getList();
+            list.getObject(2).add("x", 1);
+            list.getArray(3).add(4);
+            check(! list.getObject(2).containsKey("x"), "list object shared");
+            check(list.getArray(3).size() == 1, "list array shared");
+            check(list.getString(1).equals("x\ty"), "list string " + list.getString(1));
+
+            list.remove(0);
+            check(list.getString(0).equals("x\ty"), "list remove string " + list.getString(0));
+            check(list.getObject(1).getInteger("d") == 2, "list remove object");
+            check(list.getDouble(3) == 2.5, "list remove double");
+            list.add("g", 9);
+            check(list.getInteger(4) == 9, "list add " + list.getInteger(4));
+            list.clear();
+            list.add("h", 10);
+            check(list.getInteger(0) == 10, "list clear " + list.getInteger(0));
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // Every match for the path, the same answer from the object and from its map
+    //-------------------------------------------------------------------------------
+    private static final String PATHS = "{a:{b:1},c:[{d:x},{d:\"y\"}],e:[[1,2],[3,4]],f:\"\"}";
+
+    private static void path(String value, String result)
+    {
+        logger.log("Considering path [" + value + "]");
+        try
+        {
+            JSONObject object = new JSONObject(PATHS);
+            JSONPath path = JSONPath.compile(value);
+
+            List<String> found = path.getStrings(object);
+            check(found.toString().equals(result), "getStrings " + found);
+            check(path.getStrings(object.getMap()).toString().equals(result), "map getStrings " + path.getStrings(object.getMap()));
+            check(path.exists(object) == ! result.equals("[]"), "exists");
+            check(path.exists(object.getMap()) == ! result.equals("[]"), "map exists");
+            check(path.getString(object, "none").equals(found.isEmpty() ? "none" : found.get(0)), "getString " + path.getString(object, "none"));
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // Objects, arrays and what a missing or invalid path gives
+    //-------------------------------------------------------------------------------
+    private static void path()
+    {
+        logger.log("Considering path objects and errors");
+        try
+        {
+            final JSONObject object = new JSONObject(PATHS);
+
+            check(JSONPath.compile("c[*]").getObjects(object).size() == 2, "getObjects");
+            check(JSONPath.compile("c[1]").getObject(object).getString("d").equals("y"), "getObject");
+            check(JSONPath.compile("e[1]").getArray(object).getLong(1) == 4, "getArray");
+            check(JSONPath.compile("a").getText(object).equals("{b:1}"), "getText " + JSONPath.compile("a").getText(object));
+            check(JSONPath.compile("f").getString(object).equals(""), "empty string");
+            check(JSONPath.compile("a.x").getText(object) == null, "missing getText");
+            check(JSONPath.compile("a.x").getInteger(object, 5) == 5, "missing getInteger");
+
+            failed("missing getObject", new Runnable()
+                        {
+                            public void run()
+                            {
+                                JSONPath.compile("a.x").getObject(object);
+                            }
+                        });
+            failed("value as object", new Runnable()
+                        {
+                            public void run()
+                            {
+                                JSONPath.compile("a.b").getObject(object);
+                            }
+                        });
+            failed("missing getString", new Runnable()
+                        {
+                            public void run()
+                            {
+                                JSONPath.compile("c[5].d").getString(object);
+                            }
+                        });
+
+            for (final String value : new String[] {"", "a..b", "a.", "x[0", "x[-1]", "x[y]", "a]b"})
+            {
+                failed("compile [" + value + "]", new Runnable()
+                            {
+                                public void run()
+                                {
+                                    JSONPath.compile(value);
+                                }
+                            });
+            }
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // A top level array big enough to be split must give what a serial parse gives,
+    //    and a bad element must still be found
+    //-------------------------------------------------------------------------------
+    private static void parallel()
+    {
+        logger.log("Considering parallel arrays");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            StringBuilder buffer = new StringBuilder("[");
+            long total = 0;
+            for (int i = 0; i < 5000; i++)
+            {
+                buffer.append((i == 0) ? "" : ",").append("{id:").append(i).append(",name:\"row ").append(i).append("\",tags:[1,[2]],at:{x:1}}");
+                total = total + i;
+            }
+            final String text = buffer.append(" ]").toString();
+            String serial = new JSONObject("{a:" + text + "}").getArray("a").toString();
+
+            JSONArray array = JSONArray.parallel(text, pool);
+            check(array.size() == 5000, "parallel size " + array.size());
+            check(array.toString().equals(serial), "parallel text");
+            check(array.getObject(4321).getInteger("id") == 4321, "parallel element");
+            check(JSONArray.parallel("[]").size() == 0, "parallel empty");
+            check(JSONArray.parallel("[1,\"a\",[]]").toString().equals("[1,\"a\",[]]"), "parallel values");
+
+            long sum = JSONArray.stream(text).mapToLong(new ToLongFunction<JSONObject>()
+                        {
+                            public long applyAsLong(JSONObject element)
+                            {
+                                return element.getLong("id") + element.getArray("tags").size() - 2;
+                            }
+                        }).sum();
+            check(sum == total, "stream sum " + sum);
+
+            final String bad = text.substring(0, text.length() / 2) + "{id:1,,}," + text.substring(text.length() / 2 + 1);
+            final String open = text.substring(0, text.length() - 2) + ",{id:1";
+            for (final String value : new String[] {bad, open, "[{a:1}", "[{a:1},]", "{a:1}"})
+            {
+                failed("parallel " + value.length(), new Runnable()
+                            {
+                                public void run()
+                                {
+                                    JSONArray.parallel(value);
+                                }
+                            });
+            }
+            failed("stream value", new Runnable()
+                        {
+                            public void run()
+                            {
+                                JSONArray.stream("[{a:1},2]").mapToLong(new ToLongFunction<JSONObject>()
+                                            {
+                                                public long applyAsLong(JSONObject element)
+                                                {
+                                                    return 1;
+                                                }
+                                            }).sum();
+                            }
+                        });
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // With interning on the same key from two objects is one String, up to the limit
+    //-------------------------------------------------------------------------------
+    private static void intern()
+    {
+        logger.log("Considering interned keys");
+        try
+        {
+            StringIntern.clear();
+            JSONObject.internKeys(true);
+
+            JSONObject first = new JSONObject("{alpha:1,\"be\\u0074a\":2}");
+            JSONObject second = new JSONObject("{alpha:3,beta:4}");
+
+            String key = first.getMap().keySet().iterator().next();
+            check(key == second.getMap().keySet().iterator().next(), "map keys not shared");
+            check(first.getList().getName(1) == second.getList().getName(1), "list names not shared");
+            check(first.getNames().get(1) == second.getNames().get(1), "names not shared");
+            check(first.getNames().get(1).equals("beta"), "escaped name " + first.getNames().get(1));
+            check(StringIntern.size() == 2, "size " + StringIntern.size());
+            check((StringIntern.hits() > 0) && (StringIntern.bytesSaved() > 0), "hits " + StringIntern.hits());
+            check(StringIntern.hitRate() > 0.5, "hit rate " + StringIntern.hitRate());
+
+            StringIntern.limit(2);
+            JSONObject third = new JSONObject("{gamma:1}");
+            check(third.getNames().get(0).equals("gamma") && (StringIntern.size() == 2), "limit " + StringIntern.size());
+            check(third.getNames().get(0) != third.getNames().get(0), "past the limit");
+
+            JSONObject.internKeys(false);
+            check(first.getNames().get(0) != second.getNames().get(0), "interned when off");
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+        finally
+        {
+            JSONObject.internKeys(false);
+            StringIntern.limit(1000000);
+            StringIntern.clear();
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // A frozen object reads as before from any thread and refuses every change
+    //-------------------------------------------------------------------------------
+    private static void freeze()
+    {
+        logger.log("Considering freeze");
+        try
+        {
+            JSONObject object = new JSONObject("{a:1,b:\"x\",c:{d:[1,2]},e:[3]}");
+            final JSONObject frozen = object.freeze();
+
+            check(frozen.isFrozen() && ! object.isFrozen(), "isFrozen");
+            check(frozen.freeze() == frozen, "freeze twice");
+            check(frozen.toString().equals(object.toString()), "text " + frozen);
+            check(frozen.getObject("c").getArray("d").size() == 2, "getObject");
+            check(frozen.getMap().getString("b").equals("x"), "getMap");
+            check(JSONPath.compile("c.d[1]").getInteger(frozen) == 2, "path");
+
+            failed("add", new Runnable()
+                        {
+                            public void run()
+                            {
+                                frozen.add("f", 1);
+                            }
+                        });
+            failed("add object", new Runnable()
+                        {
+                            public void run()
+                            {
+                                frozen.add("f", new JSONObject("{g:1}"));
+                            }
+                        });
+            failed("replace", new Runnable()
+                        {
+                            public void run()
+                            {
+                                frozen.add("a", 2);
+                            }
+                        });
+            failed("removeValue", new Runnable()
+                        {
+                            public void run()
+                            {
+                                frozen.removeValue("a");
+                            }
+                        });
+            failed("removeObject", new Runnable()
+                        {
+                            public void run()
+                            {
+                                frozen.removeObject("c");
+                            }
+                        });
+            failed("removeArray", new Runnable()
+                        {
+                            public void run()
+                            {
+                                frozen.removeArray("e");
+                            }
+                        });
+            failed("startObject", new Runnable()
+                        {
+                            public void run()
+                            {
+                                frozen.startObject();
+                            }
+                        });
+            failed("startArray", new Runnable()
+                        {
+                            public void run()
+                            {
+                                frozen.startArray();
+                            }
+                        });
+            check(frozen.toString().equals(object.toString()), "changed by a refused call " + frozen);
+
+            JSONObject copy = new JSONObject(frozen);
+            copy.add("f", 1);
+            check(! copy.isFrozen() && (copy.getInteger("f") == 1), "copy");
+            check(! frozen.containsKey("f"), "copy shares");
+            object.add("a", 5);
+            check(frozen.getInteger("a") == 1, "original shares");
+
+            final JSONObject open = new JSONObject().key("h").startObject();
+            failed("open object", new Runnable()
+                        {
+                            public void run()
+                            {
+                                open.freeze();
+                            }
+                        });
+
+            final int[] wrong = new int[1];
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++)
+            {
+                threads[i] = new Thread()
+                            {
+                                public void run()
+                                {
+                                    for (int j = 0; j < 10000; j++)
+                                    {
+                                        if ((frozen.getInteger("a") != 1) || (frozen.getObject("c").getArray("d").getInteger(1) != 2))
+                                        {
+                                            synchronized(wrong)
+                                            {
+                                                wrong[0]++;
+                                            }
+                                        }
+                                    }
+                                }
+                            };
+                threads[i].start();
+            }
+            for (Thread thread : threads)
+            {
+                thread.join();
+            }
+            check(wrong[0] == 0, "threads read " + wrong[0] + " wrong");
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // Packed numbers give the text and values the String form would, and unpack
+    //    when something else is added
+    //-------------------------------------------------------------------------------
+    private static void packed()
+    {
+        logger.log("Considering packed arrays");
+        try
+        {
+            JSONArray longs = new JSONArray().add(1).add(new long[] {2, Long.MIN_VALUE, 4}).add(5L);
+            check(longs.isPacked(), "longs not packed");
+            check(longs.toString().equals("[1,2," + Long.MIN_VALUE + ",4,5]"), "longs text " + longs);
+            check(Arrays.equals(longs.toLongArray(), new long[] {1, 2, Long.MIN_VALUE, 4, 5}), "toLongArray");
+            check((longs.getInteger(3) == 4) && (longs.getLong(2) == Long.MIN_VALUE) && (longs.getDouble(4) == 5.0), "longs getters");
+            check(longs.getString(0).equals("1"), "longs getString");
+
+            JSONArray copy = new JSONArray(longs);
+            longs.remove(2);
+            check(longs.isPacked() && longs.toString().equals("[1,2,4,5]"), "longs remove " + longs);
+            check(longs.longStream().sum() == 12, "longStream");
+            check(copy.size() == 5, "copy shares " + copy);
+
+            JSONArray doubles = new JSONArray().add(0.5).add(new double[] {1.0E20, -2.0, 0.1});
+            check(doubles.isPacked(), "doubles not packed");
+            check(doubles.toString().equals("[0.5,1.0E20,-2.0,0.1]"), "doubles text " + doubles);
+            check(Arrays.equals(doubles.toDoubleArray(), new double[] {0.5, 1.0E20, -2.0, 0.1}), "toDoubleArray");
+            check(doubles.doubleStream().max().getAsDouble() == 1.0E20, "doubleStream");
+            doubles.remove(0);
+            check(doubles.getDouble(0) == 1.0E20, "doubles remove");
+
+            JSONArray mixed = new JSONArray().add(1L).add(2.5);
+            check(! mixed.isPacked() && mixed.toString().equals("[1,2.5]"), "long then double " + mixed);
+            longs.add("x");
+            check(! longs.isPacked() && longs.toString().equals("[1,2,4,5,\"x\"]"), "unpacked " + longs);
+            doubles.add(new JSONObject("{a:1}"));
+            check(! doubles.isPacked() && doubles.toString().equals("[1.0E20,-2.0,0.1,{a:1}]"), "unpacked " + doubles);
+
+            JSONObject object = new JSONObject().add("s", new JSONArray().add(new long[] {7, 8}));
+            check(object.toString().equals("{\"s\":[7,8]}"), "in an object " + object);
+            check(object.getArray("s").toLongArray()[1] == 8, "read back");
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // A parsed array packs only when its text would come back the same
+    //-------------------------------------------------------------------------------
+    private static void pack(String value, boolean packs)
+    {
+        logger.log("Considering pack [" + value + "]");
+        try
+        {
+            JSONArray array = new JSONObject("{a:" + value + "}").getArray("a");
+            double[] doubles = packs ? array.toDoubleArray() : null;
+
+            check(array.pack() == packs, "pack");
+            check(array.isPacked() == packs, "isPacked");
+            check(array.toString().equals(value), "text " + array);
+            check((doubles == null) || Arrays.equals(array.toDoubleArray(), doubles), "values");
+        }
+        catch (Throwable exception)
+        {
+            logger.log("... test failed", exception);
+        }
+    }
+
+    private static void check(boolean passed, String text)
+    {
+        if (! passed)
+        {
+            logger.log("... test failed " + text);
+        }
+    }
+
     private static void test(JSONObject object, String text, String value, String result)
     {
         logger.log("Considering [" + object.toString() + "] " + text + "=" + value);
@@ -0,0 +1,146 @@
+//-----------------------------------------------------------------------------------
+// Copyright (c) 2009-2013, Gordon Beck (gordon.beck@aventinus.org). All rights reserved.
+//
+//    This file is part of a suite of tools.
+//
+//    The tools are free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    The tools are distributed in the hope that they will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with these tools.  If not, see <http://www.gnu.org/licenses/>.
+//-----------------------------------------------------------------------------------
+package org.aventinus.json;
+
+//-----------------------------------------------------------------------------------
+// The decoded forms of one raw value held by a JSONMap or JSONList. Each form is
+//    built the first time it is asked for. The containers compare mSource with the
+//    value they hold so an entry is never used once its value has been replaced.
+//
+// Nested objects are handed out as copies - as they always have been - so that a
+//    caller adding to one cannot change what the next caller sees.
+//
+// Threads reading the same container share its entries. A form is published by a
+//    volatile write once it is built, so a racing reader sees it whole or builds
+//    its own - mString needs no more as a String is immutable.
+//-----------------------------------------------------------------------------------
+final class JSONValue
+{
+    final String mSource;
+
+    private String mString = null;
+
+    private volatile boolean mIsInteger = false;
+    private int mInteger;
+    private volatile boolean mIsLong = false;
+    private long mLong;
+    private volatile boolean mIsDouble = false;
+    private double mDouble;
+
+    private volatile JSONObject mObject = null;
+    private volatile JSONArray mArray = null;
+    private volatile JSONMap mMap = null;
+    private volatile JSONList mList = null;
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    JSONValue(String source)
+    {
+        mSource = source;
+    }
+
+    String getString()
+    {
+        if (mString == null)
+        {
+            mString = JSONObject.unescape(mSource);
+        }
+        return mString;
+    }
+
+    int getInteger()
+    {
+        if (! mIsInteger)
+        {
+            mInteger = JSONObject.parseInt(getString());
+            mIsInteger = true;
+        }
+        return mInteger;
+    }
+
+    long getLong()
+    {
+        if (! mIsLong)
+        {
+            mLong = JSONObject.parseLong(getString());
+            mIsLong = true;
+        }
+        return mLong;
+    }
+
+    double getDouble()
+    {
+        if (! mIsDouble)
+        {
+            mDouble = JSONObject.parseDouble(getString());
+            mIsDouble = true;
+        }
+        return mDouble;
+    }
+
+    boolean getBoolean()
+    {
+        return getString().equals("true");
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    JSONObject getObject()
+    {
+        return new JSONObject(object());
+    }
+
+    JSONArray getArray()
+    {
+        if (mArray == null)
+        {
+            mArray = JSONObject.toArray(mSource, 0);
+        }
+        return new JSONArray(mArray);
+    }
+
+    JSONMap getMap()
+    {
+        if (mMap == null)
+        {
+            mMap = object().getMap();
+        }
+        return new JSONMap(mMap);
+    }
+
+    JSONList getList()
+    {
+        if (mList == null)
+        {
+            mList = object().getList();
+        }
+        return new JSONList(mList);
+    }
+
+    private JSONObject object()
+    {
+        if (mObject == null)
+        {
+            mObject = new JSONObject(mSource, 0, mSource.length());
+        }
+        return mObject;
+    }
+}
@@ -0,0 +1,518 @@
+//-----------------------------------------------------------------------------------
+// Copyright (c) 2009-2013, Gordon Beck (gordon.beck@aventinus.org). All rights reserved.
+//
+//    This file is part of a suite of tools.
+//
+//    The tools are free software: you can redistribute it and/or modify
+//    it under the terms of the GNU General Public License as published by
+//    the Free Software Foundation, either version 3 of the License, or
+//    (at your option) any later version.
+//
+//    The tools are distributed in the hope that they will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//    GNU General Public License for more details.
+//
+//    You should have received a copy of the GNU General Public License
+//    along with these tools.  If not, see <http://www.gnu.org/licenses/>.
+//-----------------------------------------------------------------------------------
+package org.aventinus.json;
+
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+import org.aventinus.util.*;
+
+//-----------------------------------------------------------------------------------
+// The JSONObject key()/value()/startObject() builder writing straight to a stream.
+//    As with JSONObject the outer object is implied - it is opened by the first
+//    key() and, because nothing can be taken back from the stream, only closed
+//    by close().
+//-----------------------------------------------------------------------------------
+public class JSONWriter implements Closeable, Flushable
+{
+    //-------------------------------------------------------------------------------
+    // Use of toolbox is dicey as it uses JSONObject to initialiase
+    //-------------------------------------------------------------------------------
+    private static Toolbox toolbox = Toolbox.toolbox();
+    private static Logger logger = Logger.logger(JSONWriter.class);
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_STACK = 40;
+
+    private static final int STACK_KEY = 1;
+    private static final int STACK_OBJECT = 2;
+    private static final int STACK_ARRAY = 3;
+    private static final int STACK_VALUE = 4;
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    private Writer mWriter;
+    private char[] mBuffer = new char[BUFFER_SIZE];
+    private int mLength = 0;
+
+    private int[] mStack = new int[MAX_STACK];
+    private int mStackIdx = -1;
+    private boolean mClosed = false;
+
+    private String error = "";
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    public JSONWriter(Writer writer)
+    {
+        mWriter = writer;
+    }
+
+    public JSONWriter(OutputStream output)
+    {
+        this(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+    }
+
+    public JSONWriter(WritableByteChannel channel)
+    {
+        this(Channels.newOutputStream(channel));
+    }
+
+    public static JSONWriter toFile(String filename)
+    {
+        try
+        {
+            if (filename.startsWith("file:"))
+            {
+                filename = filename.substring(5);
+            }
+
+            return new JSONWriter(new FileOutputStream(filename));
+        }
+        catch (Exception exception)
+        {
+            throw new JSONException(exception);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    public JSONWriter add(String name, String value)
+    {
+        return key(name).value(value);
+    }
+
+    public JSONWriter add(String name, int value)
+    {
+        return key(name).value(value);
+    }
+
+    public JSONWriter add(String name, long value)
+    {
+        return key(name).value(value);
+    }
+
+    public JSONWriter add(String name, double value)
+    {
+        return key(name).value(value);
+    }
+
+    public JSONWriter add(String name, boolean value)
+    {
+        return key(name).value(value);
+    }
+
+    public JSONWriter add(String name, JSONObject value)
+    {
+        return key(name).rawValue(value.toString());
+    }
+
+    public JSONWriter add(String name, JSONArray value)
+    {
+        return key(name).rawValue(value.toString());
+    }
+
+    // Adds an element to the open array
+    public JSONWriter add(JSONObject value)
+    {
+        checkArray();
+        return rawValue(value.toString());
+    }
+
+    public JSONWriter add(JSONArray value)
+    {
+        checkArray();
+        return rawValue(value.toString());
+    }
+
+    private void checkArray()
+    {
+        if ((mStackIdx <= 0) || ((mStack[mStackIdx] != STACK_ARRAY) && (mStack[mStackIdx - 1] != STACK_ARRAY)))
+        {
+            error = "Invalid state";
+            throw new JSONException("Invalid state - missing startArray()");
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    public JSONWriter startObject()
+    {
+        checkState();
+
+        if (mStackIdx <= 0)
+        {
+            error = "Invalid startObject()";
+            throw new JSONException("Invalid startObject()");
+        }
+
+        if (mStack[mStackIdx] == STACK_KEY)
+        {
+            mStack[mStackIdx] = STACK_OBJECT;
+        }
+        else if (mStack[mStackIdx] == STACK_ARRAY)
+        {
+            push(STACK_OBJECT);
+        }
+        else if ((mStack[mStackIdx] == STACK_VALUE) && (mStack[mStackIdx - 1] == STACK_ARRAY))
+        {
+            write(',');
+            mStack[mStackIdx] = STACK_OBJECT;
+        }
+        else
+        {
+            error = "Invalid startObject()";
+            throw new JSONException("Invalid startObject()");
+        }
+
+        write('{');
+
+        return this;
+    }
+
+    public JSONWriter endObject()
+    {
+        checkState();
+
+        if (mStackIdx <= 0)
+        {
+            error = "Invalid endObject()";
+            throw new JSONException("Invalid endObject()");
+        }
+
+        if (mStack[mStackIdx] == STACK_OBJECT)
+        {
+            mStack[mStackIdx] = STACK_VALUE;
+        }
+        else if ((mStackIdx > 1) && (mStack[mStackIdx] == STACK_VALUE) && (mStack[mStackIdx - 1] == STACK_OBJECT))
+        {
+            mStackIdx--;
+            mStack[mStackIdx] = STACK_VALUE;
+        }
+        else
+        {
+            error = "Invalid endObject()";
+            throw new JSONException("Invalid endObject()");
+        }
+
+        write('}');
+
+        return this;
+    }
+
+    public JSONWriter startArray()
+    {
+        checkState();
+
+        if (mStackIdx <= 0)
+        {
+            error = "Invalid startArray()";
+            throw new JSONException("Invalid startArray()");
+        }
+
+        if (mStack[mStackIdx] == STACK_KEY)
+        {
+            mStack[mStackIdx] = STACK_ARRAY;
+        }
+        else if (mStack[mStackIdx] == STACK_ARRAY)
+        {
+            push(STACK_ARRAY);
+        }
+        else if ((mStack[mStackIdx] == STACK_VALUE) && (mStack[mStackIdx - 1] == STACK_ARRAY))
+        {
+            write(',');
+            mStack[mStackIdx] = STACK_ARRAY;
+        }
+        else
+        {
+            error = "Invalid startArray()";
+            throw new JSONException("Invalid startArray()");
+        }
+
+        write('[');
+
+        return this;
+    }
+
+    public JSONWriter endArray()
+    {
+        checkState();
+
+        if (mStackIdx <= 0)
+        {
+            error = "Invalid endArray()";
+            throw new JSONException("Invalid endArray()");
+        }
+
+        if (mStack[mStackIdx] == STACK_ARRAY)
+        {
+            mStack[mStackIdx] = STACK_VALUE;
+        }
+        else if ((mStack[mStackIdx] == STACK_VALUE) && (mStack[mStackIdx - 1] == STACK_ARRAY))
+        {
+            mStackIdx--;
+            mStack[mStackIdx] = STACK_VALUE;
+        }
+        else
+        {
+            error = "Invalid endArray()";
+            throw new JSONException("Invalid endArray()");
+        }
+
+        write(']');
+
+        return this;
+    }
+
+    public JSONWriter key(String key)
+    {
+        checkState();
+
+        if (key.length() == 0)
+        {
+            error = "Invalid key";
+            throw new JSONException("Invalid key");
+        }
+
+        if (mStackIdx < 0)
+        {
+            push(STACK_OBJECT);
+            write('{');
+        }
+
+        if (mStack[mStackIdx] == STACK_OBJECT)
+        {
+            push(STACK_KEY);
+        }
+        else if ((mStack[mStackIdx] == STACK_VALUE) && (mStack[mStackIdx - 1] == STACK_OBJECT))
+        {
+            mStack[mStackIdx] = STACK_KEY;
+            write(',');
+        }
+        else
+        {
+            error = "Invalid key()";
+            throw new JSONException("Invalid key()");
+        }
+
+        write(JSONObject.escape(key));
+        write(':');
+
+        return this;
+    }
+
+    public JSONWriter value(String value)
+    {
+        return rawValue(JSONObject.escape(value));
+    }
+
+    public JSONWriter value(int value)
+    {
+        return rawValue(String.valueOf(value));
+    }
+
+    public JSONWriter value(long value)
+    {
+        return rawValue(String.valueOf(value));
+    }
+
+    public JSONWriter value(double value)
+    {
+        return rawValue(String.valueOf(value));
+    }
+
+    public JSONWriter value(boolean value)
+    {
+        return rawValue(value ? "true" : "false");
+    }
+
+    private JSONWriter rawValue(String value)
+    {
+        checkState();
+
+        if (value.length() == 0)
+        {
+            error = "Invalid value";
+            throw new JSONException("Invalid value");
+        }
+
+        if (mStackIdx <= 0)
+        {
+            error = "Invalid value()";
+            throw new JSONException("Invalid value()");
+        }
+
+        if (mStack[mStackIdx] == STACK_KEY)
+        {
+            mStack[mStackIdx] = STACK_VALUE;
+        }
+        else if (mStack[mStackIdx] == STACK_ARRAY)
+        {
+            push(STACK_VALUE);
+        }
+        else if ((mStack[mStackIdx] == STACK_VALUE) && (mStack[mStackIdx - 1] == STACK_ARRAY))
+        {
+            write(',');
+        }
+        else
+        {
+            error = "Invalid value()";
+            throw new JSONException("Invalid value()");
+        }
+
+        write(value);
+
+        return this;
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    public void flush()
+    {
+        try
+        {
+            if (mLength > 0)
+            {
+                mWriter.write(mBuffer, 0, mLength);
+                mLength = 0;
+            }
+            mWriter.flush();
+        }
+        catch (IOException exception)
+        {
+            error = "Write failed";
+            throw new JSONException(exception);
+        }
+    }
+
+    // Writes the closing } of the outer object - everything else must be closed
+    public void close()
+    {
+        if (mClosed)
+        {
+            return;
+        }
+
+        try
+        {
+            checkState();
+
+            if (mStackIdx < 0)
+            {
+                write("{}");
+            }
+            else if ((mStackIdx == 0) || ((mStackIdx == 1) && (mStack[1] == STACK_VALUE)))
+            {
+                write('}');
+            }
+            else
+            {
+                error = "Object is open pending additions";
+                throw new JSONException("Object is open pending additions");
+            }
+
+            flush();
+        }
+        finally
+        {
+            mClosed = true;
+            Toolbox.close(mWriter);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    //
+    //-------------------------------------------------------------------------------
+    private void checkState()
+    {
+        if (error.length() > 0)
+        {
+            throw new JSONException("Invalid state - in error[" + error + "]");
+        }
+        if (mClosed)
+        {
+            throw new JSONException("Invalid state - closed");
+        }
+    }
+
+    private void push(int state)
+    {
+        if (mStackIdx + 1 >= MAX_STACK)
+        {
+            error = "Nesting too deep";
+            throw new JSONException("Nesting too deep");
+        }
+        mStack[++mStackIdx] = state;
+    }
+
+    private void write(char value)
+    {
+        if (mLength == mBuffer.length)
+        {
+            drain();
+        }
+        mBuffer[mLength++] = value;
+    }
+
+    private void write(String value)
+    {
+        int length = value.length();
+        if (mLength + length > mBuffer.length)
+        {
+            drain();
+
+            if (length > mBuffer.length)
+            {
+                try
+                {
+                    mWriter.write(value);
+                }
+                catch (IOException exception)
+                {
+                    error = "Write failed";
+                    throw new JSONException(exception);
+                }
+                return;
+            }
+        }
+
+        value.getChars(0, length, mBuffer, mLength);
+        mLength += length;
+    }
+
+    private void drain()
+    {
+        try
+        {
+            mWriter.write(mBuffer, 0, mLength);
+            mLength = 0;
+        }
+        catch (IOException exception)
+        {
+            error = "Write failed";
+            throw new JSONException(exception);
+        }
+    }
+}
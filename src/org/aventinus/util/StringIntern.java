@@ -18,19 +18,30 @@
 //-----------------------------------------------------------------------------------
 package org.aventinus.util;
 
-import java.io.*;
-import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 //----------------------------------------------------------------------------------------
-//
+// One shared copy of strings that are seen over and over again - short column values,
+//    JSON keys. The table is concurrent so a hit is a lock free lookup, and bounded:
+//    once it holds limit() strings new ones are handed back as they are rather than
+//    added, so a stream of unique values cannot grow it without end. hits(), hitRate()
+//    and bytesSaved() show whether it is earning its keep.
 //----------------------------------------------------------------------------------------
 public final class StringIntern
 {
     //------------------------------------------------------------------------------------
-    //
+    // bytesSaved() counts each hit as a String that need not be kept - its characters
+    //    plus roughly this much for the object and array headers and the hash
     //------------------------------------------------------------------------------------
-    private static HashMap<String,String> strings = new HashMap<String,String>(50000);
-    private static int requests = 0;
+    private static final int STRING_OVERHEAD = 40;
+
+    private static final ConcurrentHashMap<String,String> strings = new ConcurrentHashMap<String,String>(50000);
+    private static volatile int limit = 1000000;
+
+    private static final LongAdder requests = new LongAdder();
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder saved = new LongAdder();
 
     private StringIntern() {}
 
@@ -44,18 +55,25 @@ public final class StringIntern
             return "";
         }
 
-        synchronized(strings)
+        requests.increment();
+
+        String intern = strings.get(value);
+        if (intern == null)
         {
-            String intern = strings.get(value);
-            if (intern == null)
+            if (strings.size() >= limit)
             {
-                intern = new String(value);
-                strings.put(intern, intern);
+                return value;
             }
 
-            requests++;
-            return intern;
+            intern = strings.putIfAbsent(value, value);
+            if (intern == null)
+            {
+                return value;
+            }
         }
+
+        hit(intern);
+        return intern;
     }
 
     public static String testAndIntern(String value)
@@ -70,32 +88,68 @@ public final class StringIntern
             return intern(value);
         }
 
-        synchronized(strings)
+        String intern = strings.get(value);
+        if (intern == null)
         {
-            String intern = strings.get(value);
-            if (intern == null)
-            {
-                return new String(value);
-            }
-
-            requests++;
-            return intern;
+            return value;
         }
+
+        requests.increment();
+        hit(intern);
+        return intern;
+    }
+
+    private static void hit(String intern)
+    {
+        hits.increment();
+        saved.add(STRING_OVERHEAD + 2 * intern.length());
+    }
+
+    //------------------------------------------------------------------------------------
+    //
+    //------------------------------------------------------------------------------------
+    public static void limit(int value)
+    {
+        limit = value;
+    }
+
+    public static int limit()
+    {
+        return limit;
     }
 
     public static int size()
     {
-        synchronized(strings)
-        {
-            return strings.size();
-        }
+        return strings.size();
     }
 
     public static int requests()
     {
-        synchronized(strings)
-        {
-            return requests;
-        }
+        return requests.intValue();
+    }
+
+    public static long hits()
+    {
+        return hits.sum();
+    }
+
+    public static double hitRate()
+    {
+        long total = requests.sum();
+        return (total == 0) ? 0 : (double)hits.sum() / total;
+    }
+
+    public static long bytesSaved()
+    {
+        return saved.sum();
+    }
+
+    // Empties the table and zeroes the counters
+    public static void clear()
+    {
+        strings.clear();
+        requests.reset();
+        hits.reset();
+        saved.reset();
     }
 }
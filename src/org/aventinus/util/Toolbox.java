@@ -51,6 +51,7 @@ public final class Toolbox
 
     private JSONObject config;
     private Map<String, String> configRawValues = new HashMap<String, String>();
+    private Map<String, JSONPath> configPaths = new HashMap<String, JSONPath>();
 
     //-------------------------------------------------------------------------------
     //
@@ -243,7 +244,6 @@ public final class Toolbox
 
     private JSONObject readConfig()
     {
-        BufferedReader reader = null;
         try
         {
             String url = System.getProperty("configuration");
@@ -253,31 +253,16 @@ public final class Toolbox
             {
                 throw new IllegalArgumentException("Invalid configuration option");
             }
-            url = url.substring(5);
 
-            StringBuilder buffer = new StringBuilder();
-            reader = new BufferedReader(new FileReader(url));
-            while(true)
-            {
-                String line = reader.readLine();
-                if (line == null)
-                {
-                    break;
-                }
-                buffer.append(line).append("\n");
-            }
-
-            return new JSONObject(buffer.toString());
+            // Read rather than mapped - the config lives as long as the process and the
+            //    file may be edited under it
+            return JSONObject.fromFile(url);
         }
         catch (Exception exception)
         {
             logger.info("", exception);
             return null;
         }
-        finally
-        {
-            close(reader);
-        }
     }
 
     public void setRawString(String name, String value)
@@ -297,46 +282,41 @@ public final class Toolbox
                 return configRawValues.get(name);
             }
 
-            JSONObject source = config;
-
-            String[] elements = name.split("\\.");
-
-            for (int i = 0; i < elements.length - 1; i++)
-            {
-                if (! source.containsKey(elements[i]))
-                {
-                    return System.getProperty(name);
-                }
-
-                source = source.getObject(elements[i]);
-            }
-
-            String tail = elements[elements.length - 1];
-
-            String value;
-
-            if (! source.containsKey(tail))
+            JSONPath path = path(name);
+            String value = (path == null) ? null : path.getText(config);
+            if (value == null)
             {
                 value = System.getProperty(name); // will eventually find null !
             }
-            else if (source.isObject(tail))
-            {
-                value = source.getObject(tail).toString();
-            }
-            else if (source.isArray(tail))
-            {
-                value = source.getArray(tail).toString();
-            }
-            else
-            {
-                value = source.getString(tail);
-            }
 
             configRawValues.put(name, value); // we are caching null values
             return value;
         }
     }
 
+    // The compiled name, or null for one that is not a path - "a..b", "x[0" - which
+    //    can still be a system property. Called holding config.
+    private JSONPath path(String name)
+    {
+        if (configPaths.containsKey(name))
+        {
+            return configPaths.get(name);
+        }
+
+        JSONPath path;
+        try
+        {
+            path = JSONPath.compile(name);
+        }
+        catch (JSONException exception)
+        {
+            path = null;
+        }
+
+        configPaths.put(name, path);
+        return path;
+    }
+
     public boolean hasProperty(String name)
     {
         return (getRawString(name) != null);
@@ -457,38 +437,34 @@ public final class Toolbox
 
     public JSONObject getObjectProperty(String name, JSONObject defaultValue)
     {
-        String[] elements = name.split("\\.");
-
         synchronized(config)
         {
-            JSONObject source = config;
-
-            for (int i = 0; i < elements.length; i++)
+            // An item that is there as something else is an error, as it always was,
+            //    not a reason to look further
+            JSONPath path = path(name);
+            if ((path != null) && path.exists(config))
             {
-                if (! source.containsKey(elements[i]))
+                try
                 {
-                    String raw = System.getProperty(name);
-                    if (raw != null)
-                    {
-                        return new JSONObject(raw);
-                    }
-
-                    if (defaultValue == null)
-                    {
-                        throw new IllegalArgumentException("Invalid configuration item [" + name + "]");
-                    }
-                    return defaultValue;
+                    return path.getObject(config);
                 }
-
-                if (i == elements.length - 1)
+                catch (JSONException exception)
                 {
-                    return source.getObject(elements[i]);
+                    throw new JSONException("Not an object [" + name + "]");
                 }
+            }
 
-                source = source.getObject(elements[i]);
+            String raw = System.getProperty(name);
+            if (raw != null)
+            {
+                return new JSONObject(raw);
             }
 
-            throw new RuntimeException("??");
+            if (defaultValue == null)
+            {
+                throw new IllegalArgumentException("Invalid configuration item [" + name + "]");
+            }
+            return defaultValue;
         }
     }
 
@@ -499,38 +475,34 @@ public final class Toolbox
 
     public JSONArray getArrayProperty(String name, JSONArray defaultValue)
     {
-        String[] elements = name.split("\\.");
-
         synchronized(config)
         {
-            JSONObject source = config;
-
-            for (int i = 0; i < elements.length; i++)
+            // An item that is there as something else is an error, as it always was,
+            //    not a reason to look further
+            JSONPath path = path(name);
+            if ((path != null) && path.exists(config))
             {
-                if (! source.containsKey(elements[i]))
+                try
                 {
-                    String raw = System.getProperty(name);
-                    if (raw != null)
-                    {
-                        return new JSONObject("{a:" + raw + "}").getArray("a");
-                    }
-
-                    if (defaultValue == null)
-                    {
-                        throw new IllegalArgumentException("Invalid configuration item [" + name + "]");
-                    }
-                    return defaultValue;
+                    return path.getArray(config);
                 }
-
-                if (i == elements.length - 1)
+                catch (JSONException exception)
                 {
-                    return source.getArray(elements[i]);
+                    throw new JSONException("Not an array [" + name + "]");
                 }
+            }
 
-                source = source.getObject(elements[i]);
+            String raw = System.getProperty(name);
+            if (raw != null)
+            {
+                return new JSONObject("{a:" + raw + "}").getArray("a");
             }
 
-            throw new RuntimeException("??");
+            if (defaultValue == null)
+            {
+                throw new IllegalArgumentException("Invalid configuration item [" + name + "]");
+            }
+            return defaultValue;
         }
     }
 }